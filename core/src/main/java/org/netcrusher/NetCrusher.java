@@ -1,10 +1,12 @@
 package org.netcrusher;
 
+import org.netcrusher.core.meter.RateMeter;
 import org.netcrusher.core.meter.RateMeters;
 
 import java.io.Closeable;
 import java.net.InetSocketAddress;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 
 public interface NetCrusher extends NetFreezer, Closeable {
 
@@ -24,6 +26,44 @@ public interface NetCrusher extends NetFreezer, Closeable {
     @Override
     void close();
 
+    /**
+     * Closes the crusher and it's sockets without waiting for the selector's thread.
+     * The default implementation calls close() and waits for it
+     * @return Future which is completed when the crusher is closed
+     * @see NetCrusher#close()
+     */
+    default CompletableFuture<Void> closeAsync() {
+        try {
+            close();
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Closes the crusher gracefully. The crusher stops accepting new clients, forwards data the clients
+     * have already sent, half-closes their sockets and waits for the peers to close their sides.
+     * Data sent after that is discarded. Clients which are not drained in time are closed forcibly.
+     * The default implementation waits for closeGracefullyAsync()
+     * @param timeoutMs How long to wait for clients to drain in milliseconds
+     * @see NetCrusher#close()
+     */
+    default void closeGracefully(long timeoutMs) {
+        closeGracefullyAsync(timeoutMs).join();
+    }
+
+    /**
+     * Closes the crusher gracefully without waiting for clients to drain.
+     * The default implementation doesn't drain and simply closes the crusher
+     * @param timeoutMs How long to wait for clients to drain in milliseconds
+     * @return Future which is completed when the crusher is closed
+     * @see NetCrusher#closeGracefully(long)
+     */
+    default CompletableFuture<Void> closeGracefullyAsync(long timeoutMs) {
+        return closeAsync();
+    }
+
     /**
      * Closes and then reopens the crusher again
      * @throws IllegalStateException Thrown if the crusher is not open
@@ -65,6 +105,25 @@ public interface NetCrusher extends NetFreezer, Closeable {
      */
     RateMeters getClientByteMeters(InetSocketAddress clientAddress);
 
+    /**
+     * Get CPU time the selector loops have spent in callbacks of the crusher and all its clients.
+     * The count is in nanoseconds so the rate is nanoseconds per second
+     * @return CPU time meter or null if the crusher doesn't account CPU time
+     * @see org.netcrusher.core.reactor.NioReactorBuilder#withCpuSamplingPeriod(int)
+     */
+    default RateMeter getCpuMeter() {
+        return null;
+    }
+
+    /**
+     * Get CPU time the selector loops have spent in callbacks of the specified client in nanoseconds
+     * @param clientAddress Client address
+     * @return CPU time meter or null if such client is not found or the crusher doesn't account CPU time
+     */
+    default RateMeter getClientCpuMeter(InetSocketAddress clientAddress) {
+        return null;
+    }
+
     /**
      * Close facilities for the specified client
      * @param clientAddress Client address
@@ -72,6 +131,21 @@ public interface NetCrusher extends NetFreezer, Closeable {
      */
     boolean closeClient(InetSocketAddress clientAddress);
 
+    /**
+     * Close facilities for the specified client without waiting for the selector's thread.
+     * The default implementation calls closeClient() and waits for it
+     * @param clientAddress Client address
+     * @return Future with true if client is closed or with false if client is not found
+     * @see NetCrusher#closeClient(InetSocketAddress)
+     */
+    default CompletableFuture<Boolean> closeClientAsync(InetSocketAddress clientAddress) {
+        try {
+            return CompletableFuture.completedFuture(closeClient(clientAddress));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     /**
      * Get the total number of registered client since last crusher opening
      * @return Total number of clients
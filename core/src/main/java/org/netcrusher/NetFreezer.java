@@ -1,5 +1,7 @@
 package org.netcrusher;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface NetFreezer {
 
     /**
@@ -16,6 +18,36 @@ public interface NetFreezer {
      */
     void unfreeze();
 
+    /**
+     * Freezes all activity on the component without waiting for the selector's thread.
+     * The default implementation calls freeze() and waits for it
+     * @return Future which is completed when the component is frozen
+     * @see NetFreezer#freeze()
+     */
+    default CompletableFuture<Void> freezeAsync() {
+        try {
+            freeze();
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Unfreezes activity on component without waiting for the selector's thread.
+     * The default implementation calls unfreeze() and waits for it
+     * @return Future which is completed when the component is unfrozen
+     * @see NetFreezer#unfreeze()
+     */
+    default CompletableFuture<Void> unfreezeAsync() {
+        try {
+            unfreeze();
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     /**
      * Checks is the component frozen
      * @return Return <em>true</em> if the crusher is frozen (or is closed)
@@ -0,0 +1,101 @@
+package org.netcrusher.core.buffer;
+
+/**
+ * Moving estimate of the buffer size which suits reads of a connection. Sizes are powers of two
+ * between the bounds. The estimate doubles as soon as a read fills a buffer of the current size and halves
+ * only after two reads in a row which fit into a half, so a bulk transfer quickly gets large buffers
+ * and a single short message doesn't shrink them
+ */
+public class AdaptiveBufferSize {
+
+    private static final int SHRINK_THRESHOLD = 2;
+
+    private static final int MAX_SIZE = Integer.highestOneBit(Integer.MAX_VALUE);
+
+    private final int minSize;
+
+    private final int maxSize;
+
+    private int size;
+
+    private int shrinkCount;
+
+    /**
+     * Create an estimate
+     * @param minSize The smallest size
+     * @param maxSize The largest size
+     * @param initialSize Size to start with, it is rounded up to a power of two within the bounds
+     */
+    public AdaptiveBufferSize(int minSize, int maxSize, int initialSize) {
+        if (minSize <= 0) {
+            throw new IllegalArgumentException("Minimal buffer size must be positive");
+        }
+
+        if (maxSize < minSize) {
+            throw new IllegalArgumentException("Maximal buffer size is less than the minimal one");
+        }
+
+        this.minSize = roundUp(minSize);
+        this.maxSize = Math.max(this.minSize, Integer.highestOneBit(maxSize));
+        this.size = clamp(roundUp(initialSize));
+        this.shrinkCount = 0;
+    }
+
+    /**
+     * Update the estimate with a completed read
+     * @param bytes Number of bytes read
+     * @return Returns 'true' if the size has changed
+     */
+    public boolean record(long bytes) {
+        if (bytes >= size) {
+            shrinkCount = 0;
+            if (size < maxSize) {
+                size = clamp(Math.max(size << 1, roundUp((int) Math.min(bytes, maxSize))));
+                return true;
+            }
+        } else if (bytes <= size >> 1 && size > minSize) {
+            if (++shrinkCount >= SHRINK_THRESHOLD) {
+                shrinkCount = 0;
+                size >>= 1;
+                return true;
+            }
+        } else {
+            shrinkCount = 0;
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the current estimate
+     * @return Size in bytes
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the smallest size
+     * @return Size in bytes
+     */
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Get the largest size
+     * @return Size in bytes
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    private int clamp(int value) {
+        return Math.min(maxSize, Math.max(minSize, value));
+    }
+
+    private static int roundUp(int value) {
+        final int highest = Integer.highestOneBit(Math.max(1, value));
+        return highest == value || highest == MAX_SIZE ? highest : highest << 1;
+    }
+}
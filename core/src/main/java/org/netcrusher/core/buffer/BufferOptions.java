@@ -18,12 +18,24 @@ public class BufferOptions implements Serializable {
 
     private boolean direct;
 
+    private int minSize;
+
+    private int maxSize;
+
+    private long delayLineMemory;
+
+    private long delayLineCapacity;
+
     public BufferOptions copy() {
         BufferOptions copy = new BufferOptions();
 
         copy.count = this.count;
         copy.size = this.size;
         copy.direct = this.direct;
+        copy.minSize = this.minSize;
+        copy.maxSize = this.maxSize;
+        copy.delayLineMemory = this.delayLineMemory;
+        copy.delayLineCapacity = this.delayLineCapacity;
 
         return copy;
     }
@@ -52,6 +64,46 @@ public class BufferOptions implements Serializable {
         this.direct = direct;
     }
 
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(int minSize) {
+        this.minSize = minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public boolean isAdaptive() {
+        return maxSize > 0;
+    }
+
+    public AdaptiveBufferSize createAdaptiveSize() {
+        return new AdaptiveBufferSize(minSize, maxSize, size);
+    }
+
+    public long getDelayLineMemory() {
+        return delayLineMemory;
+    }
+
+    public void setDelayLineMemory(long delayLineMemory) {
+        this.delayLineMemory = delayLineMemory;
+    }
+
+    public long getDelayLineCapacity() {
+        return delayLineCapacity;
+    }
+
+    public void setDelayLineCapacity(long delayLineCapacity) {
+        this.delayLineCapacity = delayLineCapacity;
+    }
+
     public void checkTcpSocket(Socket socket) throws SocketException {
         final long sizeTotal = (long) count * size;
 
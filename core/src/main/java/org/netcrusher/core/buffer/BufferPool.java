@@ -0,0 +1,163 @@
+package org.netcrusher.core.buffer;
+
+import org.netcrusher.core.meter.RateMeter;
+import org.netcrusher.core.meter.RateMeterImpl;
+import org.netcrusher.core.nio.NioUtils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pool of fixed-size direct buffers shared by all connections of a reactor. Queues borrow buffers
+ * when data arrives and give them back as soon as the data is sent, so the memory follows the bytes
+ * in flight rather than the number of connections. Up to the idle limit returned buffers are kept
+ * for reuse, the rest are left to the garbage collector
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+
+    private final ByteBuffer[] idle;
+
+    private final RateMeterImpl hitMeter;
+
+    private final RateMeterImpl missMeter;
+
+    private int idleCount;
+
+    private long borrowedCount;
+
+    private long highWaterCount;
+
+    /**
+     * Create a pool
+     * @param bufferSize Size of each buffer in bytes
+     * @param maxIdleCount How many returned buffers are kept for reuse
+     */
+    public BufferPool(int bufferSize, int maxIdleCount) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+
+        if (maxIdleCount < 0) {
+            throw new IllegalArgumentException("Idle buffer count must not be negative");
+        }
+
+        this.bufferSize = bufferSize;
+        this.idle = new ByteBuffer[maxIdleCount];
+        this.hitMeter = new RateMeterImpl();
+        this.missMeter = new RateMeterImpl();
+        this.idleCount = 0;
+        this.borrowedCount = 0;
+        this.highWaterCount = 0;
+    }
+
+    /**
+     * Check if queues with such options could take buffers from the pool
+     * @param bufferOptions Buffer options of a queue
+     * @return Returns 'true' if the pool has buffers of the same size and kind and the size is fixed
+     */
+    public boolean accepts(BufferOptions bufferOptions) {
+        return bufferOptions.isDirect() && !bufferOptions.isAdaptive() && bufferOptions.getSize() == bufferSize;
+    }
+
+    /**
+     * Take a cleared buffer from the pool or allocate a new one if the pool is empty
+     * @return Buffer
+     */
+    public ByteBuffer borrow() {
+        final ByteBuffer bb;
+
+        synchronized (this) {
+            if (idleCount > 0) {
+                bb = idle[--idleCount];
+                idle[idleCount] = null;
+            } else {
+                bb = null;
+            }
+
+            borrowedCount++;
+            if (borrowedCount > highWaterCount) {
+                highWaterCount = borrowedCount;
+            }
+        }
+
+        if (bb != null) {
+            hitMeter.increment();
+            return bb;
+        } else {
+            missMeter.increment();
+            return NioUtils.allocaleByteBuffer(bufferSize, true);
+        }
+    }
+
+    /**
+     * Give a borrowed buffer back to the pool
+     * @param bb Buffer
+     */
+    public void release(ByteBuffer bb) {
+        bb.clear();
+
+        synchronized (this) {
+            borrowedCount--;
+            if (idleCount < idle.length) {
+                idle[idleCount++] = bb;
+            }
+        }
+    }
+
+    /**
+     * Get the size of the pool's buffers
+     * @return Size in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Get how many returned buffers could be kept for reuse
+     * @return Number of buffers
+     */
+    public int getMaxIdleCount() {
+        return idle.length;
+    }
+
+    /**
+     * Get how many buffers are kept for reuse right now
+     * @return Number of buffers
+     */
+    public synchronized int getIdleCount() {
+        return idleCount;
+    }
+
+    /**
+     * Get how many buffers are held by queues right now
+     * @return Number of buffers
+     */
+    public synchronized long getBorrowedCount() {
+        return borrowedCount;
+    }
+
+    /**
+     * Get the highest number of buffers held by queues at the same time
+     * @return Number of buffers
+     */
+    public synchronized long getHighWaterCount() {
+        return highWaterCount;
+    }
+
+    /**
+     * Get the meter of borrows served by a reused buffer
+     * @return Meter of hits
+     */
+    public RateMeter getHitMeter() {
+        return hitMeter;
+    }
+
+    /**
+     * Get the meter of borrows which have allocated a new buffer
+     * @return Meter of misses
+     */
+    public RateMeter getMissMeter() {
+        return missMeter;
+    }
+}
@@ -0,0 +1,135 @@
+package org.netcrusher.core.buffer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limit of data buffered by queues of all crushers of a reactor. Queues charge the budget for the data
+ * they hold and release it when the data is sent. Channels stop reading when the budget is exhausted
+ * and wait until some data leaves the queues, so the sockets' own buffers take the backpressure
+ */
+public class MemoryBudget {
+
+    private final long limitBytes;
+
+    private final AtomicLong usedBytes;
+
+    private final AtomicLong highWaterBytes;
+
+    private final LongAdder throttledCount;
+
+    private final Queue<Runnable> waiters;
+
+    /**
+     * Create a budget
+     * @param limitBytes How many bytes could be buffered
+     */
+    public MemoryBudget(long limitBytes) {
+        if (limitBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive");
+        }
+
+        this.limitBytes = limitBytes;
+        this.usedBytes = new AtomicLong(0);
+        this.highWaterBytes = new AtomicLong(0);
+        this.throttledCount = new LongAdder();
+        this.waiters = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Check if queues should stop taking new data
+     * @return Returns 'true' if the budget is used up
+     */
+    public boolean isExhausted() {
+        return usedBytes.get() >= limitBytes;
+    }
+
+    /**
+     * Charge the budget for data put into a queue. The data is already read so the charge never fails
+     * and could exceed the limit a bit
+     * @param bytes Number of bytes
+     */
+    public void acquire(long bytes) {
+        final long used = usedBytes.addAndGet(bytes);
+        highWaterBytes.accumulateAndGet(used, Math::max);
+    }
+
+    /**
+     * Give back the budget for data which has left a queue and wake up waiting channels
+     * @param bytes Number of bytes
+     */
+    public void release(long bytes) {
+        final long used = usedBytes.addAndGet(-bytes);
+        if (used < limitBytes && !waiters.isEmpty()) {
+            wakeUp();
+        }
+    }
+
+    /**
+     * Wait for the budget. The waiter is called once from the thread which releases the budget
+     * so it should only pass the resumption to the owner of the channel
+     * @param waiter Callback to run when the budget is available again
+     */
+    public void await(Runnable waiter) {
+        throttledCount.increment();
+        waiters.add(waiter);
+
+        // the budget could have been released before the waiter has been added
+        if (!isExhausted()) {
+            wakeUp();
+        }
+    }
+
+    private void wakeUp() {
+        while (true) {
+            Runnable waiter = waiters.poll();
+            if (waiter != null) {
+                waiter.run();
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Get the limit of the budget
+     * @return Limit in bytes
+     */
+    public long getLimitBytes() {
+        return limitBytes;
+    }
+
+    /**
+     * Get how many bytes are buffered right now
+     * @return Number of bytes
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * Get the highest number of bytes which have been buffered at the same time
+     * @return Number of bytes
+     */
+    public long getHighWaterBytes() {
+        return highWaterBytes.get();
+    }
+
+    /**
+     * Get how many times channels have stopped reading because the budget was exhausted
+     * @return Number of times
+     */
+    public long getThrottledCount() {
+        return throttledCount.sum();
+    }
+
+    /**
+     * Get how many channels are waiting for the budget right now
+     * @return Number of channels
+     */
+    public int getWaitingCount() {
+        return waiters.size();
+    }
+}
@@ -0,0 +1,59 @@
+package org.netcrusher.core.chronometer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chronometer which time doesn't flow by itself. A reactor in virtual time mode moves it forward
+ * to the next scheduled deadline as soon as its loop has nothing to do
+ */
+public class VirtualChronometer implements Chronometer {
+
+    private final long originEpochMs;
+
+    private final long originTickNs;
+
+    private final AtomicLong tickNs;
+
+    public VirtualChronometer() {
+        this.originEpochMs = System.currentTimeMillis();
+        this.originTickNs = System.nanoTime();
+        this.tickNs = new AtomicLong(originTickNs);
+    }
+
+    @Override
+    public long getEpochMs() {
+        return originEpochMs + TimeUnit.NANOSECONDS.toMillis(tickNs.get() - originTickNs);
+    }
+
+    @Override
+    public long getTickNs() {
+        return tickNs.get();
+    }
+
+    /**
+     * Move the time forward. The time never goes back so the call is ignored if the time is already later
+     * @param targetTickNs Target time in nanoseconds
+     */
+    public void advanceTo(long targetTickNs) {
+        tickNs.accumulateAndGet(targetTickNs, (current, target) -> target - current > 0 ? target : current);
+    }
+
+    /**
+     * Move the time forward
+     * @param time Time delta
+     * @param timeUnit Time unit of the delta
+     */
+    public void add(long time, TimeUnit timeUnit) {
+        tickNs.addAndGet(timeUnit.toNanos(time));
+    }
+
+    /**
+     * Get how much time has passed since the chronometer was created
+     * @return Time in nanoseconds
+     */
+    public long getElapsedNs() {
+        return tickNs.get() - originTickNs;
+    }
+
+}
@@ -26,6 +26,7 @@ public abstract class AbstractCrusherMain<T extends NetCrusher> {
 
     private static final String CMD_OPEN = "OPEN";
     private static final String CMD_CLOSE = "CLOSE";
+    private static final String CMD_DRAIN = "DRAIN";
     private static final String CMD_REOPEN = "REOPEN";
     private static final String CMD_FREEZE = "FREEZE";
     private static final String CMD_UNFREEZE = "UNFREEZE";
@@ -36,6 +37,8 @@ public abstract class AbstractCrusherMain<T extends NetCrusher> {
     private static final String CMD_CLIENT_CLOSE = "CLIENT-CLOSE";
     private static final String CMD_CLIENT_STATUS = "CLIENT-STATUS";
 
+    private static final long DRAIN_TIMEOUT_MS = 5000;
+
     protected int run(String[] arguments) {
         if (arguments == null || arguments.length != 2) {
             printUsage();
@@ -155,6 +158,8 @@ public abstract class AbstractCrusherMain<T extends NetCrusher> {
             open(crusher);
         } else if (command.equals(CMD_CLOSE)) {
             close(crusher);
+        } else if (command.equals(CMD_DRAIN)) {
+            drain(crusher);
         } else if (command.equals(CMD_REOPEN)) {
             reopen(crusher);
         } else if (command.equals(CMD_STATUS)) {
@@ -192,6 +197,15 @@ public abstract class AbstractCrusherMain<T extends NetCrusher> {
         }
     }
 
+    protected void drain(T crusher) {
+        if (crusher.isOpen()) {
+            crusher.closeGracefully(DRAIN_TIMEOUT_MS);
+            LOGGER.info("Crusher is drained and closed");
+        } else {
+            LOGGER.warn("Crusher is not open");
+        }
+    }
+
     protected void reopen(T crusher) {
         if (crusher.isOpen()) {
             crusher.reopen();
@@ -271,6 +285,7 @@ public abstract class AbstractCrusherMain<T extends NetCrusher> {
         LOGGER.info("Commands:");
         LOGGER.info("\t" + CMD_OPEN + "     - opens the crusher");
         LOGGER.info("\t" + CMD_CLOSE + "    - closes the crusher (sockets will be closed)");
+        LOGGER.info("\t" + CMD_DRAIN + "    - closes the crusher gracefully (clients flush their data first)");
         LOGGER.info("\t" + CMD_REOPEN + "   - closes and opens the crusher again");
         LOGGER.info("\t" + CMD_FREEZE + "   - freezes the crusher (socket are open but data is not transferred)");
         LOGGER.info("\t" + CMD_UNFREEZE + " - unfreezes the crusher");
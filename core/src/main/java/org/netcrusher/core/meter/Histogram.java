@@ -0,0 +1,39 @@
+package org.netcrusher.core.meter;
+
+/**
+ * Distribution of sampled values over fixed buckets
+ */
+public interface Histogram {
+
+    /**
+     * Get inclusive upper bounds of buckets. The last bucket returned by getBucketCounts() has no upper bound
+     * @return Array of bucket bounds in ascending order
+     */
+    long[] getBucketBounds();
+
+    /**
+     * Get the number of samples in each bucket
+     * @return Array of counts which is one element longer than the array of bounds
+     */
+    long[] getBucketCounts();
+
+    /**
+     * Get total number of samples
+     * @return Number of samples
+     */
+    long getTotalCount();
+
+    /**
+     * Get the number of samples greater than the value. The value is rounded up to the nearest bucket bound
+     * @param value Value to compare samples with
+     * @return Number of samples
+     */
+    long getCountAbove(long value);
+
+    /**
+     * Get the largest sampled value
+     * @return Maximum value or 0 if there are no samples
+     */
+    long getMax();
+
+}
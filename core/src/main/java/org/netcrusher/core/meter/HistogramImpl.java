@@ -0,0 +1,87 @@
+package org.netcrusher.core.meter;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class HistogramImpl implements Histogram {
+
+    private final long[] bounds;
+
+    private final AtomicLongArray counts;
+
+    private final AtomicLong max;
+
+    public HistogramImpl(long... bounds) {
+        if (bounds.length == 0) {
+            throw new IllegalArgumentException("Bounds are not set");
+        }
+
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) {
+                throw new IllegalArgumentException("Bounds must be in ascending order");
+            }
+        }
+
+        this.bounds = bounds.clone();
+        this.counts = new AtomicLongArray(bounds.length + 1);
+        this.max = new AtomicLong(0);
+    }
+
+    @Override
+    public long[] getBucketBounds() {
+        return bounds.clone();
+    }
+
+    @Override
+    public long[] getBucketCounts() {
+        long[] result = new long[counts.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+
+    @Override
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    @Override
+    public long getCountAbove(long value) {
+        long total = 0;
+        for (int i = indexOf(value) + 1; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    @Override
+    public long getMax() {
+        return max.get();
+    }
+
+    public void record(long value) {
+        counts.incrementAndGet(indexOf(value));
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    private int indexOf(long value) {
+        int index = Arrays.binarySearch(bounds, value);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < bounds.length; i++) {
+            sb.append("<=").append(bounds[i]).append(": ").append(counts.get(i)).append(", ");
+        }
+        sb.append('>').append(bounds[bounds.length - 1]).append(": ").append(counts.get(bounds.length));
+        return sb.toString();
+    }
+}
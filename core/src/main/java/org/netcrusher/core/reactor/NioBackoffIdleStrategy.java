@@ -0,0 +1,87 @@
+package org.netcrusher.core.reactor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Idle strategy which spins first, then yields and then parks with exponentially growing period.
+ * Instances keep state and should not be shared across selector loops
+ */
+public class NioBackoffIdleStrategy implements NioIdleStrategy {
+
+    public static final long DEFAULT_MAX_SPINS = 10_000;
+
+    public static final long DEFAULT_MAX_YIELDS = 100;
+
+    public static final long DEFAULT_MIN_PARK_NS = TimeUnit.MICROSECONDS.toNanos(1);
+
+    public static final long DEFAULT_MAX_PARK_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long maxSpins;
+
+    private final long maxYields;
+
+    private final long minParkNs;
+
+    private final long maxParkNs;
+
+    private long spins;
+
+    private long yields;
+
+    private long parkNs;
+
+    /**
+     * Creates the strategy with default settings
+     */
+    public NioBackoffIdleStrategy() {
+        this(DEFAULT_MAX_SPINS, DEFAULT_MAX_YIELDS, DEFAULT_MIN_PARK_NS, DEFAULT_MAX_PARK_NS);
+    }
+
+    /**
+     * Creates the strategy
+     * @param maxSpins How many times to spin before yielding
+     * @param maxYields How many times to yield before parking
+     * @param minParkNs The first park period in nanoseconds
+     * @param maxParkNs The longest park period in nanoseconds. Bounds the latency of scheduled operations
+     */
+    public NioBackoffIdleStrategy(long maxSpins, long maxYields, long minParkNs, long maxParkNs) {
+        if (maxSpins < 0 || maxYields < 0) {
+            throw new IllegalArgumentException("Spin and yield counts must not be negative");
+        }
+
+        if (minParkNs <= 0 || maxParkNs < minParkNs) {
+            throw new IllegalArgumentException("Park periods must be positive and ordered");
+        }
+
+        this.maxSpins = maxSpins;
+        this.maxYields = maxYields;
+        this.minParkNs = minParkNs;
+        this.maxParkNs = maxParkNs;
+
+        reset();
+    }
+
+    @Override
+    public void idle(int workCount) {
+        if (workCount > 0) {
+            reset();
+        } else if (spins < maxSpins) {
+            spins++;
+            Thread.onSpinWait();
+        } else if (yields < maxYields) {
+            yields++;
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(parkNs);
+            parkNs = Math.min(parkNs << 1, maxParkNs);
+        }
+    }
+
+    @Override
+    public void reset() {
+        spins = 0;
+        yields = 0;
+        parkNs = minParkNs;
+    }
+}
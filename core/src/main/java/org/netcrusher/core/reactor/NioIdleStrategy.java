@@ -0,0 +1,20 @@
+package org.netcrusher.core.reactor;
+
+/**
+ * Strategy for a busy-polling selector loop to wait when there is no work
+ * @see NioBackoffIdleStrategy
+ */
+public interface NioIdleStrategy {
+
+    /**
+     * Called after each loop iteration
+     * @param workCount Amount of work done on the iteration. Zero means the loop is idle
+     */
+    void idle(int workCount);
+
+    /**
+     * Resets the internal state so the next idle period starts from the beginning
+     */
+    void reset();
+
+}
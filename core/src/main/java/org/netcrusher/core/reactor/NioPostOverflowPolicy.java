@@ -0,0 +1,20 @@
+package org.netcrusher.core.reactor;
+
+/**
+ * What happens to an operation posted to a selector loop which operation queue is full
+ * @see NioReactorBuilder#withPostQueue(int, NioPostOverflowPolicy)
+ */
+public enum NioPostOverflowPolicy {
+
+    /**
+     * The posting thread waits until the loop frees a slot in the queue. Selector loops don't wait,
+     * their operations are queued over the bound
+     */
+    BLOCK,
+
+    /**
+     * The operation is rejected with RejectedExecutionException
+     */
+    FAIL
+
+}
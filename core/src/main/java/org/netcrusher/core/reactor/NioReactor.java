@@ -1,21 +1,52 @@
 package org.netcrusher.core.reactor;
 
+import org.netcrusher.NetCrusher;
+import org.netcrusher.NetCrusherException;
+import org.netcrusher.core.buffer.BufferPool;
+import org.netcrusher.core.buffer.MemoryBudget;
+import org.netcrusher.core.chronometer.Chronometer;
+import org.netcrusher.core.meter.Histogram;
+import org.netcrusher.core.meter.HistogramImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class NioReactor implements Closeable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(NioReactor.class);
 
-    private static final long DEFAULT_TICK_MS = 20;
+    private static final long[] POST_LATENCY_BUCKET_BOUNDS_US = {1, 10, 100, 1_000, 10_000, 100_000};
 
-    private final NioSelector selector;
+    private final NioSelector[] selectors;
+
+    private final AtomicInteger selectorCursor;
 
     private final NioScheduler scheduler;
 
+    private final NioWatchdog watchdog;
+
+    private final HistogramImpl postLatencyHistogram;
+
+    private final Chronometer chronometer;
+
+    private final Chronometer loopChronometer;
+
+    private final BufferPool bufferPool;
+
+    private final MemoryBudget memoryBudget;
+
+    private final Set<NetCrusher> crushers;
+
     private volatile boolean open;
 
     /**
@@ -23,22 +54,85 @@ public class NioReactor implements Closeable {
      * @throws IOException Exception on error
      */
     public NioReactor() throws IOException {
-        this(DEFAULT_TICK_MS);
+        this(NioReactorOptions.DEFAULT_TICK_MS);
     }
 
     /**
      * Create NIO reactor with specific settings. The same reactor can be shared across multiple crushers.
-     * @param tickMs Selector's timeout granularity in milliseconds. Determines throttling precision.
-     *               Default value is 50 milliseconds.
+     * @param tickMs Slot granularity of selector's timer in milliseconds. Scheduled operations are fired
+     *               on their exact deadlines regardless of this value. Default value is 20 milliseconds.
      * @throws IOException Exception on error
      */
     public NioReactor(long tickMs) throws IOException {
-        this.selector = new NioSelector(tickMs);
+        this(createOptions(tickMs));
+    }
+
+    /**
+     * Create NIO reactor with specific options. Use NioReactorBuilder to create a reactor with multiple loops.
+     * @param options Reactor options
+     * @throws IOException Exception on error
+     * @see NioReactorBuilder
+     */
+    public NioReactor(NioReactorOptions options) throws IOException {
+        if (options == null) {
+            throw new IllegalArgumentException("Options are not set");
+        }
+
+        options.validate();
+
+        this.postLatencyHistogram = new HistogramImpl(POST_LATENCY_BUCKET_BOUNDS_US);
+        this.chronometer = options.getChronometer();
+
+        if (options.getBufferPoolSize() > 0) {
+            this.bufferPool = new BufferPool(options.getBufferPoolSize(), options.getBufferPoolIdleCount());
+        } else {
+            this.bufferPool = null;
+        }
+
+        if (options.getMemoryBudgetBytes() > 0) {
+            this.memoryBudget = new MemoryBudget(options.getMemoryBudgetBytes());
+        } else {
+            this.memoryBudget = null;
+        }
+
+        this.selectors = new NioSelector[options.getLoopCount()];
+        try {
+            for (int i = 0; i < selectors.length; i++) {
+                NioIdleStrategy idleStrategy = options.getIdleStrategyFactory() != null
+                    ? options.getIdleStrategyFactory().get() : null;
+                selectors[i] = new NioSelector(options, i, idleStrategy, postLatencyHistogram, bufferPool,
+                    memoryBudget);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (NioSelector selector : selectors) {
+                if (selector != null) {
+                    selector.close();
+                }
+            }
+            throw e;
+        }
+
+        this.loopChronometer = new NioReactorClock(chronometer, selectors);
+        this.selectorCursor = new AtomicInteger(0);
         this.scheduler = new NioScheduler();
+        this.crushers = ConcurrentHashMap.newKeySet();
+
+        if (options.getWatchdogPeriodMs() > 0) {
+            this.watchdog = new NioWatchdog(selectors, options.getWatchdogPeriodMs(), options.getStallThresholdMs());
+        } else {
+            this.watchdog = null;
+        }
 
         this.open = true;
 
-        LOGGER.debug("Reactor has been created with tick={}ms", tickMs);
+        LOGGER.debug("Reactor has been created with tick={}ms, {} loop(s) and busy-poll={}",
+            options.getTickMs(), options.getLoopCount(), options.getIdleStrategyFactory() != null);
+    }
+
+    private static NioReactorOptions createOptions(long tickMs) {
+        NioReactorOptions options = new NioReactorOptions();
+        options.setTickMs(tickMs);
+        return options;
     }
 
     /**
@@ -47,7 +141,13 @@ public class NioReactor implements Closeable {
     @Override
     public synchronized void close() {
         if (open) {
-            selector.close();
+            if (watchdog != null) {
+                watchdog.close();
+            }
+
+            for (NioSelector selector : selectors) {
+                selector.close();
+            }
             scheduler.close();
 
             open = false;
@@ -56,6 +156,62 @@ public class NioReactor implements Closeable {
         }
     }
 
+    /**
+     * Closes all open crushers of the reactor gracefully and then closes the reactor
+     * @param timeoutMs How long to wait for clients of crushers to drain in milliseconds
+     * @see NetCrusher#closeGracefully(long)
+     */
+    public void closeGracefully(long timeoutMs) {
+        if (open) {
+            // crushers are drained in parallel so they share the same deadline
+            CompletableFuture<?>[] futures = crushers.stream()
+                .map(crusher -> crusher.closeGracefullyAsync(timeoutMs).exceptionally(e -> {
+                    LOGGER.error("Fail to close crusher <{}> gracefully", crusher.getBindAddress(), e);
+                    return null;
+                }))
+                .toArray(CompletableFuture<?>[]::new);
+
+            CompletableFuture.allOf(futures).join();
+
+            close();
+        }
+    }
+
+    // Internal method
+    public void addCrusher(NetCrusher crusher) {
+        crushers.add(crusher);
+    }
+
+    // Internal method
+    public void removeCrusher(NetCrusher crusher) {
+        crushers.remove(crusher);
+    }
+
+    // Internal method
+    public boolean isSelectorThread() {
+        for (NioSelector selector : selectors) {
+            if (selector.isSelectorThread()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Internal method
+    public void await(CompletableFuture<?> future) throws NetCrusherException {
+        // a selector loop never waits for another one as the other loop could be waiting for it
+        if (!future.isDone() && isSelectorThread()) {
+            throw new IllegalStateException("Operation is still running, use the *Async variant from a selector loop");
+        }
+
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            throw new NetCrusherException("Selector operation has failed", e.getCause());
+        }
+    }
+
     /**
      * Check is the reactor open
      * @return Returns 'true' if the reactor is not closed
@@ -65,11 +221,40 @@ public class NioReactor implements Closeable {
     }
 
     /**
-     * Get selector controller (used for internal purpose)
+     * Get the first selector controller (used for internal purpose)
      * @return Selector controller
      */
     public NioSelector getSelector() {
-        return selector;
+        return selectors[0];
+    }
+
+    /**
+     * Get the next selector controller in round-robin order (used for internal purpose)
+     * @return Selector controller
+     */
+    public NioSelector nextSelector() {
+        if (selectors.length == 1) {
+            return selectors[0];
+        }
+
+        int index = Math.floorMod(selectorCursor.getAndIncrement(), selectors.length);
+        return selectors[index];
+    }
+
+    /**
+     * Get all selector controllers (used for internal purpose)
+     * @return Unmodifiable list of selector controllers
+     */
+    public List<NioSelector> getSelectors() {
+        return Collections.unmodifiableList(Arrays.asList(selectors));
+    }
+
+    /**
+     * Get the number of selector loops
+     * @return Number of loops
+     */
+    public int getLoopCount() {
+        return selectors.length;
     }
 
     /**
@@ -79,4 +264,122 @@ public class NioReactor implements Closeable {
     public NioScheduler getScheduler() {
         return scheduler;
     }
+
+    /**
+     * Get the distribution of selector loop lag sampled by the watchdog. Lag is how long a loop has been
+     * running callbacks and operations without returning to the selector
+     * @return Histogram of lag in milliseconds or null if the watchdog is not enabled
+     * @see NioReactorBuilder#withWatchdog(long, long)
+     */
+    public Histogram getLoopLagHistogram() {
+        return watchdog != null ? watchdog.getLagHistogram() : null;
+    }
+
+    /**
+     * Get how many times the watchdog has found a selector loop stalled longer than the threshold
+     * @return Number of stalls
+     */
+    public long getStallCount() {
+        return watchdog != null ? watchdog.getStallCount() : 0;
+    }
+
+    /**
+     * Get the time source of the reactor
+     * @return Chronometer
+     * @see NioReactorBuilder#withVirtualTime()
+     */
+    public Chronometer getChronometer() {
+        return chronometer;
+    }
+
+    /**
+     * Get the coarse time source of selector loops. Being read from a loop thread it returns the time cached
+     * by the loop on the current iteration instead of reading the clock, on other threads it falls back to
+     * the reactor's chronometer. Suits throttlers which are called for each buffer or packet
+     * @return Chronometer
+     * @see NioReactorBuilder#withClockRefreshPeriod(int)
+     */
+    public Chronometer getLoopChronometer() {
+        return loopChronometer;
+    }
+
+    /**
+     * Get the pool of buffers shared by TCP connections of all crushers. Hit and miss meters and
+     * the high-water mark of borrowed buffers show how much memory is really in flight
+     * @return Buffer pool or null if the pool is disabled
+     * @see NioReactorBuilder#withBufferPool(int, int)
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Get the limit of data buffered by all crushers. Used bytes and the number of times channels
+     * have stopped reading because of the limit show how close the reactor is to its memory ceiling
+     * @return Memory budget or null if the limit is disabled
+     * @see NioReactorBuilder#withMemoryBudget(long)
+     */
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Get how many operations are waiting in queues of selector loops
+     * @return Number of posted operations
+     * @see NioReactorBuilder#withPostQueue(int, NioPostOverflowPolicy)
+     */
+    public int getPostQueueSize() {
+        int size = 0;
+        for (NioSelector selector : selectors) {
+            size += selector.getPostQueueSize();
+        }
+        return size;
+    }
+
+    /**
+     * Get the distribution of time spent by callers to put an operation into a loop's queue. With the BLOCK
+     * policy it includes waiting for a free slot
+     * @return Histogram of latency in microseconds
+     */
+    public Histogram getPostLatencyHistogram() {
+        return postLatencyHistogram;
+    }
+
+    /**
+     * Get how many posted operations were rejected as queues of selector loops were full
+     * @return Number of rejections
+     */
+    public long getRejectedPostCount() {
+        long count = 0;
+        for (NioSelector selector : selectors) {
+            count += selector.getRejectedPostCount();
+        }
+        return count;
+    }
+
+    /**
+     * Get how many operations were posted by selector loops to full queues of other loops. Such operations
+     * are queued over the bound as a loop never waits for another one
+     * @return Number of spilled operations
+     */
+    public long getSpilledPostCount() {
+        long count = 0;
+        for (NioSelector selector : selectors) {
+            count += selector.getSpilledPostCount();
+        }
+        return count;
+    }
+
+    /**
+     * Get how many times selectors of the reactor have been rebuilt on the epoll spin issue
+     * @return Number of rebuilds
+     * @see NioReactorBuilder#withSpinThreshold(int)
+     */
+    public long getRebuildCount() {
+        long count = 0;
+        for (NioSelector selector : selectors) {
+            count += selector.getRebuildCount();
+        }
+        return count;
+    }
 }
@@ -0,0 +1,206 @@
+package org.netcrusher.core.reactor;
+
+import org.netcrusher.core.chronometer.Chronometer;
+import org.netcrusher.core.chronometer.VirtualChronometer;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Builder for NioReactor instance
+ */
+public final class NioReactorBuilder {
+
+    private final NioReactorOptions options;
+
+    private NioReactorBuilder() {
+        this.options = new NioReactorOptions();
+        this.options.setLoopCount(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new builder. By default the reactor will have one selector loop per available processor
+     * @return A new builder instance
+     */
+    public static NioReactorBuilder builder() {
+        return new NioReactorBuilder();
+    }
+
+    /**
+     * Set slot granularity of selector's timer in milliseconds. Scheduled operations are fired
+     * on their exact deadlines regardless of this value
+     * @param tickMs Tick in milliseconds
+     * @return This builder instance to chain with other methods
+     */
+    public NioReactorBuilder withTickMs(long tickMs) {
+        this.options.setTickMs(tickMs);
+        return this;
+    }
+
+    /**
+     * Set how many selector loops (threads) the reactor will run. Each TCP pair and each datagram crusher
+     * is pinned to one of the loops
+     * @param loopCount Number of selector loops
+     * @return This builder instance to chain with other methods
+     */
+    public NioReactorBuilder withLoopCount(int loopCount) {
+        this.options.setLoopCount(loopCount);
+        return this;
+    }
+
+    /**
+     * Make selector loops busy-poll with selectNow() instead of blocking in select(). Trades CPU for latency:
+     * while there is no work each loop spins, then yields and then parks for a bounded period
+     * @return This builder instance to chain with other methods
+     * @see NioBackoffIdleStrategy
+     */
+    public NioReactorBuilder withBusyPoll() {
+        return withBusyPoll(NioBackoffIdleStrategy::new);
+    }
+
+    /**
+     * Make selector loops busy-poll with selectNow() instead of blocking in select()
+     * @param idleStrategyFactory Creates an idle strategy for each selector loop
+     * @return This builder instance to chain with other methods
+     */
+    public NioReactorBuilder withBusyPoll(Supplier<NioIdleStrategy> idleStrategyFactory) {
+        this.options.setIdleStrategyFactory(idleStrategyFactory);
+        return this;
+    }
+
+    /**
+     * Start a watchdog which samples selector loops and logs the stack of a loop stalled in a callback.
+     * Loop lag histogram and stall count are available from the reactor
+     * @param samplePeriodMs How often loops are sampled in milliseconds
+     * @param stallThresholdMs Lag in milliseconds after which a loop is reported as stalled
+     * @return This builder instance to chain with other methods
+     * @see NioReactor#getLoopLagHistogram()
+     */
+    public NioReactorBuilder withWatchdog(long samplePeriodMs, long stallThresholdMs) {
+        this.options.setWatchdogPeriodMs(samplePeriodMs);
+        this.options.setStallThresholdMs(stallThresholdMs);
+        return this;
+    }
+
+    /**
+     * Set how often selection key callbacks are timed to account CPU time of crushers and clients.
+     * Only one of each period callbacks is timed and its time is scaled by the period
+     * @param cpuSamplingPeriod One of how many callbacks is timed. Zero disables the accounting. Default is 16
+     * @return This builder instance to chain with other methods
+     */
+    public NioReactorBuilder withCpuSamplingPeriod(int cpuSamplingPeriod) {
+        this.options.setCpuSamplingPeriod(cpuSamplingPeriod);
+        return this;
+    }
+
+    /**
+     * Set after how many premature empty returns of select() in a row the selector is rebuilt. This works
+     * around the epoll spin issue when the selector keeps waking up with no ready keys and pegs a core
+     * @param spinThreshold Number of premature returns. Zero disables the rebuild. Default is 512
+     * @return This builder instance to chain with other methods
+     * @see NioReactor#getRebuildCount()
+     */
+    public NioReactorBuilder withSpinThreshold(int spinThreshold) {
+        this.options.setSpinThreshold(spinThreshold);
+        return this;
+    }
+
+    /**
+     * Set how many operations could be posted to each selector loop before it runs them and what happens
+     * to operations posted to a full queue. A bounded queue protects the heap and the loop's I/O from
+     * a caller which floods the reactor with control operations
+     * @param capacity Queue capacity. Default is 65536
+     * @param overflowPolicy What to do when the queue is full. Default is BLOCK
+     * @return This builder instance to chain with other methods
+     * @see NioReactor#getPostQueueSize()
+     * @see NioReactor#getPostLatencyHistogram()
+     * @see NioReactor#getRejectedPostCount()
+     * @see NioReactor#getSpilledPostCount()
+     */
+    public NioReactorBuilder withPostQueue(int capacity, NioPostOverflowPolicy overflowPolicy) {
+        this.options.setPostQueueCapacity(capacity);
+        this.options.setPostOverflowPolicy(overflowPolicy);
+        return this;
+    }
+
+    /**
+     * Set the time source of selector loops and of queues of crushers which use the reactor
+     * @param chronometer Chronometer. Default is the system one
+     * @return This builder instance to chain with other methods
+     * @see NioReactor#getChronometer()
+     */
+    public NioReactorBuilder withChronometer(Chronometer chronometer) {
+        this.options.setChronometer(chronometer);
+        return this;
+    }
+
+    /**
+     * Run the reactor in virtual time. The time doesn't flow by itself: as soon as a selector loop has
+     * nothing to do it jumps straight to the next scheduled deadline, so delays and rate limits don't take
+     * real time. Rate throttlers should be created with the reactor's chronometer to follow the virtual time.
+     * Can't be combined with busy-poll. The reactor runs a single selector loop as the time is shared
+     * by all the loops and an idle one would jump over deadlines of the busy ones
+     * @return This builder instance to chain with other methods
+     * @see NioReactor#getChronometer()
+     */
+    public NioReactorBuilder withVirtualTime() {
+        this.options.setLoopCount(1);
+        return withChronometer(new VirtualChronometer());
+    }
+
+    /**
+     * Set how often a selector loop refreshes its cached time while running callbacks. The loop reads
+     * the clock at the start of each iteration and before scheduled operations, queues of crushers read
+     * the cached time instead of calling the clock for each buffer or packet
+     * @param clockRefreshPeriod After how many callbacks the time is refreshed. Zero disables the caching
+     *                           so the clock is read on every call. Default is 16
+     * @return This builder instance to chain with other methods
+     * @see NioReactor#getLoopChronometer()
+     */
+    public NioReactorBuilder withClockRefreshPeriod(int clockRefreshPeriod) {
+        this.options.setClockRefreshPeriod(clockRefreshPeriod);
+        return this;
+    }
+
+    /**
+     * Set the pool of direct buffers shared by TCP connections of all crushers which use the reactor.
+     * Connections borrow buffers when data arrives and return them when it is sent, so idle connections
+     * hold no memory. Crushers with other buffer size or with heap buffers preallocate their own buffers
+     * @param bufferSize Size of pooled buffers. Should match the buffer size of crushers. Zero disables
+     *                   the pool. Default is 32768
+     * @param maxIdleCount How many returned buffers are kept for reuse. Idle buffers stay allocated until
+     *                     the reactor is closed, so the cap bounds the memory of the pool when no data is
+     *                     in flight: 64 buffers of the default size hold 2MB. Raise it for many busy
+     *                     connections to avoid allocating buffers under load. Default is 64
+     * @return This builder instance to chain with other methods
+     * @see NioReactor#getBufferPool()
+     */
+    public NioReactorBuilder withBufferPool(int bufferSize, int maxIdleCount) {
+        this.options.setBufferPoolSize(bufferSize);
+        this.options.setBufferPoolIdleCount(maxIdleCount);
+        return this;
+    }
+
+    /**
+     * Set the limit of data buffered by all crushers which use the reactor. When queues hold that many bytes
+     * channels stop reading until some data is sent, so a slow peer can't make the process buffer
+     * without bound and the backpressure goes to the sockets
+     * @param limitBytes Limit in bytes. Zero disables the limit. Default is 0
+     * @return This builder instance to chain with other methods
+     * @see NioReactor#getMemoryBudget()
+     */
+    public NioReactorBuilder withMemoryBudget(long limitBytes) {
+        this.options.setMemoryBudgetBytes(limitBytes);
+        return this;
+    }
+
+    /**
+     * Builds a new NioReactor instance
+     * @return NioReactor instance
+     * @throws IOException Exception on error
+     */
+    public NioReactor build() throws IOException {
+        return new NioReactor(options);
+    }
+
+}
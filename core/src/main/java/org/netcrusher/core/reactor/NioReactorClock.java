@@ -0,0 +1,44 @@
+package org.netcrusher.core.reactor;
+
+import org.netcrusher.core.chronometer.Chronometer;
+
+/**
+ * Chronometer which returns the cached time of the selector loop it is read from and the time of the source
+ * chronometer on any other thread
+ */
+final class NioReactorClock implements Chronometer {
+
+    private final Chronometer source;
+
+    private final NioSelectorClock[] clocks;
+
+    NioReactorClock(Chronometer source, NioSelector[] selectors) {
+        this.source = source;
+        this.clocks = new NioSelectorClock[selectors.length];
+        for (int i = 0; i < selectors.length; i++) {
+            this.clocks[i] = selectors[i].getClock();
+        }
+    }
+
+    @Override
+    public long getEpochMs() {
+        final NioSelectorClock clock = find();
+        return clock != null ? clock.getEpochMs() : source.getEpochMs();
+    }
+
+    @Override
+    public long getTickNs() {
+        final NioSelectorClock clock = find();
+        return clock != null ? clock.getTickNs() : source.getTickNs();
+    }
+
+    private NioSelectorClock find() {
+        final Thread thread = Thread.currentThread();
+        for (NioSelectorClock clock : clocks) {
+            if (clock.isOwner(thread)) {
+                return clock;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,258 @@
+package org.netcrusher.core.reactor;
+
+import org.netcrusher.core.chronometer.Chronometer;
+import org.netcrusher.core.chronometer.SystemChronometer;
+import org.netcrusher.core.chronometer.VirtualChronometer;
+
+import java.util.function.Supplier;
+
+public class NioReactorOptions {
+
+    public static final long DEFAULT_TICK_MS = 20;
+
+    public static final int DEFAULT_LOOP_COUNT = 1;
+
+    public static final long DEFAULT_WATCHDOG_PERIOD_MS = 0;
+
+    public static final long DEFAULT_STALL_THRESHOLD_MS = 100;
+
+    public static final int DEFAULT_CPU_SAMPLING_PERIOD = 16;
+
+    public static final int DEFAULT_SPIN_THRESHOLD = 512;
+
+    public static final int DEFAULT_CLOCK_REFRESH_PERIOD = 16;
+
+    public static final int DEFAULT_BUFFER_POOL_SIZE = 32 * 1024;
+
+    public static final int DEFAULT_BUFFER_POOL_IDLE_COUNT = 64;
+
+    public static final int DEFAULT_POST_QUEUE_CAPACITY = 64 * 1024;
+
+    public static final int MAX_POST_QUEUE_CAPACITY = 1024 * 1024 * 1024;
+
+    private long tickMs;
+
+    private int loopCount;
+
+    private Supplier<NioIdleStrategy> idleStrategyFactory;
+
+    private long watchdogPeriodMs;
+
+    private long stallThresholdMs;
+
+    private int cpuSamplingPeriod;
+
+    private int spinThreshold;
+
+    private int postQueueCapacity;
+
+    private NioPostOverflowPolicy postOverflowPolicy;
+
+    private Chronometer chronometer;
+
+    private int clockRefreshPeriod;
+
+    private int bufferPoolSize;
+
+    private int bufferPoolIdleCount;
+
+    private long memoryBudgetBytes;
+
+    public NioReactorOptions() {
+        this.tickMs = DEFAULT_TICK_MS;
+        this.loopCount = DEFAULT_LOOP_COUNT;
+        this.idleStrategyFactory = null;
+        this.watchdogPeriodMs = DEFAULT_WATCHDOG_PERIOD_MS;
+        this.stallThresholdMs = DEFAULT_STALL_THRESHOLD_MS;
+        this.cpuSamplingPeriod = DEFAULT_CPU_SAMPLING_PERIOD;
+        this.spinThreshold = DEFAULT_SPIN_THRESHOLD;
+        this.postQueueCapacity = DEFAULT_POST_QUEUE_CAPACITY;
+        this.postOverflowPolicy = NioPostOverflowPolicy.BLOCK;
+        this.chronometer = SystemChronometer.INSTANCE;
+        this.clockRefreshPeriod = DEFAULT_CLOCK_REFRESH_PERIOD;
+        this.bufferPoolSize = DEFAULT_BUFFER_POOL_SIZE;
+        this.bufferPoolIdleCount = DEFAULT_BUFFER_POOL_IDLE_COUNT;
+        this.memoryBudgetBytes = 0;
+    }
+
+    public void validate() {
+        if (tickMs <= 0) {
+            throw new IllegalArgumentException("Tick period must be positive");
+        }
+
+        if (loopCount <= 0) {
+            throw new IllegalArgumentException("Loop count must be positive");
+        }
+
+        if (watchdogPeriodMs < 0) {
+            throw new IllegalArgumentException("Watchdog period must not be negative");
+        }
+
+        if (stallThresholdMs <= 0) {
+            throw new IllegalArgumentException("Stall threshold must be positive");
+        }
+
+        if (cpuSamplingPeriod < 0) {
+            throw new IllegalArgumentException("CPU sampling period must not be negative");
+        }
+
+        if (spinThreshold < 0) {
+            throw new IllegalArgumentException("Spin threshold must not be negative");
+        }
+
+        if (chronometer == null) {
+            throw new IllegalArgumentException("Chronometer is not set");
+        }
+
+        if (chronometer instanceof VirtualChronometer && idleStrategyFactory != null) {
+            throw new IllegalArgumentException("Virtual time requires blocking selector loops");
+        }
+
+        // each idle loop would move the shared time to its own deadline under the busy ones
+        if (chronometer instanceof VirtualChronometer && loopCount > 1) {
+            throw new IllegalArgumentException("Virtual time requires a single selector loop");
+        }
+
+        if (clockRefreshPeriod < 0) {
+            throw new IllegalArgumentException("Clock refresh period must not be negative");
+        }
+
+        validateQueues();
+    }
+
+    private void validateQueues() {
+        if (postQueueCapacity <= 0 || postQueueCapacity > MAX_POST_QUEUE_CAPACITY) {
+            throw new IllegalArgumentException("Post queue capacity must be in range [1.."
+                + MAX_POST_QUEUE_CAPACITY + "]");
+        }
+
+        if (postOverflowPolicy == null) {
+            throw new IllegalArgumentException("Post overflow policy is not set");
+        }
+
+        if (bufferPoolSize < 0) {
+            throw new IllegalArgumentException("Buffer pool size must not be negative");
+        }
+
+        if (bufferPoolIdleCount < 0) {
+            throw new IllegalArgumentException("Buffer pool idle count must not be negative");
+        }
+
+        if (memoryBudgetBytes < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative");
+        }
+    }
+
+    public long getTickMs() {
+        return tickMs;
+    }
+
+    public void setTickMs(long tickMs) {
+        this.tickMs = tickMs;
+    }
+
+    public int getLoopCount() {
+        return loopCount;
+    }
+
+    public void setLoopCount(int loopCount) {
+        this.loopCount = loopCount;
+    }
+
+    public Supplier<NioIdleStrategy> getIdleStrategyFactory() {
+        return idleStrategyFactory;
+    }
+
+    public void setIdleStrategyFactory(Supplier<NioIdleStrategy> idleStrategyFactory) {
+        this.idleStrategyFactory = idleStrategyFactory;
+    }
+
+    public long getWatchdogPeriodMs() {
+        return watchdogPeriodMs;
+    }
+
+    public void setWatchdogPeriodMs(long watchdogPeriodMs) {
+        this.watchdogPeriodMs = watchdogPeriodMs;
+    }
+
+    public long getStallThresholdMs() {
+        return stallThresholdMs;
+    }
+
+    public void setStallThresholdMs(long stallThresholdMs) {
+        this.stallThresholdMs = stallThresholdMs;
+    }
+
+    public int getCpuSamplingPeriod() {
+        return cpuSamplingPeriod;
+    }
+
+    public void setCpuSamplingPeriod(int cpuSamplingPeriod) {
+        this.cpuSamplingPeriod = cpuSamplingPeriod;
+    }
+
+    public int getSpinThreshold() {
+        return spinThreshold;
+    }
+
+    public void setSpinThreshold(int spinThreshold) {
+        this.spinThreshold = spinThreshold;
+    }
+
+    public int getPostQueueCapacity() {
+        return postQueueCapacity;
+    }
+
+    public void setPostQueueCapacity(int postQueueCapacity) {
+        this.postQueueCapacity = postQueueCapacity;
+    }
+
+    public NioPostOverflowPolicy getPostOverflowPolicy() {
+        return postOverflowPolicy;
+    }
+
+    public void setPostOverflowPolicy(NioPostOverflowPolicy postOverflowPolicy) {
+        this.postOverflowPolicy = postOverflowPolicy;
+    }
+
+    public Chronometer getChronometer() {
+        return chronometer;
+    }
+
+    public void setChronometer(Chronometer chronometer) {
+        this.chronometer = chronometer;
+    }
+
+    public int getClockRefreshPeriod() {
+        return clockRefreshPeriod;
+    }
+
+    public void setClockRefreshPeriod(int clockRefreshPeriod) {
+        this.clockRefreshPeriod = clockRefreshPeriod;
+    }
+
+    public int getBufferPoolSize() {
+        return bufferPoolSize;
+    }
+
+    public void setBufferPoolSize(int bufferPoolSize) {
+        this.bufferPoolSize = bufferPoolSize;
+    }
+
+    public int getBufferPoolIdleCount() {
+        return bufferPoolIdleCount;
+    }
+
+    public void setBufferPoolIdleCount(int bufferPoolIdleCount) {
+        this.bufferPoolIdleCount = bufferPoolIdleCount;
+    }
+
+    public long getMemoryBudgetBytes() {
+        return memoryBudgetBytes;
+    }
+
+    public void setMemoryBudgetBytes(long memoryBudgetBytes) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+}
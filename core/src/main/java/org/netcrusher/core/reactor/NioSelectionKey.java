@@ -0,0 +1,77 @@
+package org.netcrusher.core.reactor;
+
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * Selection key handed out by NioSelector. When the selector is rebuilt the channel is registered with
+ * the new selector and the key is switched to the new registration, so holders of the key are not affected
+ */
+final class NioSelectionKey extends SelectionKey {
+
+    private volatile SelectionKey delegate;
+
+    NioSelectionKey(SelectionKey delegate) {
+        this.delegate = delegate;
+    }
+
+    SelectionKey getDelegate() {
+        return delegate;
+    }
+
+    void setDelegate(SelectionKey delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public SelectableChannel channel() {
+        return delegate.channel();
+    }
+
+    @Override
+    public Selector selector() {
+        return delegate.selector();
+    }
+
+    @Override
+    public boolean isValid() {
+        return delegate.isValid();
+    }
+
+    @Override
+    public void cancel() {
+        delegate.cancel();
+    }
+
+    @Override
+    public int interestOps() {
+        return delegate.interestOps();
+    }
+
+    @Override
+    public SelectionKey interestOps(int ops) {
+        delegate.interestOps(ops);
+        return this;
+    }
+
+    @Override
+    public int interestOpsOr(int ops) {
+        return delegate.interestOpsOr(ops);
+    }
+
+    @Override
+    public int interestOpsAnd(int ops) {
+        return delegate.interestOpsAnd(ops);
+    }
+
+    @Override
+    public int readyOps() {
+        return delegate.readyOps();
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
@@ -1,59 +1,153 @@
 package org.netcrusher.core.reactor;
 
 import org.netcrusher.NetCrusherException;
+import org.netcrusher.core.buffer.BufferPool;
+import org.netcrusher.core.buffer.MemoryBudget;
+import org.netcrusher.core.chronometer.Chronometer;
+import org.netcrusher.core.chronometer.VirtualChronometer;
+import org.netcrusher.core.meter.HistogramImpl;
+import org.netcrusher.core.meter.RateMeterImpl;
 import org.netcrusher.core.nio.SelectionKeyCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
-import java.util.Comparator;
-import java.util.Iterator;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
 public class NioSelector {
 
+    static final long NOT_BUSY = Long.MIN_VALUE;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(NioSelector.class);
 
     private static final long THREAD_TERMINATION_TIMEOUT_MS = 5000;
 
-    private static final Comparator<NioSelectorScheduledOp> SCHEDULE_COMPARATOR =
-        Comparator.comparingLong(NioSelectorScheduledOp::getScheduledNs);
+    private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final int POST_OPERATION_BATCH_SIZE = 256;
+
+    private static final long VIRTUAL_IDLE_MS = 1;
+
+    private static final long OVERFLOW_PARK_NS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static final ThreadLocal<Boolean> LOOP_THREAD = new ThreadLocal<>();
 
     private final Thread thread;
 
-    private final Selector selector;
+    private final Chronometer chronometer;
+
+    private final VirtualChronometer virtualChronometer;
+
+    private final NioSelectorClock clock;
+
+    private final BufferPool bufferPool;
+
+    private final MemoryBudget memoryBudget;
+
+    private final int clockRefreshPeriod;
+
+    private final Object registrationLock;
+
+    private final int spinThreshold;
 
-    private final Queue<NioSelectorPostOp<?>> postOperationQueue;
+    private volatile Selector selector;
 
-    private final Queue<NioSelectorScheduledOp> scheduledOperationQueue;
+    private final NioSelectorPostQueue postOperationQueue;
 
-    private final long tickMs;
+    private final NioPostOverflowPolicy overflowPolicy;
+
+    private final HistogramImpl postLatencyHistogram;
+
+    private final LongAdder rejectedPostCount;
+
+    private final LongAdder spilledPostCount;
+
+    private final NioSelectorTimingWheel timingWheel;
+
+    private final Consumer<SelectionKey> dispatcher;
+
+    private final AtomicBoolean wakeupPending;
+
+    private final LongAdder wakeupCount;
+
+    private final LongAdder coalescedWakeupCount;
+
+    private final NioIdleStrategy idleStrategy;
+
+    private final int cpuSamplingPeriod;
 
     private volatile boolean open;
 
-    NioSelector(long tickMs) throws IOException {
-        if (tickMs <= 0) {
-            throw new IllegalArgumentException("Tick period must be positive");
-        }
+    private volatile long busySinceNs;
 
+    private volatile long busyTimeNs;
+
+    private volatile long rebuildCount;
+
+    private boolean dispatching;
+
+    private int dispatchCounter;
+
+    private int spinCount;
+
+    private int refreshCounter;
+
+    NioSelector(NioReactorOptions options, int index, NioIdleStrategy idleStrategy,
+                HistogramImpl postLatencyHistogram, BufferPool bufferPool, MemoryBudget memoryBudget)
+        throws IOException
+    {
+        options.validate();
+
+        this.bufferPool = bufferPool;
+        this.memoryBudget = memoryBudget;
+        this.chronometer = options.getChronometer();
+        this.virtualChronometer = chronometer instanceof VirtualChronometer ? (VirtualChronometer) chronometer : null;
         this.selector = Selector.open();
-        this.postOperationQueue = new ConcurrentLinkedQueue<>();
-        this.scheduledOperationQueue = new PriorityQueue<>(SCHEDULE_COMPARATOR);
+        this.registrationLock = new Object();
+        this.spinThreshold = options.getSpinThreshold();
+        this.spinCount = 0;
+        this.rebuildCount = 0;
+        this.postOperationQueue = new NioSelectorPostQueue(options.getPostQueueCapacity());
+        this.overflowPolicy = options.getPostOverflowPolicy();
+        this.postLatencyHistogram = postLatencyHistogram;
+        this.rejectedPostCount = new LongAdder();
+        this.spilledPostCount = new LongAdder();
+        this.dispatcher = this::dispatch;
+        this.wakeupPending = new AtomicBoolean(false);
+        this.wakeupCount = new LongAdder();
+        this.coalescedWakeupCount = new LongAdder();
+        this.timingWheel = new NioSelectorTimingWheel(chronometer.getTickNs(),
+            TimeUnit.MILLISECONDS.toNanos(options.getTickMs()));
+        this.idleStrategy = idleStrategy;
+        this.busySinceNs = NOT_BUSY;
+        this.busyTimeNs = 0;
+        this.cpuSamplingPeriod = options.getCpuSamplingPeriod();
+        this.dispatchCounter = 0;
+        this.clockRefreshPeriod = options.getClockRefreshPeriod();
+        this.refreshCounter = 0;
 
         this.thread = new Thread(this::loop);
-        this.thread.setName("NetCrusher selector event loop");
+        this.thread.setName("NetCrusher selector event loop #" + index);
         this.thread.setDaemon(false);
+
+        this.clock = new NioSelectorClock(chronometer, thread, clockRefreshPeriod > 0);
+
         this.thread.start();
 
-        this.tickMs = tickMs;
         this.open = true;
     }
 
@@ -62,8 +156,6 @@ public class NioSelector {
             LOGGER.debug("Selector is closing");
             boolean interrupted = false;
 
-            postOperationQueue.clear();
-
             wakeup();
 
             if (thread.isAlive()) {
@@ -93,6 +185,8 @@ public class NioSelector {
             }
 
             open = false;
+
+            cancelPostOperations();
             LOGGER.debug("Selector is closed");
 
             if (interrupted) {
@@ -102,14 +196,38 @@ public class NioSelector {
     }
 
     // Internal method
-    public SelectionKey register(SelectableChannel channel, int options, SelectionKeyCallback callback) {
-        return execute(() -> channel.register(selector, options, callback));
+    public SelectionKey register(SelectableChannel channel, int options, SelectionKeyCallback callback,
+                                 RateMeterImpl... cpuMeters)
+    {
+        NioSelectorCallback attachment = new NioSelectorCallback(callback, cpuMeters);
+        return execute(() -> doRegister(channel, options, attachment));
+    }
+
+    // Internal method
+    public SelectionKey registerNow(SelectableChannel channel, int options, SelectionKeyCallback callback,
+                                    RateMeterImpl... cpuMeters) throws ClosedChannelException
+    {
+        // registration doesn't wait for the loop so it could be made from another loop without blocking it,
+        // the new key is picked up by the next select and an existing key gets the new options and callback
+        NioSelectorCallback attachment = new NioSelectorCallback(callback, cpuMeters);
+        synchronized (registrationLock) {
+            return doRegister(channel, options, attachment);
+        }
+    }
+
+    private SelectionKey doRegister(SelectableChannel channel, int options, NioSelectorCallback attachment)
+        throws ClosedChannelException
+    {
+        NioSelectionKey selectionKey = new NioSelectionKey(channel.register(selector, options, attachment));
+        attachment.setKey(selectionKey);
+        return selectionKey;
     }
 
     // Internal method
     public int wakeup() {
         // fixes some strange behaviour on Windows: http://stackoverflow.com/a/39657002/827139
-        return execute(selector::selectNow);
+        // a selection operation can't be nested so inside callbacks cancelled keys are flushed by the next select
+        return execute(() -> dispatching ? 0 : selector.selectNow());
     }
 
     // Internal method
@@ -123,9 +241,7 @@ public class NioSelector {
                 }
             } else {
                 NioSelectorPostOp<T> postOperation = new NioSelectorPostOp<>(callable);
-                postOperationQueue.add(postOperation);
-
-                selector.wakeup();
+                post(postOperation);
 
                 try {
                     return postOperation.await();
@@ -141,27 +257,206 @@ public class NioSelector {
     }
 
     // Internal method
-    public void schedule(Runnable runnable, long delayNs) {
-        if (tickMs == 0) {
-            throw new IllegalStateException("Tick value should be set on selector");
+    public <T> CompletableFuture<T> executeAsync(Callable<T> callable) {
+        if (open) {
+            NioSelectorPostOp<T> postOperation = new NioSelectorPostOp<>(callable);
+
+            if (Thread.currentThread().equals(thread)) {
+                postOperation.run();
+            } else {
+                try {
+                    post(postOperation);
+                } catch (RejectedExecutionException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            }
+
+            return postOperation.getFuture();
+        } else {
+            return CompletableFuture.failedFuture(new IllegalStateException("Selector is closed"));
         }
+    }
+
+    private void post(NioSelectorPostOp<?> postOperation) {
+        final long startNs = System.nanoTime();
+
+        while (!postOperationQueue.offer(postOperation)) {
+            if (overflowPolicy == NioPostOverflowPolicy.FAIL) {
+                rejectedPostCount.increment();
+                throw new RejectedExecutionException("Selector's operation queue is full");
+            }
+
+            // a selector loop never waits for another one as the other loop could be waiting for it
+            if (LOOP_THREAD.get() != null) {
+                spilledPostCount.increment();
+                postOperationQueue.spill(postOperation);
+                break;
+            }
+
+            // the loop has been woken up by posts which have filled the queue
+            LockSupport.parkNanos(OVERFLOW_PARK_NS);
+
+            if (!open || Thread.currentThread().isInterrupted()) {
+                rejectedPostCount.increment();
+                throw new RejectedExecutionException("Selector's operation queue is full and waiting is aborted");
+            }
+        }
+
+        postLatencyHistogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNs));
+
+        wakeupOnPost();
+    }
+
+    /**
+     * Get how many operations are waiting in the queue of the loop
+     * @return Number of posted operations
+     */
+    public int getPostQueueSize() {
+        return postOperationQueue.size();
+    }
+
+    /**
+     * Get how many posted operations were rejected as the queue of the loop was full
+     * @return Number of rejections
+     */
+    public long getRejectedPostCount() {
+        return rejectedPostCount.sum();
+    }
+
+    /**
+     * Get how many operations were posted by selector loops over the bound of the full queue
+     * @return Number of spilled operations
+     */
+    public long getSpilledPostCount() {
+        return spilledPostCount.sum();
+    }
+
+    /**
+     * Get how many times the selector was woken up by posted operations
+     * @return Number of wakeups
+     */
+    public long getWakeupCount() {
+        return wakeupCount.sum();
+    }
+
+    /**
+     * Get how many posted operations didn't wake up the selector as a wakeup was already pending
+     * @return Number of coalesced wakeups
+     */
+    public long getCoalescedWakeupCount() {
+        return coalescedWakeupCount.sum();
+    }
+
+    private void wakeupOnPost() {
+        // only the first post after the queue is drained pays for the wakeup
+        if (wakeupPending.compareAndSet(false, true)) {
+            wakeupCount.increment();
+            if (idleStrategy != null) {
+                // busy-polling loop never blocks in select() but could be parked by the idle strategy
+                LockSupport.unpark(thread);
+            } else {
+                selector.wakeup();
+            }
+        } else {
+            coalescedWakeupCount.increment();
+        }
+    }
+
+    /**
+     * Check if the selector loop busy-polls instead of blocking in select()
+     * @return Returns 'true' if the loop busy-polls
+     */
+    public boolean isBusyPoll() {
+        return idleStrategy != null;
+    }
+
+    /**
+     * Get how long the loop has been running callbacks and operations since it was started. Sample it
+     * periodically to get the utilization of the loop
+     * @return Time in nanoseconds
+     */
+    public long getBusyTimeNs() {
+        return busyTimeNs;
+    }
+
+    /**
+     * Get how many times the selector has been rebuilt after select() kept returning prematurely
+     * with no ready keys (the epoll spin issue)
+     * @return Number of rebuilds
+     */
+    public long getRebuildCount() {
+        return rebuildCount;
+    }
+
+    long getThreadId() {
+        return thread.getId();
+    }
+
+    Thread getThread() {
+        return thread;
+    }
+
+    /**
+     * Heartbeat of the loop: when the loop has left the selector to run callbacks and operations
+     * @return Time in nanoseconds or NOT_BUSY if the loop is waiting for events
+     */
+    long getBusySinceNs() {
+        return busySinceNs;
+    }
+
+    // Internal method
+    public Chronometer getChronometer() {
+        return clock;
+    }
+
+    // Internal method
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    // Internal method
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    NioSelectorClock getClock() {
+        return clock;
+    }
+
+    // Internal method
+    public boolean isSelectorThread() {
+        return Thread.currentThread().equals(thread);
+    }
+
+    // Internal method
+    public NioSelectorScheduledOp schedule(Runnable runnable, long delayNs) {
+        NioSelectorScheduledOp scheduledOperation = new NioSelectorScheduledOp(runnable);
+        schedule(scheduledOperation, delayNs);
+        return scheduledOperation;
+    }
+
+    // Internal method
+    public void schedule(NioSelectorScheduledOp scheduledOperation, long delayNs) {
         if (!Thread.currentThread().equals(thread)) {
             throw new IllegalStateException("Scheduling only should be made from selector's thread");
         }
 
-        long nowNs = System.nanoTime();
+        long nowNs = clock.getTickNs();
 
-        scheduledOperationQueue.add(new NioSelectorScheduledOp(nowNs + delayNs, runnable));
+        timingWheel.add(scheduledOperation, nowNs + delayNs);
     }
 
     private void loop() {
         LOGGER.debug("Selector event loop started");
 
+        LOOP_THREAD.set(Boolean.TRUE);
+
         while (!Thread.currentThread().isInterrupted()) {
-            // block on getting selection keys ready to act
-            int count;
+            // block on getting selection keys ready to act but not longer than the nearest scheduled deadline,
+            // ready keys are dispatched to callbacks right from the select operation
+            int workCount;
             try {
-                count = selector.select(tickMs);
+                workCount = idleStrategy != null ? selectNow() : select();
             } catch (ClosedSelectorException e) {
                 break;
             } catch (Exception e) {
@@ -169,58 +464,224 @@ public class NioSelector {
                 break;
             }
 
-            // execute all selection key callbacks
-            if (count > 0) {
-                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
-                while (keyIterator.hasNext()) {
-                    SelectionKey selectionKey = keyIterator.next();
-
-                    if (selectionKey.isValid()) {
-                        try {
-                            SelectionKeyCallback callback = (SelectionKeyCallback) selectionKey.attachment();
-                            callback.execute(selectionKey);
-                        } catch (Exception e) {
-                            LOGGER.error("Error while executing selection key callback", e);
-                        }
-                    } else {
-                        LOGGER.debug("Selection key is invalid: {}", selectionKey);
+            markBusy();
+
+            workCount += runScheduledOperations();
+
+            workCount += runPostOperations();
+
+            // the only writer is the loop itself
+            busyTimeNs += System.nanoTime() - busySinceNs;
+            busySinceNs = NOT_BUSY;
+
+            if (idleStrategy != null) {
+                idleStrategy.idle(workCount);
+            }
+        }
+
+        LOGGER.debug("Selector event loop has finished");
+    }
+
+    private int select() throws IOException {
+        // should be reset before checking the queue so any later post will wake the selector up;
+        // a pending wakeup could already be consumed by selectNow() called from a callback
+        wakeupPending.set(false);
+
+        final long startNs = clock.refresh();
+        final long deadlineNs = postOperationQueue.isEmpty() ? timingWheel.nextDeadlineNs() : startNs;
+
+        final int count;
+        dispatching = true;
+        try {
+            if (deadlineNs == NioSelectorTimingWheel.NO_DEADLINE) {
+                count = selector.select(dispatcher);
+            } else if (deadlineNs - startNs <= 0) {
+                count = selector.selectNow(dispatcher);
+            } else {
+                // round up so the loop doesn't wake up just before the deadline
+                final long delayMs = (deadlineNs - startNs + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI;
+
+                if (virtualChronometer != null) {
+                    // in-flight I/O gets a short real wait and then the time jumps to the deadline
+                    count = selector.select(dispatcher, Math.min(delayMs, VIRTUAL_IDLE_MS));
+                    if (count == 0 && !wakeupPending.get()) {
+                        virtualChronometer.advanceTo(deadlineNs);
                     }
+                } else {
+                    count = selector.select(dispatcher, delayMs);
+                }
+            }
+        } finally {
+            dispatching = false;
+        }
 
-                    keyIterator.remove();
+        if (spinThreshold > 0) {
+            checkSpin(count, deadlineNs);
+        }
+
+        return count;
+    }
+
+    private void checkSpin(int count, long deadlineNs) throws IOException {
+        // select() with no keys before the deadline and without a wakeup has returned prematurely
+        final boolean premature = count == 0
+            && !wakeupPending.get()
+            && !Thread.currentThread().isInterrupted()
+            && (deadlineNs == NioSelectorTimingWheel.NO_DEADLINE || chronometer.getTickNs() - deadlineNs < 0);
+
+        if (premature) {
+            if (++spinCount >= spinThreshold) {
+                LOGGER.warn("Selector has returned prematurely {} times in a row, rebuilding it", spinCount);
+                spinCount = 0;
+                rebuild();
+            }
+        } else {
+            spinCount = 0;
+        }
+    }
+
+    void rebuild() throws IOException {
+        // channels are moved to a new selector with their interest options and callbacks, keys which
+        // were handed out are switched to the new registrations
+        final Selector oldSelector = selector;
+        final Selector newSelector = Selector.open();
+
+        int moved = 0;
+        synchronized (registrationLock) {
+            for (SelectionKey oldKey : oldSelector.keys()) {
+                final NioSelectorCallback attachment = (NioSelectorCallback) oldKey.attachment();
+                try {
+                    final int options = oldKey.interestOps();
+                    oldKey.cancel();
+
+                    final SelectionKey newKey = oldKey.channel().register(newSelector, options, attachment);
+                    attachment.getKey().setDelegate(newKey);
+                    moved++;
+                } catch (CancelledKeyException | ClosedChannelException e) {
+                    LOGGER.debug("Channel is closed while rebuilding the selector: {}", oldKey.channel());
                 }
             }
 
-            runScheduledOperations();
+            selector = newSelector;
+        }
 
-            runPostOperations();
+        try {
+            oldSelector.close();
+        } catch (IOException e) {
+            LOGGER.error("Fail to close the old selector", e);
         }
 
-        LOGGER.debug("Selector event loop has finished");
+        rebuildCount++;
+        LOGGER.info("Selector has been rebuilt with {} channel(s)", moved);
     }
 
-    private void runScheduledOperations() {
-        while (true) {
-            NioSelectorScheduledOp scheduledOperation = scheduledOperationQueue.peek();
-            if (scheduledOperation != null && scheduledOperation.isReady()) {
-                scheduledOperation = scheduledOperationQueue.poll();
-                if (scheduledOperation != null) {
-                    scheduledOperation.run();
+    private int selectNow() throws IOException {
+        // the loop is never blocked in the selector so posts only have to unpark the idle strategy
+        wakeupPending.set(false);
+
+        dispatching = true;
+        try {
+            return selector.selectNow(dispatcher);
+        } finally {
+            dispatching = false;
+        }
+    }
+
+    private void markBusy() {
+        // busy time is the real cost of the loop so it is measured by the system clock even in virtual time
+        if (busySinceNs == NOT_BUSY) {
+            busySinceNs = System.nanoTime();
+            refreshClock();
+        }
+    }
+
+    private void refreshClock() {
+        clock.refresh();
+        refreshCounter = 0;
+    }
+
+    private void dispatch(SelectionKey selectionKey) {
+        markBusy();
+
+        // a long run of callbacks shouldn't see the time of the iteration start
+        if (clockRefreshPeriod > 0 && refreshCounter++ == clockRefreshPeriod) {
+            refreshClock();
+        }
+
+        if (selectionKey.isValid()) {
+            try {
+                NioSelectorCallback callback = (NioSelectorCallback) selectionKey.attachment();
+                if (isSampled() && callback.isMetered()) {
+                    dispatchTimed(selectionKey, callback);
+                } else {
+                    callback.execute(selectionKey);
                 }
+            } catch (Exception e) {
+                LOGGER.error("Error while executing selection key callback", e);
+            }
+        } else {
+            LOGGER.debug("Selection key is invalid: {}", selectionKey);
+        }
+    }
+
+    private boolean isSampled() {
+        if (cpuSamplingPeriod > 0 && ++dispatchCounter == cpuSamplingPeriod) {
+            dispatchCounter = 0;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private void dispatchTimed(SelectionKey selectionKey, NioSelectorCallback callback) throws IOException {
+        // only one callback of a period is timed so its time is scaled to stand for the others
+        final long startNs = System.nanoTime();
+        try {
+            callback.execute(selectionKey);
+        } finally {
+            callback.account((System.nanoTime() - startNs) * cpuSamplingPeriod);
+        }
+    }
+
+    private int runScheduledOperations() {
+        // callbacks could have taken a while so the deadlines are checked against the fresh time
+        if (refreshCounter > 0) {
+            refreshClock();
+        }
+
+        return timingWheel.expire(clock.getTickNs());
+    }
+
+    private void cancelPostOperations() {
+        while (true) {
+            NioSelectorPostOp<?> postOperation = postOperationQueue.poll();
+            if (postOperation != null) {
+                postOperation.cancel();
             } else {
                 break;
             }
         }
     }
 
-    private void runPostOperations() {
-        while (true) {
+    private int runPostOperations() {
+        // the rest will be run on the next iteration after I/O events are served
+        int count = 0;
+        while (count < POST_OPERATION_BATCH_SIZE) {
             NioSelectorPostOp<?> postOperation = postOperationQueue.poll();
             if (postOperation != null) {
+                // operations are rare but could be long so each one sees the time after the previous one
+                if (refreshCounter > 0) {
+                    refreshClock();
+                }
+                refreshCounter++;
+
                 postOperation.run();
+                count++;
             } else {
                 break;
             }
         }
+        return count;
     }
 
 }
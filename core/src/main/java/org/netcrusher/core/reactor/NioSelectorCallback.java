@@ -0,0 +1,46 @@
+package org.netcrusher.core.reactor;
+
+import org.netcrusher.core.meter.RateMeterImpl;
+import org.netcrusher.core.nio.SelectionKeyCallback;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+
+/**
+ * Selection key attachment: the callback and meters which are charged with time spent in the callback
+ */
+final class NioSelectorCallback {
+
+    private final SelectionKeyCallback callback;
+
+    private final RateMeterImpl[] cpuMeters;
+
+    private NioSelectionKey key;
+
+    NioSelectorCallback(SelectionKeyCallback callback, RateMeterImpl[] cpuMeters) {
+        this.callback = callback;
+        this.cpuMeters = cpuMeters;
+    }
+
+    NioSelectionKey getKey() {
+        return key;
+    }
+
+    void setKey(NioSelectionKey key) {
+        this.key = key;
+    }
+
+    void execute(SelectionKey selectionKey) throws IOException {
+        callback.execute(selectionKey);
+    }
+
+    boolean isMetered() {
+        return cpuMeters.length > 0;
+    }
+
+    void account(long elapsedNs) {
+        for (RateMeterImpl cpuMeter : cpuMeters) {
+            cpuMeter.update(elapsedNs);
+        }
+    }
+}
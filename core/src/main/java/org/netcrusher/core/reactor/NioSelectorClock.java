@@ -0,0 +1,63 @@
+package org.netcrusher.core.reactor;
+
+import org.netcrusher.core.chronometer.Chronometer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coarse clock of a selector loop. The loop reads the source chronometer a few times per iteration
+ * and queues and throttlers on the loop's thread get the cached value instead of reading the clock
+ * for each buffer or packet. Other threads always read the source chronometer as well as the loop itself
+ * when caching is disabled
+ */
+final class NioSelectorClock implements Chronometer {
+
+    private final Chronometer source;
+
+    private final Thread owner;
+
+    private final boolean cached;
+
+    private final long originEpochMs;
+
+    private final long originTickNs;
+
+    private long tickNs;
+
+    NioSelectorClock(Chronometer source, Thread owner, boolean cached) {
+        this.source = source;
+        this.owner = owner;
+        this.cached = cached;
+        this.originEpochMs = source.getEpochMs();
+        this.originTickNs = source.getTickNs();
+        this.tickNs = originTickNs;
+    }
+
+    /**
+     * Read the source chronometer. Should be called only from the owner thread
+     * @return Time in nanoseconds
+     */
+    long refresh() {
+        tickNs = source.getTickNs();
+        return tickNs;
+    }
+
+    @Override
+    public long getEpochMs() {
+        // wall time follows the tick so it costs nothing more than the tick itself
+        return originEpochMs + TimeUnit.NANOSECONDS.toMillis(getTickNs() - originTickNs);
+    }
+
+    @Override
+    public long getTickNs() {
+        if (cached && Thread.currentThread() == owner) {
+            return tickNs;
+        } else {
+            return source.getTickNs();
+        }
+    }
+
+    boolean isOwner(Thread thread) {
+        return thread == owner;
+    }
+}
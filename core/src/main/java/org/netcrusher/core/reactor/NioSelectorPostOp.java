@@ -27,6 +27,14 @@ public class NioSelectorPostOp<T> implements Runnable {
         }
     }
 
+    void cancel() {
+        future.completeExceptionally(new IllegalStateException("Selector is closed"));
+    }
+
+    CompletableFuture<T> getFuture() {
+        return future;
+    }
+
     T await() throws InterruptedException, ExecutionException {
         return future.get();
     }
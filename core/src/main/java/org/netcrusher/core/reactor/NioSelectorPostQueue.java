@@ -0,0 +1,112 @@
+package org.netcrusher.core.reactor;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue of posted operations. Any thread could offer, only the selector thread polls.
+ * Operations which selector loops post to a full queue are spilled over the bound as a loop must not wait
+ * for another one. A spilled operation is polled after all the operations which have been offered before it
+ */
+final class NioSelectorPostQueue {
+
+    private final AtomicReferenceArray<NioSelectorPostOp<?>> slots;
+
+    private final int mask;
+
+    private final int capacity;
+
+    private final AtomicLong tail;
+
+    private volatile long head;
+
+    private final Queue<Spilled> spilled;
+
+    NioSelectorPostQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+
+        // slots are rounded up to a power of two but the queue is still bounded by the capacity
+        final int slotCount = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+
+        this.slots = new AtomicReferenceArray<>(slotCount);
+        this.mask = slotCount - 1;
+        this.capacity = capacity;
+        this.tail = new AtomicLong(0);
+        this.head = 0;
+        this.spilled = new ConcurrentLinkedQueue<>();
+    }
+
+    boolean offer(NioSelectorPostOp<?> operation) {
+        while (true) {
+            final long currentTail = tail.get();
+            if (currentTail - head >= capacity) {
+                return false;
+            }
+
+            // the slot is claimed first and filled after
+            if (tail.compareAndSet(currentTail, currentTail + 1)) {
+                slots.set((int) currentTail & mask, operation);
+                return true;
+            }
+        }
+    }
+
+    void spill(NioSelectorPostOp<?> operation) {
+        spilled.add(new Spilled(operation, tail.get()));
+    }
+
+    NioSelectorPostOp<?> poll() {
+        final long currentHead = head;
+
+        final Spilled first = spilled.peek();
+        if (first != null && first.position - currentHead <= 0) {
+            spilled.poll();
+            return first.operation;
+        }
+        if (currentHead == tail.get()) {
+            return null;
+        }
+
+        // a claimed slot which is not filled yet is polled again on the next loop iteration
+        final int index = (int) currentHead & mask;
+        final NioSelectorPostOp<?> operation = slots.get(index);
+        if (operation == null) {
+            return null;
+        }
+
+        slots.lazySet(index, null);
+        head = currentHead + 1;
+
+        return operation;
+    }
+
+    boolean isEmpty() {
+        return head == tail.get() && spilled.isEmpty();
+    }
+
+    int size() {
+        // the head is read first so the size is never negative
+        final long currentHead = head;
+        return (int) Math.max(0, Math.min(capacity, tail.get() - currentHead)) + spilled.size();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    private static final class Spilled {
+
+        private final NioSelectorPostOp<?> operation;
+
+        private final long position;
+
+        private Spilled(NioSelectorPostOp<?> operation, long position) {
+            this.operation = operation;
+            this.position = position;
+        }
+    }
+}
@@ -1,14 +1,32 @@
 package org.netcrusher.core.reactor;
 
+/**
+ * Scheduled operation handle. The same instance could be scheduled again and again without allocation.
+ * All methods should be called only from the selector's thread
+ */
 public class NioSelectorScheduledOp implements Runnable {
 
-    private final long scheduledNs;
+    private static final int NO_SLOT = -1;
 
     private final Runnable delegate;
 
-    NioSelectorScheduledOp(long scheduledNs, Runnable delegate) {
-        this.scheduledNs = scheduledNs;
+    private NioSelectorTimingWheel wheel;
+
+    private NioSelectorScheduledOp prev;
+
+    private NioSelectorScheduledOp next;
+
+    private int slot;
+
+    private long deadlineNs;
+
+    /**
+     * Creates a reusable operation
+     * @param delegate Action to run
+     */
+    public NioSelectorScheduledOp(Runnable delegate) {
         this.delegate = delegate;
+        this.slot = NO_SLOT;
     }
 
     @Override
@@ -16,11 +34,61 @@ public class NioSelectorScheduledOp implements Runnable {
         delegate.run();
     }
 
-    boolean isReady() {
-        return scheduledNs <= System.nanoTime();
+    /**
+     * Cancel the operation if it is scheduled
+     * @return Returns 'true' if the operation was scheduled
+     */
+    public boolean cancel() {
+        if (wheel != null) {
+            wheel.remove(this);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Check is the operation waiting for its deadline
+     * @return Returns 'true' if the operation is scheduled
+     */
+    public boolean isScheduled() {
+        return wheel != null;
+    }
+
+    long getDeadlineNs() {
+        return deadlineNs;
+    }
+
+    void link(NioSelectorTimingWheel wheel, int slot, long deadlineNs) {
+        this.wheel = wheel;
+        this.slot = slot;
+        this.deadlineNs = deadlineNs;
+    }
+
+    void unlink() {
+        this.wheel = null;
+        this.slot = NO_SLOT;
+        this.prev = null;
+        this.next = null;
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    NioSelectorScheduledOp getPrev() {
+        return prev;
+    }
+
+    void setPrev(NioSelectorScheduledOp prev) {
+        this.prev = prev;
+    }
+
+    NioSelectorScheduledOp getNext() {
+        return next;
     }
 
-    long getScheduledNs() {
-        return scheduledNs;
+    void setNext(NioSelectorScheduledOp next) {
+        this.next = next;
     }
 }
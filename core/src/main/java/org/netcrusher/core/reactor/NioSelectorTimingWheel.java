@@ -0,0 +1,252 @@
+package org.netcrusher.core.reactor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timing wheel for selector's scheduled operations. Each slot is an intrusive list of operations
+ * so insert and cancel are O(1) and re-arming an existing operation doesn't allocate. Operations
+ * with deadlines beyond one wheel rotation stay in their slot until the wheel comes around again.
+ * Each slot keeps its earliest deadline which is recomputed lazily only when that operation leaves the slot.
+ * Not thread-safe: should be used only from the selector's thread
+ */
+class NioSelectorTimingWheel {
+
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NioSelectorTimingWheel.class);
+
+    private static final int SLOT_COUNT = 512;
+
+    private static final int SLOT_MASK = SLOT_COUNT - 1;
+
+    private static final int BITMAP_SHIFT = 6;
+
+    private static final int BITMAP_MASK = (1 << BITMAP_SHIFT) - 1;
+
+    private final NioSelectorScheduledOp[] heads;
+
+    private final NioSelectorScheduledOp[] tails;
+
+    private final int[] sizes;
+
+    private final long[] minDeadlines;
+
+    private final boolean[] staleMinDeadlines;
+
+    private final long[] occupied;
+
+    private final long originNs;
+
+    private final long resolutionNs;
+
+    private long currentTick;
+
+    private int size;
+
+    private NioSelectorScheduledOp expiringNext;
+
+    NioSelectorTimingWheel(long nowNs, long resolutionNs) {
+        if (resolutionNs <= 0) {
+            throw new IllegalArgumentException("Resolution must be positive");
+        }
+
+        this.heads = new NioSelectorScheduledOp[SLOT_COUNT];
+        this.tails = new NioSelectorScheduledOp[SLOT_COUNT];
+        this.sizes = new int[SLOT_COUNT];
+        this.minDeadlines = new long[SLOT_COUNT];
+        this.staleMinDeadlines = new boolean[SLOT_COUNT];
+        this.occupied = new long[SLOT_COUNT >>> BITMAP_SHIFT];
+        this.originNs = nowNs;
+        this.resolutionNs = resolutionNs;
+        this.currentTick = 0;
+        this.size = 0;
+    }
+
+    void add(NioSelectorScheduledOp op, long deadlineNs) {
+        if (op.isScheduled()) {
+            remove(op);
+        }
+
+        final long tick = Math.max(tickOf(deadlineNs), currentTick);
+        final int slot = (int) (tick & SLOT_MASK);
+
+        op.link(this, slot, deadlineNs);
+
+        final NioSelectorScheduledOp tail = tails[slot];
+        if (tail == null) {
+            heads[slot] = op;
+        } else {
+            tail.setNext(op);
+            op.setPrev(tail);
+        }
+        tails[slot] = op;
+
+        if (sizes[slot] == 0 || deadlineNs - minDeadlines[slot] < 0) {
+            minDeadlines[slot] = deadlineNs;
+        }
+
+        sizes[slot]++;
+        occupied[slot >>> BITMAP_SHIFT] |= 1L << slot;
+        size++;
+    }
+
+    void remove(NioSelectorScheduledOp op) {
+        final int slot = op.getSlot();
+        final NioSelectorScheduledOp prev = op.getPrev();
+        final NioSelectorScheduledOp next = op.getNext();
+
+        if (op == expiringNext) {
+            expiringNext = next;
+        }
+
+        if (prev == null) {
+            heads[slot] = next;
+        } else {
+            prev.setNext(next);
+        }
+
+        if (next == null) {
+            tails[slot] = prev;
+        } else {
+            next.setPrev(prev);
+        }
+
+        final long deadlineNs = op.getDeadlineNs();
+
+        op.unlink();
+
+        if (--sizes[slot] == 0) {
+            occupied[slot >>> BITMAP_SHIFT] &= ~(1L << slot);
+            staleMinDeadlines[slot] = false;
+        } else if (deadlineNs == minDeadlines[slot]) {
+            staleMinDeadlines[slot] = true;
+        }
+        size--;
+    }
+
+    /**
+     * Runs all operations with deadline reached
+     * @param nowNs Current time
+     * @return Number of operations run
+     */
+    int expire(long nowNs) {
+        final long nowTick = tickOf(nowNs);
+        final long startTick = currentTick;
+
+        // operations re-armed while expiring will go not earlier than the current slot
+        // which stays unprocessed as it may still have operations for this tick
+        currentTick = Math.max(currentTick, nowTick);
+
+        int count = 0;
+        if (size > 0) {
+            final long lastTick = Math.min(nowTick, startTick + SLOT_MASK);
+            for (long tick = startTick; tick <= lastTick && size > 0; tick++) {
+                count += expireSlot((int) (tick & SLOT_MASK), nowNs);
+            }
+        }
+
+        return count;
+    }
+
+    private int expireSlot(int slot, long nowNs) {
+        int count = 0;
+
+        // operations added while running this slot are left for the next pass
+        int budget = sizes[slot];
+
+        NioSelectorScheduledOp op = heads[slot];
+        while (op != null && budget-- > 0) {
+            // the next operation could be cancelled by the one which is going to run so remove() moves the cursor
+            expiringNext = op.getNext();
+
+            if (op.getDeadlineNs() - nowNs <= 0) {
+                remove(op);
+                count++;
+
+                try {
+                    op.run();
+                } catch (Exception e) {
+                    LOGGER.error("Error while executing scheduled operation", e);
+                }
+            }
+
+            op = expiringNext;
+        }
+
+        expiringNext = null;
+
+        return count;
+    }
+
+    /**
+     * Finds the earliest deadline among scheduled operations
+     * @return Deadline in nanoseconds or NO_DEADLINE if nothing is scheduled
+     */
+    long nextDeadlineNs() {
+        if (size == 0) {
+            return NO_DEADLINE;
+        }
+
+        long deadlineNs = NO_DEADLINE;
+
+        // slots are visited in time order so no later slot could have an earlier deadline in this rotation
+        long tick = currentTick;
+        final long lastTick = currentTick + SLOT_MASK;
+        while (tick <= lastTick) {
+            final int slot = (int) (tick & SLOT_MASK);
+
+            if (deadlineNs != NO_DEADLINE && deadlineNs - startOf(tick) <= 0) {
+                break;
+            }
+
+            final long word = occupied[slot >>> BITMAP_SHIFT] >>> (slot & BITMAP_MASK);
+            if (word == 0) {
+                // skip the rest of empty bitmap word
+                tick += BITMAP_MASK + 1 - (slot & BITMAP_MASK);
+                continue;
+            }
+
+            if ((word & 1L) != 0) {
+                final long slotDeadlineNs = minDeadlineNs(slot);
+                if (deadlineNs == NO_DEADLINE || slotDeadlineNs - deadlineNs < 0) {
+                    deadlineNs = slotDeadlineNs;
+                }
+            }
+
+            tick++;
+        }
+
+        return deadlineNs;
+    }
+
+    private long minDeadlineNs(int slot) {
+        if (staleMinDeadlines[slot]) {
+            NioSelectorScheduledOp op = heads[slot];
+            long deadlineNs = op.getDeadlineNs();
+            for (op = op.getNext(); op != null; op = op.getNext()) {
+                if (op.getDeadlineNs() - deadlineNs < 0) {
+                    deadlineNs = op.getDeadlineNs();
+                }
+            }
+
+            minDeadlines[slot] = deadlineNs;
+            staleMinDeadlines[slot] = false;
+        }
+
+        return minDeadlines[slot];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private long tickOf(long ns) {
+        return Math.max(0, (ns - originNs) / resolutionNs);
+    }
+
+    private long startOf(long tick) {
+        return originNs + tick * resolutionNs;
+    }
+
+}
@@ -0,0 +1,131 @@
+package org.netcrusher.core.reactor;
+
+import org.netcrusher.core.meter.Histogram;
+import org.netcrusher.core.meter.HistogramImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Samples heartbeats of selector loops and reports loops stuck in callbacks or operations
+ */
+class NioWatchdog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NioWatchdog.class);
+
+    private static final long THREAD_TERMINATION_TIMEOUT_MS = 5000;
+
+    private static final long[] LAG_BUCKET_BOUNDS_MS = {
+        0, 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000
+    };
+
+    private final NioSelector[] selectors;
+
+    private final long[] reportedBusySinceNs;
+
+    private final long samplePeriodMs;
+
+    private final long stallThresholdNs;
+
+    private final HistogramImpl lagHistogram;
+
+    private final LongAdder stallCount;
+
+    private final Thread thread;
+
+    private volatile boolean open;
+
+    NioWatchdog(NioSelector[] selectors, long samplePeriodMs, long stallThresholdMs) {
+        this.selectors = selectors;
+        this.reportedBusySinceNs = new long[selectors.length];
+        this.samplePeriodMs = samplePeriodMs;
+        this.stallThresholdNs = TimeUnit.MILLISECONDS.toNanos(stallThresholdMs);
+        this.lagHistogram = new HistogramImpl(LAG_BUCKET_BOUNDS_MS);
+        this.stallCount = new LongAdder();
+
+        for (int i = 0; i < selectors.length; i++) {
+            reportedBusySinceNs[i] = NioSelector.NOT_BUSY;
+        }
+
+        this.thread = new Thread(this::loop);
+        this.thread.setName("NetCrusher selector watchdog");
+        this.thread.setDaemon(true);
+        this.thread.start();
+
+        this.open = true;
+    }
+
+    synchronized void close() {
+        if (open) {
+            boolean interrupted = false;
+
+            thread.interrupt();
+            try {
+                thread.join(THREAD_TERMINATION_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+
+            open = false;
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    Histogram getLagHistogram() {
+        return lagHistogram;
+    }
+
+    long getStallCount() {
+        return stallCount.sum();
+    }
+
+    private void loop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(samplePeriodMs);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            for (int i = 0; i < selectors.length; i++) {
+                sample(i);
+            }
+        }
+    }
+
+    private void sample(int index) {
+        final long busySinceNs = selectors[index].getBusySinceNs();
+
+        final long lagNs;
+        if (busySinceNs == NioSelector.NOT_BUSY) {
+            lagNs = 0;
+        } else {
+            lagNs = Math.max(0, System.nanoTime() - busySinceNs);
+        }
+
+        lagHistogram.record(TimeUnit.NANOSECONDS.toMillis(lagNs));
+
+        // the same stall is reported once however many samples it lasts
+        if (lagNs > stallThresholdNs && reportedBusySinceNs[index] != busySinceNs) {
+            reportedBusySinceNs[index] = busySinceNs;
+            stallCount.increment();
+
+            reportStall(selectors[index].getThread(), lagNs);
+        }
+    }
+
+    private static void reportStall(Thread thread, long lagNs) {
+        StringBuilder sb = new StringBuilder();
+        for (StackTraceElement element : thread.getStackTrace()) {
+            sb.append(System.lineSeparator()).append("\tat ").append(element);
+        }
+
+        LOGGER.warn("Selector loop '{}' is stalled for {}ms:{}",
+            thread.getName(), TimeUnit.NANOSECONDS.toMillis(lagNs), sb);
+    }
+}
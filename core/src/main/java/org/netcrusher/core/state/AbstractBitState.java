@@ -0,0 +1,37 @@
+package org.netcrusher.core.state;
+
+/**
+ * Bit state checks shared by states with different memory semantics. Subclasses decide how the value is stored
+ */
+public abstract class AbstractBitState {
+
+    protected static int bit(int num) {
+        return 1 << num;
+    }
+
+    public abstract int get();
+
+    public abstract void set(int state);
+
+    public boolean is(int state) {
+        return get() == state;
+    }
+
+    public boolean not(int state) {
+        return get() != state;
+    }
+
+    public boolean isAnyOf(int mask) {
+        return (get() & mask) != 0;
+    }
+
+    public boolean isNotOf(int mask) {
+        return (get() & mask) == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "state=" + get();
+    }
+
+}
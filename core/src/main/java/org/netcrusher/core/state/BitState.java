@@ -2,7 +2,7 @@ package org.netcrusher.core.state;
 
 import java.io.Serializable;
 
-public class BitState implements Serializable {
+public class BitState extends AbstractBitState implements Serializable {
 
     private volatile int state;
 
@@ -10,41 +10,18 @@ public class BitState implements Serializable {
         this.state = state;
     }
 
-    protected static int bit(int num) {
-        return 1 << num;
-    }
-
+    @Override
     public int get() {
         return state;
     }
 
+    @Override
     public void set(int state) {
         this.state = state;
     }
 
-    public boolean is(int state) {
-        return this.state == state;
-    }
-
-    public boolean not(int state) {
-        return this.state != state;
-    }
-
-    public boolean isAnyOf(int mask) {
-        return (this.state & mask) != 0;
-    }
-
-    public boolean isNotOf(int mask) {
-        return (this.state & mask) == 0;
-    }
-
     public boolean equalTo(BitState that) {
         return this.state == that.state;
     }
 
-    @Override
-    public String toString() {
-        return "state=" + state;
-    }
-
 }
@@ -0,0 +1,26 @@
+package org.netcrusher.core.state;
+
+/**
+ * Bit state which is owned by a single thread (usually a selector thread). The owner reads and writes
+ * the state with plain memory access, so checks in I/O loops don't pay for volatile reads or writes.
+ * Other threads should not read the state directly but ask the owner thread
+ */
+public class ConfinedBitState extends AbstractBitState {
+
+    private int state;
+
+    public ConfinedBitState(int state) {
+        this.state = state;
+    }
+
+    @Override
+    public int get() {
+        return state;
+    }
+
+    @Override
+    public void set(int state) {
+        this.state = state;
+    }
+
+}
@@ -31,7 +31,15 @@ public class ByteRateThrottler extends AbstractRateThrottler {
         super(rate, time, timeUnit, factor);
     }
 
-    protected ByteRateThrottler(long rate, long time, TimeUnit timeUnit, int factor, Chronometer chronometer) {
+    /**
+     * Create a new throttler with a custom time source, e.g. the reactor's chronometer in virtual time mode
+     * @param rate How many byte are expected per period
+     * @param time Period time
+     * @param timeUnit Period time unit
+     * @param factor Division factor
+     * @param chronometer Time source
+     */
+    public ByteRateThrottler(long rate, long time, TimeUnit timeUnit, int factor, Chronometer chronometer) {
         super(rate, time, timeUnit, factor, chronometer);
     }
 
@@ -31,7 +31,15 @@ public class PacketRateThrottler extends AbstractRateThrottler {
         super(rate, time, timeUnit, factor);
     }
 
-    protected PacketRateThrottler(long rate, long time, TimeUnit timeUnit, int factor, Chronometer chronometer) {
+    /**
+     * Create new throttler with a custom time source, e.g. the reactor's chronometer in virtual time mode
+     * @param rate How many packets (datagrams) are expected per period
+     * @param time Period time
+     * @param timeUnit Period time unit
+     * @param factor Division factor
+     * @param chronometer Time source
+     */
+    public PacketRateThrottler(long rate, long time, TimeUnit timeUnit, int factor, Chronometer chronometer) {
         super(rate, time, timeUnit, factor, chronometer);
     }
 
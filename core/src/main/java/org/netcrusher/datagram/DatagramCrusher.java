@@ -2,8 +2,12 @@ package org.netcrusher.datagram;
 
 import org.netcrusher.NetCrusher;
 import org.netcrusher.core.buffer.BufferOptions;
+import org.netcrusher.core.meter.RateMeter;
+import org.netcrusher.core.meter.RateMeterImpl;
 import org.netcrusher.core.meter.RateMeters;
 import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.core.reactor.NioSelector;
+import org.netcrusher.core.reactor.NioSelectorScheduledOp;
 import org.netcrusher.core.state.BitState;
 import org.netcrusher.datagram.callback.DatagramClientCreation;
 import org.netcrusher.datagram.callback.DatagramClientDeletion;
@@ -14,6 +18,7 @@ import org.slf4j.LoggerFactory;
 import java.net.InetSocketAddress;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -41,8 +46,12 @@ public class DatagramCrusher implements NetCrusher {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DatagramCrusher.class);
 
+    private static final long DRAIN_CHECK_PERIOD_NS = TimeUnit.MILLISECONDS.toNanos(10);
+
     private final NioReactor reactor;
 
+    private final NioSelector selector;
+
     private final DatagramCrusherSocketOptions socketOptions;
 
     private final InetSocketAddress bindAddress;
@@ -61,10 +70,16 @@ public class DatagramCrusher implements NetCrusher {
 
     private final boolean deferredListeners;
 
+    private final RateMeterImpl cpuMeter;
+
+    private final NioSelectorScheduledOp drainCheckOp;
+
     private final State state;
 
     private DatagramInner inner;
 
+    private CompletableFuture<Void> drained;
+
     public DatagramCrusher(DatagramCrusherOptions options) {
         if (options == null) {
             throw new IllegalArgumentException("Options are not set");
@@ -82,6 +97,8 @@ public class DatagramCrusher implements NetCrusher {
         );
 
         this.reactor = options.getReactor();
+        // the inner socket and all its outers are owned by the same selector loop
+        this.selector = reactor.nextSelector();
         this.bindAddress = options.getBindAddress();
         this.connectAddress = options.getConnectAddress();
         this.bindBeforeConnectAddress = options.getBindBeforeConnectAddress();
@@ -90,10 +107,16 @@ public class DatagramCrusher implements NetCrusher {
         this.creationListener = options.getCreationListener();
         this.deletionListener = options.getDeletionListener();
         this.deferredListeners = options.isDeferredListeners();
+        this.cpuMeter = new RateMeterImpl();
+        this.drainCheckOp = new NioSelectorScheduledOp(this::checkDrained);
 
         this.state = new State(State.CLOSED);
     }
 
+    RateMeterImpl getCrusherCpuMeter() {
+        return cpuMeter;
+    }
+
     void notifyOuterCreated(DatagramOuter outer) {
         if (creationListener != null) {
             Runnable r = () -> creationListener.created(outer.getClientAddress());
@@ -113,10 +136,10 @@ public class DatagramCrusher implements NetCrusher {
 
     @Override
     public void open() {
-        reactor.getSelector().execute(() -> {
+        selector.execute(() -> {
             if (state.is(State.CLOSED)) {
                 this.inner = new DatagramInner(this,
-                    reactor, socketOptions, bufferOptions, filters,
+                    selector, socketOptions, bufferOptions, filters,
                     bindAddress, connectAddress, bindBeforeConnectAddress);
                 this.inner.unfreeze();
 
@@ -124,6 +147,8 @@ public class DatagramCrusher implements NetCrusher {
 
                 state.set(State.OPEN);
 
+                reactor.addCrusher(this);
+
                 return true;
             } else {
                 throw new IllegalStateException("DatagramCrusher is already open");
@@ -133,29 +158,93 @@ public class DatagramCrusher implements NetCrusher {
 
     @Override
     public void close() {
-        reactor.getSelector().execute(() -> {
-            if (state.not(State.CLOSED)) {
-                if (state.is(State.OPEN)) {
-                    freeze();
-                }
+        selector.execute(this::doClose);
+    }
 
-                this.inner.close();
-                this.inner = null;
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        return selector.executeAsync(this::doClose).thenApply(done -> null);
+    }
 
-                state.set(State.CLOSED);
+    private boolean doClose() {
+        if (state.not(State.CLOSED)) {
+            if (state.is(State.OPEN)) {
+                freeze();
+            }
 
-                LOGGER.info("DatagramCrusher <{}>-<{}> is closed", bindAddress, connectAddress);
+            this.inner.close();
+            this.inner = null;
 
-                return true;
+            drainCheckOp.cancel();
+            if (drained != null) {
+                drained.complete(null);
+                drained = null;
+            }
+
+            reactor.removeCrusher(this);
+
+            state.set(State.CLOSED);
+
+            LOGGER.info("DatagramCrusher <{}>-<{}> is closed", bindAddress, connectAddress);
+
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> closeGracefullyAsync(long timeoutMs) {
+        return selector.executeAsync(this::doDrain)
+            .thenCompose(draining -> draining.copy()
+                .orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .handle((done, e) -> {
+                    if (e != null) {
+                        LOGGER.warn("DatagramCrusher <{}>-<{}> is not drained in {}ms",
+                            bindAddress, connectAddress, timeoutMs);
+                    }
+                    return null;
+                }))
+            .thenCompose(done -> closeAsync());
+    }
+
+    private CompletableFuture<Void> doDrain() {
+        if (state.is(State.CLOSED)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (drained == null) {
+            drained = new CompletableFuture<>();
+
+            if (state.is(State.OPEN)) {
+                inner.drain();
+
+                LOGGER.info("DatagramCrusher <{}>-<{}> is draining", bindAddress, connectAddress);
+
+                checkDrained();
             } else {
-                return false;
+                // frozen crusher is not going to flush anything
+                drained.complete(null);
             }
-        });
+        }
+
+        return drained;
+    }
+
+    private void checkDrained() {
+        // queues are flushed by the selector callbacks so they are just checked from time to time
+        if (drained != null && inner != null) {
+            if (inner.isDrained()) {
+                drained.complete(null);
+            } else {
+                selector.schedule(drainCheckOp, DRAIN_CHECK_PERIOD_NS);
+            }
+        }
     }
 
     @Override
     public void reopen() {
-        reactor.getSelector().execute(() -> {
+        selector.execute(() -> {
             if (state.not(State.CLOSED)) {
                 close();
                 open();
@@ -174,36 +263,50 @@ public class DatagramCrusher implements NetCrusher {
 
     @Override
     public void freeze() {
-        reactor.getSelector().execute(() -> {
-            if (state.is(State.OPEN)) {
-                if (!inner.isFrozen()) {
-                    inner.freeze();
-                }
+        selector.execute(this::doFreeze);
+    }
 
-                state.set(State.FROZEN);
+    @Override
+    public CompletableFuture<Void> freezeAsync() {
+        return selector.executeAsync(this::doFreeze).thenApply(done -> null);
+    }
 
-                return true;
-            } else {
-                throw new IllegalStateException("DatagramCrusher is not open on freeze");
+    private boolean doFreeze() {
+        if (state.is(State.OPEN)) {
+            if (!inner.isFrozen()) {
+                inner.freeze();
             }
-        });
+
+            state.set(State.FROZEN);
+
+            return true;
+        } else {
+            throw new IllegalStateException("DatagramCrusher is not open on freeze");
+        }
     }
 
     @Override
     public void unfreeze() {
-        reactor.getSelector().execute(() -> {
-            if (state.is(State.FROZEN)) {
-                if (inner.isFrozen()) {
-                    inner.unfreeze();
-                }
+        selector.execute(this::doUnfreeze);
+    }
 
-                state.set(State.OPEN);
+    @Override
+    public CompletableFuture<Void> unfreezeAsync() {
+        return selector.executeAsync(this::doUnfreeze).thenApply(done -> null);
+    }
 
-                return true;
-            } else {
-                throw new IllegalStateException("DatagramCrusher is not frozen on unfreeze");
+    private boolean doUnfreeze() {
+        if (state.is(State.FROZEN)) {
+            if (inner.isFrozen()) {
+                inner.unfreeze();
             }
-        });
+
+            state.set(State.OPEN);
+
+            return true;
+        } else {
+            throw new IllegalStateException("DatagramCrusher is not frozen on unfreeze");
+        }
     }
 
     @Override
@@ -223,7 +326,7 @@ public class DatagramCrusher implements NetCrusher {
 
     @Override
     public Collection<InetSocketAddress> getClientAddresses() {
-        return reactor.getSelector().execute(() -> {
+        return selector.execute(() -> {
             if (state.not(State.CLOSED)) {
                 return inner.getOuters().stream()
                     .map(DatagramOuter::getClientAddress)
@@ -236,7 +339,7 @@ public class DatagramCrusher implements NetCrusher {
 
     @Override
     public RateMeters getClientByteMeters(InetSocketAddress clientAddress) {
-        return reactor.getSelector().execute(() -> {
+        return selector.execute(() -> {
             if (state.not(State.CLOSED)) {
                 DatagramOuter outer = inner.getOuter(clientAddress);
                 if (outer != null) {
@@ -248,13 +351,32 @@ public class DatagramCrusher implements NetCrusher {
         });
     }
 
+    @Override
+    public RateMeter getCpuMeter() {
+        return cpuMeter;
+    }
+
+    @Override
+    public RateMeter getClientCpuMeter(InetSocketAddress clientAddress) {
+        return selector.execute(() -> {
+            if (state.not(State.CLOSED)) {
+                DatagramOuter outer = inner.getOuter(clientAddress);
+                if (outer != null) {
+                    return outer.getCpuMeter();
+                }
+            }
+
+            return null;
+        });
+    }
+
     /**
      * Get client packet meters
      * @param clientAddress Client address
      * @return Rate meters or null
      */
     public RateMeters getClientPacketMeters(InetSocketAddress clientAddress) {
-        return reactor.getSelector().execute(() -> {
+        return selector.execute(() -> {
             if (state.not(State.CLOSED)) {
                 DatagramOuter outer = inner.getOuter(clientAddress);
                 if (outer != null) {
@@ -271,7 +393,7 @@ public class DatagramCrusher implements NetCrusher {
      * @return Rate meters or null
      */
     public RateMeters getInnerByteMeters() {
-        return reactor.getSelector().execute(() -> {
+        return selector.execute(() -> {
             if (state.not(State.CLOSED)) {
                 return inner.getByteMeters();
             } else {
@@ -285,7 +407,7 @@ public class DatagramCrusher implements NetCrusher {
      * @return Rate meters or null
      */
     public RateMeters getInnerPacketMeters() {
-        return reactor.getSelector().execute(() -> {
+        return selector.execute(() -> {
             if (state.not(State.CLOSED)) {
                 return inner.getPacketMeters();
             } else {
@@ -296,13 +418,20 @@ public class DatagramCrusher implements NetCrusher {
 
     @Override
     public boolean closeClient(InetSocketAddress clientAddress) {
-        return reactor.getSelector().execute(() -> {
-            if (state.not(State.CLOSED)) {
-                return inner.closeOuter(clientAddress);
-            } else {
-                return false;
-            }
-        });
+        return selector.execute(() -> doCloseClient(clientAddress));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> closeClientAsync(InetSocketAddress clientAddress) {
+        return selector.executeAsync(() -> doCloseClient(clientAddress));
+    }
+
+    private boolean doCloseClient(InetSocketAddress clientAddress) {
+        if (state.not(State.CLOSED)) {
+            return inner.closeOuter(clientAddress);
+        } else {
+            return false;
+        }
     }
 
     /**
@@ -312,7 +441,7 @@ public class DatagramCrusher implements NetCrusher {
      * @return Number of closed clients
      */
     public int closeIdleClients(long maxIdleDuration, TimeUnit timeUnit) {
-        return reactor.getSelector().execute(() -> {
+        return selector.execute(() -> {
             if (state.not(State.CLOSED)) {
                 return inner.closeIdleOuters(timeUnit.toMillis(maxIdleDuration));
             } else {
@@ -323,7 +452,7 @@ public class DatagramCrusher implements NetCrusher {
 
     @Override
     public int getClientTotalCount() {
-        return reactor.getSelector().execute(() -> {
+        return selector.execute(() -> {
             if (state.not(State.CLOSED)) {
                 return inner.getClientTotalCount();
             } else {
@@ -1,12 +1,15 @@
 package org.netcrusher.datagram;
 
 import org.netcrusher.core.buffer.BufferOptions;
+import org.netcrusher.core.buffer.MemoryBudget;
+import org.netcrusher.core.chronometer.Chronometer;
 import org.netcrusher.core.meter.RateMeterImpl;
 import org.netcrusher.core.meter.RateMeters;
 import org.netcrusher.core.nio.NioUtils;
 import org.netcrusher.core.nio.SelectionKeyControl;
-import org.netcrusher.core.reactor.NioReactor;
-import org.netcrusher.core.state.BitState;
+import org.netcrusher.core.reactor.NioSelector;
+import org.netcrusher.core.reactor.NioSelectorScheduledOp;
+import org.netcrusher.core.state.ConfinedBitState;
 import org.netcrusher.core.throttle.Throttler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,7 +35,9 @@ class DatagramInner {
 
     private final DatagramCrusher crusher;
 
-    private final NioReactor reactor;
+    private final NioSelector selector;
+
+    private final Chronometer chronometer;
 
     private final DatagramCrusherSocketOptions socketOptions;
 
@@ -58,11 +63,13 @@ class DatagramInner {
 
     private final BufferOptions bufferOptions;
 
+    private final NioSelectorScheduledOp unthrottleOp;
+
     private final State state;
 
     DatagramInner(
             DatagramCrusher crusher,
-            NioReactor reactor,
+            NioSelector selector,
             DatagramCrusherSocketOptions socketOptions,
             BufferOptions bufferOptions,
             DatagramFilters filters,
@@ -71,17 +78,20 @@ class DatagramInner {
             InetSocketAddress bindBeforeConnectAddress) throws IOException
     {
         this.crusher = crusher;
-        this.reactor = reactor;
+        this.selector = selector;
+        this.chronometer = selector.getChronometer();
         this.filters = filters;
         this.socketOptions = socketOptions;
         this.bindAddress = bindAddress;
         this.connectAddress = connectAddress;
         this.bindBeforeConnectAddress = bindBeforeConnectAddress;
         this.outers = new ConcurrentHashMap<>(DEFAULT_OUTER_CAPACITY);
-        this.incoming = new DatagramQueue(bufferOptions);
+        this.incoming = new DatagramQueue(bufferOptions, chronometer, selector.getMemoryBudget());
         this.bufferOptions = bufferOptions;
         this.meters = new Meters();
 
+        this.unthrottleOp = new NioSelectorScheduledOp(this::unthrottleSend);
+
         this.channel = DatagramChannel.open(socketOptions.getProtocolFamily());
         socketOptions.setupSocketChannel(this.channel);
         this.channel.bind(bindAddress);
@@ -90,7 +100,7 @@ class DatagramInner {
 
         this.bb = NioUtils.allocaleByteBuffer(channel.socket().getReceiveBufferSize(), bufferOptions.isDirect());
 
-        SelectionKey selectionKey = reactor.getSelector().register(channel, 0, this::callback);
+        SelectionKey selectionKey = selector.register(channel, 0, this::callback, crusher.getCrusherCpuMeter());
         this.selectionKeyControl = new SelectionKeyControl(selectionKey);
 
         this.state = new State(State.FROZEN);
@@ -99,7 +109,7 @@ class DatagramInner {
     }
 
     void close() {
-        reactor.getSelector().execute(() -> {
+        selector.execute(() -> {
             if (state.not(State.CLOSED)) {
                 if (state.is(State.OPEN)) {
                     freeze();
@@ -109,6 +119,10 @@ class DatagramInner {
                     LOGGER.warn("On closing inner has {} incoming datagrams", incoming.size());
                 }
 
+                incoming.clear();
+
+                unthrottleOp.cancel();
+
                 NioUtils.close(channel);
 
                 Iterator<DatagramOuter> outerIterator = outers.values().iterator();
@@ -120,7 +134,7 @@ class DatagramInner {
                     crusher.notifyOuterDeleted(outer);
                 }
 
-                reactor.getSelector().wakeup();
+                selector.wakeup();
 
                 state.set(State.CLOSED);
 
@@ -139,7 +153,7 @@ class DatagramInner {
     }
 
     void unfreeze() {
-        reactor.getSelector().execute(() -> {
+        selector.execute(() -> {
             if (state.is(State.FROZEN)) {
                 if (incoming.isEmpty()) {
                     selectionKeyControl.setReadsOnly();
@@ -161,7 +175,7 @@ class DatagramInner {
     }
 
     void freeze() {
-        reactor.getSelector().execute(() -> {
+        selector.execute(() -> {
             if (state.is(State.OPEN)) {
                 if (selectionKeyControl.isValid()) {
                     selectionKeyControl.setNone();
@@ -184,6 +198,28 @@ class DatagramInner {
         return state.isAnyOf(State.FROZEN | State.CLOSED);
     }
 
+    void drain() {
+        if (state.is(State.OPEN)) {
+            // datagrams from clients are not read anymore but replies from outers are still forwarded
+            state.setDraining(true);
+            selectionKeyControl.disableReads();
+        }
+    }
+
+    boolean isDrained() {
+        if (!incoming.isEmpty()) {
+            return false;
+        }
+
+        for (DatagramOuter outer : outers.values()) {
+            if (!outer.isDrained()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     private void callback(SelectionKey selectionKey) {
         if (selectionKey.isWritable()) {
             try {
@@ -218,7 +254,7 @@ class DatagramInner {
                 break;
             }
 
-            final long delayNs = entry.getScheduledNs() - System.nanoTime();
+            final long delayNs = entry.getScheduledNs() - chronometer.getTickNs();
             if (delayNs > 0) {
                 throttleSend(delayNs);
                 incoming.retry(entry);
@@ -272,6 +308,10 @@ class DatagramInner {
 
     private void handleReadableEvent() throws IOException {
         while (state.isReadable()) {
+            if (awaitMemory()) {
+                break;
+            }
+
             bb.clear();
 
             final InetSocketAddress address = (InetSocketAddress) channel.receive(bb);
@@ -294,6 +334,33 @@ class DatagramInner {
         }
     }
 
+    private boolean awaitMemory() {
+        // datagrams left unread in the socket are dropped by the kernel when its buffer is full
+        final MemoryBudget memoryBudget = selector.getMemoryBudget();
+        if (memoryBudget != null && memoryBudget.isExhausted()) {
+            selectionKeyControl.disableReads();
+
+            if (!state.isMemoryWaiting()) {
+                state.setMemoryWaiting(true);
+                memoryBudget.await(() -> selector.executeAsync(this::memoryReleased));
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private boolean memoryReleased() {
+        state.setMemoryWaiting(false);
+
+        if (state.isReadable() && selectionKeyControl.isValid()) {
+            selectionKeyControl.enableReads();
+        }
+
+        return true;
+    }
+
     private void suggestDeferredSent() {
         if (!incoming.isEmpty() && state.isWritable()) {
             selectionKeyControl.enableWrites();
@@ -333,7 +400,7 @@ class DatagramInner {
                 this.selectionKeyControl.disableWrites();
             }
 
-            reactor.getSelector().schedule(this::unthrottleSend, delayNs);
+            selector.schedule(unthrottleOp, delayNs);
         }
     }
 
@@ -355,7 +422,7 @@ class DatagramInner {
         DatagramOuter outer = outers.get(address);
 
         if (outer == null) {
-            outer = new DatagramOuter(this, reactor, socketOptions, filters, bufferOptions,
+            outer = new DatagramOuter(this, selector, socketOptions, filters, bufferOptions,
                 address, connectAddress, bindBeforeConnectAddress);
             outer.unfreeze();
 
@@ -414,6 +481,10 @@ class DatagramInner {
         return outers.values();
     }
 
+    RateMeterImpl getCrusherCpuMeter() {
+        return crusher.getCrusherCpuMeter();
+    }
+
     RateMeters getByteMeters() {
         return new RateMeters(meters.getReadBytes(), meters.getSentBytes());
     }
@@ -426,7 +497,7 @@ class DatagramInner {
         return meters.getClientTotalCount().get();
     }
 
-    static final class State extends BitState {
+    static final class State extends ConfinedBitState {
 
         static final int OPEN = bit(0);
 
@@ -436,9 +507,15 @@ class DatagramInner {
 
         private boolean sendThrottled;
 
+        private boolean memoryWaiting;
+
+        private boolean draining;
+
         State(int state) {
             super(state);
             this.sendThrottled = false;
+            this.memoryWaiting = false;
+            this.draining = false;
         }
 
         boolean isWritable() {
@@ -446,7 +523,19 @@ class DatagramInner {
         }
 
         boolean isReadable() {
-            return is(OPEN);
+            return is(OPEN) && !draining;
+        }
+
+        void setDraining(boolean draining) {
+            this.draining = draining;
+        }
+
+        boolean isMemoryWaiting() {
+            return memoryWaiting;
+        }
+
+        void setMemoryWaiting(boolean memoryWaiting) {
+            this.memoryWaiting = memoryWaiting;
         }
 
         boolean isSendThrottled() {
@@ -1,14 +1,18 @@
 package org.netcrusher.datagram;
 
 import org.netcrusher.core.buffer.BufferOptions;
+import org.netcrusher.core.buffer.MemoryBudget;
+import org.netcrusher.core.chronometer.Chronometer;
 import org.netcrusher.core.filter.PassFilter;
 import org.netcrusher.core.filter.TransformFilter;
+import org.netcrusher.core.meter.RateMeter;
 import org.netcrusher.core.meter.RateMeterImpl;
 import org.netcrusher.core.meter.RateMeters;
 import org.netcrusher.core.nio.NioUtils;
 import org.netcrusher.core.nio.SelectionKeyControl;
-import org.netcrusher.core.reactor.NioReactor;
-import org.netcrusher.core.state.BitState;
+import org.netcrusher.core.reactor.NioSelector;
+import org.netcrusher.core.reactor.NioSelectorScheduledOp;
+import org.netcrusher.core.state.ConfinedBitState;
 import org.netcrusher.core.throttle.Throttler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,7 +36,9 @@ class DatagramOuter {
 
     private final DatagramInner inner;
 
-    private final NioReactor reactor;
+    private final NioSelector selector;
+
+    private final Chronometer chronometer;
 
     private final InetSocketAddress clientAddress;
 
@@ -50,13 +56,17 @@ class DatagramOuter {
 
     private final ByteBuffer bb;
 
+    private final NioSelectorScheduledOp unthrottleOp;
+
+    private final RateMeterImpl cpuMeter;
+
     private final State state;
 
     private volatile long lastOperationTimestamp;
 
     DatagramOuter(
             DatagramInner inner,
-            NioReactor reactor,
+            NioSelector selector,
             DatagramCrusherSocketOptions socketOptions,
             DatagramFilters filters,
             BufferOptions bufferOptions,
@@ -65,15 +75,19 @@ class DatagramOuter {
             InetSocketAddress bindBeforeConnectAddress) throws IOException
     {
         this.inner = inner;
-        this.reactor = reactor;
+        this.selector = selector;
+        this.chronometer = selector.getChronometer();
         this.clientAddress = clientAddress;
         this.connectAddress = connectAddress;
-        this.incoming = new DatagramQueue(bufferOptions);
-        this.lastOperationTimestamp = System.currentTimeMillis();
+        this.incoming = new DatagramQueue(bufferOptions, chronometer, selector.getMemoryBudget());
+        this.lastOperationTimestamp = chronometer.getEpochMs();
 
         this.meters = new Meters();
+        this.cpuMeter = new RateMeterImpl();
         this.filters = new Filters(filters, clientAddress);
 
+        this.unthrottleOp = new NioSelectorScheduledOp(this::unthrottleSend);
+
         this.channel = DatagramChannel.open(socketOptions.getProtocolFamily());
         socketOptions.setupSocketChannel(this.channel);
         this.channel.configureBlocking(false);
@@ -90,7 +104,7 @@ class DatagramOuter {
 
         this.bb = NioUtils.allocaleByteBuffer(channel.socket().getReceiveBufferSize(), bufferOptions.isDirect());
 
-        SelectionKey selectionKey = reactor.getSelector().register(channel, 0, this::callback);
+        SelectionKey selectionKey = selector.register(channel, 0, this::callback, cpuMeter, inner.getCrusherCpuMeter());
         this.selectionKeyControl = new SelectionKeyControl(selectionKey);
 
         this.state = new State(State.FROZEN);
@@ -101,7 +115,7 @@ class DatagramOuter {
     }
 
     void close() {
-        reactor.getSelector().execute(() -> {
+        selector.execute(() -> {
             if (state.not(State.CLOSED)) {
                 if (state.is(State.OPEN)) {
                     freeze();
@@ -111,6 +125,10 @@ class DatagramOuter {
                     LOGGER.warn("On closing outer has {} incoming datagrams", incoming.size());
                 }
 
+                incoming.clear();
+
+                unthrottleOp.cancel();
+
                 NioUtils.close(channel);
 
                 state.set(State.CLOSED);
@@ -130,7 +148,7 @@ class DatagramOuter {
     }
 
     void unfreeze() {
-        reactor.getSelector().execute(() -> {
+        selector.execute(() -> {
             if (state.is(State.FROZEN)) {
                 if (incoming.isEmpty()) {
                     selectionKeyControl.setReadsOnly();
@@ -147,8 +165,12 @@ class DatagramOuter {
         });
     }
 
+    boolean isDrained() {
+        return incoming.isEmpty();
+    }
+
     void freeze() {
-        reactor.getSelector().execute(() -> {
+        selector.execute(() -> {
             if (state.is(State.OPEN)) {
                 if (selectionKeyControl.isValid()) {
                     selectionKeyControl.setNone();
@@ -209,7 +231,7 @@ class DatagramOuter {
                 break;
             }
 
-            final long delayNs = entry.getScheduledNs() - System.nanoTime();
+            final long delayNs = entry.getScheduledNs() - chronometer.getTickNs();
             if (delayNs > 0) {
                 throttleSend(delayNs);
                 incoming.retry(entry);
@@ -251,7 +273,7 @@ class DatagramOuter {
                 }
 
                 count++;
-                lastOperationTimestamp = System.currentTimeMillis();
+                lastOperationTimestamp = chronometer.getEpochMs();
             } else {
                 break;
             }
@@ -264,6 +286,10 @@ class DatagramOuter {
 
     private void handleReadableEvent() throws IOException {
         while (state.isReadable()) {
+            if (awaitMemory()) {
+                break;
+            }
+
             bb.clear();
 
             final SocketAddress address = channel.receive(bb);
@@ -291,10 +317,37 @@ class DatagramOuter {
                 inner.enqueue(clientAddress, bb);
             }
 
-            lastOperationTimestamp = System.currentTimeMillis();
+            lastOperationTimestamp = chronometer.getEpochMs();
         }
     }
 
+    private boolean awaitMemory() {
+        // datagrams left unread in the socket are dropped by the kernel when its buffer is full
+        final MemoryBudget memoryBudget = selector.getMemoryBudget();
+        if (memoryBudget != null && memoryBudget.isExhausted()) {
+            selectionKeyControl.disableReads();
+
+            if (!state.isMemoryWaiting()) {
+                state.setMemoryWaiting(true);
+                memoryBudget.await(() -> selector.executeAsync(this::memoryReleased));
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private boolean memoryReleased() {
+        state.setMemoryWaiting(false);
+
+        if (state.isReadable() && selectionKeyControl.isValid()) {
+            selectionKeyControl.enableReads();
+        }
+
+        return true;
+    }
+
     private void suggestDeferredSent() {
         if (!incoming.isEmpty() && state.isWritable()) {
             selectionKeyControl.enableWrites();
@@ -352,7 +405,7 @@ class DatagramOuter {
                 this.selectionKeyControl.disableWrites();
             }
 
-            reactor.getSelector().schedule(this::unthrottleSend, delayNs);
+            selector.schedule(unthrottleOp, delayNs);
         }
     }
 
@@ -375,7 +428,11 @@ class DatagramOuter {
     }
 
     long getIdleDurationMs() {
-        return System.currentTimeMillis() - lastOperationTimestamp;
+        return chronometer.getEpochMs() - lastOperationTimestamp;
+    }
+
+    RateMeter getCpuMeter() {
+        return cpuMeter;
     }
 
     RateMeters getByteMeters() {
@@ -386,7 +443,7 @@ class DatagramOuter {
         return new RateMeters(meters.getReadPackets(), meters.getSentPackets());
     }
 
-    static final class State extends BitState {
+    static final class State extends ConfinedBitState {
 
         static final int OPEN = bit(0);
 
@@ -396,9 +453,12 @@ class DatagramOuter {
 
         private boolean sendThrottled;
 
+        private boolean memoryWaiting;
+
         State(int state) {
             super(state);
             this.sendThrottled = false;
+            this.memoryWaiting = false;
         }
 
         boolean isWritable() {
@@ -409,6 +469,14 @@ class DatagramOuter {
             return is(OPEN);
         }
 
+        boolean isMemoryWaiting() {
+            return memoryWaiting;
+        }
+
+        void setMemoryWaiting(boolean memoryWaiting) {
+            this.memoryWaiting = memoryWaiting;
+        }
+
         boolean isSendThrottled() {
             return sendThrottled;
         }
@@ -1,6 +1,8 @@
 package org.netcrusher.datagram;
 
 import org.netcrusher.core.buffer.BufferOptions;
+import org.netcrusher.core.buffer.MemoryBudget;
+import org.netcrusher.core.chronometer.Chronometer;
 import org.netcrusher.core.nio.NioUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,12 +21,19 @@ class DatagramQueue {
 
     private final Queue<BufferEntry> pending;
 
-    DatagramQueue(BufferOptions bufferOptions) {
+    private final Chronometer chronometer;
+
+    private final MemoryBudget budget;
+
+    DatagramQueue(BufferOptions bufferOptions, Chronometer chronometer, MemoryBudget budget) {
         this.entries = new ArrayDeque<>(bufferOptions.getCount());
         this.pending = new ArrayDeque<>(bufferOptions.getCount());
+        this.chronometer = chronometer;
+        this.budget = budget;
 
+        final long nowNs = chronometer.getTickNs();
         for (int i = 0, limit = bufferOptions.getCount(); i < limit; i++) {
-            this.pending.add(new BufferEntry(bufferOptions.getSize(), bufferOptions.isDirect()));
+            this.pending.add(new BufferEntry(bufferOptions.getSize(), bufferOptions.isDirect(), nowNs));
         }
     }
 
@@ -51,7 +60,12 @@ class DatagramQueue {
             entryBuffer.put(bbToCopy);
             entryBuffer.flip();
 
-            entry.schedule(address, delayNs);
+            // the datagram keeps its size in the limit until the entry is released
+            if (budget != null) {
+                budget.acquire(entryBuffer.limit());
+            }
+
+            entry.schedule(address, chronometer.getTickNs() + delayNs);
             entries.addLast(entry);
 
             return true;
@@ -72,10 +86,20 @@ class DatagramQueue {
     }
 
     public void release(BufferEntry entry) {
+        if (budget != null) {
+            budget.release(entry.getBuffer().limit());
+        }
+
         entry.getBuffer().clear();
         pending.add(entry);
     }
 
+    public void clear() {
+        while (!entries.isEmpty()) {
+            release(entries.pollFirst());
+        }
+    }
+
     public static final class BufferEntry {
 
         private final ByteBuffer buffer;
@@ -84,15 +108,15 @@ class DatagramQueue {
 
         private long scheduledNs;
 
-        private BufferEntry(int capacity, boolean direct) {
+        private BufferEntry(int capacity, boolean direct, long scheduledNs) {
             this.buffer = NioUtils.allocaleByteBuffer(capacity, direct);
             this.address = null;
-            this.scheduledNs = System.nanoTime();
+            this.scheduledNs = scheduledNs;
         }
 
-        public void schedule(InetSocketAddress address, long delayNs) {
+        public void schedule(InetSocketAddress address, long scheduledNs) {
             this.address = address;
-            this.scheduledNs = System.nanoTime() + delayNs;
+            this.scheduledNs = scheduledNs;
         }
 
         public InetSocketAddress getAddress() {
@@ -2,6 +2,7 @@ package org.netcrusher.datagram.main;
 
 import org.netcrusher.core.filter.LoggingFilter;
 import org.netcrusher.core.main.AbstractCrusherMain;
+import org.netcrusher.core.meter.RateMeter;
 import org.netcrusher.core.meter.RateMeters;
 import org.netcrusher.core.reactor.NioReactor;
 import org.netcrusher.core.throttle.rate.ByteRateThrottler;
@@ -108,6 +109,11 @@ public class DatagramCrusherMain extends AbstractCrusherMain<DatagramCrusher> {
         if (byteMeters != null && packetMeters != null) {
             LOGGER.info("Client statistics for <{}>", address);
             statusClientMeters(byteMeters, packetMeters);
+
+            RateMeter cpuMeter = crusher.getClientCpuMeter(address);
+            if (cpuMeter != null) {
+                LOGGER.info("\ttotal cpu time (ns): {}", cpuMeter.getTotal());
+            }
         } else {
             LOGGER.warn("Client for <{}> is not found", address);
         }
@@ -4,6 +4,7 @@ import org.netcrusher.NetFreezer;
 import org.netcrusher.core.buffer.BufferOptions;
 import org.netcrusher.core.nio.NioUtils;
 import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.core.reactor.NioSelector;
 import org.netcrusher.core.state.BitState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,13 +19,19 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.UnresolvedAddressException;
 import java.nio.channels.UnsupportedAddressTypeException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 class TcpAcceptor implements NetFreezer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TcpAcceptor.class);
 
+    private static final int ACCEPT_BATCH_SIZE = 64;
+
     private final InetSocketAddress bindAddress;
 
     private final InetSocketAddress connectAddress;
@@ -35,11 +42,13 @@ class TcpAcceptor implements NetFreezer {
 
     private final NioReactor reactor;
 
+    private final NioSelector selector;
+
     private final TcpCrusher crusher;
 
-    private final ServerSocketChannel serverSocketChannel;
+    private final List<Listener> listeners;
 
-    private final SelectionKey serverSelectionKey;
+    private final boolean sharded;
 
     private final BufferOptions bufferOptions;
 
@@ -65,65 +74,148 @@ class TcpAcceptor implements NetFreezer {
         this.bindBeforeConnectAddress = bindBeforeConnectAddress;
         this.socketOptions = socketOptions;
         this.reactor = reactor;
+        this.selector = crusher.getSelector();
         this.bufferOptions = bufferOptions;
         this.filters = filters;
         this.totalAccepted = new AtomicInteger(0);
 
-        this.serverSocketChannel = ServerSocketChannel.open();
-        this.serverSocketChannel.configureBlocking(false);
-        this.serverSocketChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        this.sharded = socketOptions.isReusePort() && reactor.getLoopCount() > 1 && isReusePortSupported();
+        this.listeners = new ArrayList<>(sharded ? reactor.getLoopCount() : 1);
 
-        if (socketOptions.getBacklog() > 0) {
-            this.serverSocketChannel.bind(bindAddress, socketOptions.getBacklog());
-        } else {
-            this.serverSocketChannel.bind(bindAddress);
+        try {
+            if (sharded) {
+                // with an ephemeral bind port all the other listeners should share the port of the first one
+                InetSocketAddress listenerAddress = bindAddress;
+                for (NioSelector listenerSelector : reactor.getSelectors()) {
+                    Listener listener = openListener(listenerSelector, listenerAddress);
+                    listeners.add(listener);
+                    listenerAddress = (InetSocketAddress) listener.channel.getLocalAddress();
+                }
+            } else {
+                listeners.add(openListener(selector, bindAddress));
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Listener listener : listeners) {
+                listener.close();
+            }
+            throw e;
         }
 
-        this.serverSelectionKey = reactor.getSelector()
-            .register(serverSocketChannel, 0, selectionKey -> this.accept());
-
         this.state = new State(State.FROZEN);
     }
 
-    void close() {
-        reactor.getSelector().execute(() -> {
-            if (state.not(State.CLOSED)) {
-                if (state.is(State.OPEN)) {
-                    freeze();
-                }
+    private static boolean isReusePortSupported() throws IOException {
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            if (channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                return true;
+            }
+        }
 
-                serverSelectionKey.cancel();
+        LOGGER.warn("SO_REUSEPORT is not supported on this platform, single listening socket will be used");
 
-                NioUtils.close(serverSocketChannel);
+        return false;
+    }
+
+    @SuppressWarnings("PMD.CloseResource")
+    private Listener openListener(NioSelector listenerSelector, InetSocketAddress address) throws IOException {
+        final ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+
+            if (sharded) {
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+
+            if (socketOptions.getBacklog() > 0) {
+                channel.bind(address, socketOptions.getBacklog());
+            } else {
+                channel.bind(address);
+            }
 
-                reactor.getSelector().wakeup();
+            // the acceptor is opened in the crusher's loop which should not wait for the listener's one
+            final Listener listener = new Listener(listenerSelector, channel);
+            listener.selectionKey = listenerSelector
+                .registerNow(channel, 0, selectionKey -> this.accept(listener), crusher.getCrusherCpuMeter());
+
+            return listener;
+        } catch (IOException | RuntimeException e) {
+            NioUtils.close(channel);
+            throw e;
+        }
+    }
+
+    CompletableFuture<Void> close() {
+        return selector.execute(() -> {
+            if (state.not(State.CLOSED)) {
+                final CompletableFuture<Void> frozen = state.is(State.OPEN)
+                    ? doFreeze() : CompletableFuture.completedFuture(null);
+
+                final CompletableFuture<Void> closed = forEachListener(listener -> {
+                    listener.close();
+                    listener.selector.wakeup();
+                });
 
                 state.set(State.CLOSED);
 
-                return true;
+                return CompletableFuture.allOf(frozen, closed);
             } else {
-                return false;
+                return CompletableFuture.completedFuture(null);
             }
         });
     }
 
+    private void accept(Listener listener) throws IOException {
+        // drain the backlog but don't starve the other channels of this loop
+        for (int i = 0; i < ACCEPT_BATCH_SIZE; i++) {
+            final SocketChannel socketChannel1 = listener.channel.accept();
+            if (socketChannel1 == null) {
+                break;
+            }
+
+            // with sharded listeners the pair stays on the loop which has accepted the connection
+            final NioSelector pairSelector = sharded ? listener.selector : reactor.nextSelector();
+
+            accept(pairSelector, socketChannel1);
+        }
+    }
+
     @SuppressWarnings("PMD.CloseResource")
-    private void accept() throws IOException {
-        final SocketChannel socketChannel1 = serverSocketChannel.accept();
-        socketChannel1.configureBlocking(false);
-        socketOptions.setupSocketChannel(socketChannel1);
-        bufferOptions.checkTcpSocket(socketChannel1.socket());
+    private void accept(NioSelector pairSelector, SocketChannel socketChannel1) throws IOException {
+        final TcpBlockingEngine blockingEngine = crusher.getBlockingEngine();
+
+        try {
+            socketChannel1.configureBlocking(blockingEngine != null);
+            socketOptions.setupSocketChannel(socketChannel1);
+            bufferOptions.checkTcpSocket(socketChannel1.socket());
+        } catch (IOException e) {
+            LOGGER.error("Fail to setup accepted connection", e);
+            NioUtils.closeNoLinger(socketChannel1);
+            return;
+        }
 
         LOGGER.debug("Incoming connection is accepted on <{}>", bindAddress);
 
+        if (blockingEngine != null) {
+            blockingEngine.accept(socketChannel1);
+            return;
+        }
+
         final SocketChannel socketChannel2 = SocketChannel.open();
-        socketChannel2.configureBlocking(false);
-        socketOptions.setupSocketChannel(socketChannel2);
-        bufferOptions.checkTcpSocket(socketChannel2.socket());
+        try {
+            socketChannel2.configureBlocking(false);
+            socketOptions.setupSocketChannel(socketChannel2);
+            bufferOptions.checkTcpSocket(socketChannel2.socket());
 
-        if (bindBeforeConnectAddress != null) {
-            socketChannel2.setOption(StandardSocketOptions.SO_REUSEADDR, true);
-            socketChannel2.bind(bindBeforeConnectAddress);
+            if (bindBeforeConnectAddress != null) {
+                socketChannel2.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                socketChannel2.bind(bindBeforeConnectAddress);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Fail to setup outgoing connection", e);
+            NioUtils.closeNoLinger(socketChannel1);
+            NioUtils.closeNoLinger(socketChannel2);
+            return;
         }
 
         final boolean connectedImmediately;
@@ -146,16 +238,33 @@ class TcpAcceptor implements NetFreezer {
             return;
         }
 
-        if (connectedImmediately) {
-            appendPair(socketChannel1, socketChannel2);
-        } else {
-            connectDeferred(socketChannel1, socketChannel2);
-        }
+        handOver(pairSelector, socketChannel1, socketChannel2, connectedImmediately);
+    }
+
+    private void handOver(NioSelector pairSelector, SocketChannel socketChannel1, SocketChannel socketChannel2,
+                          boolean connectedImmediately)
+    {
+        // the pair and all its state will be owned by this selector loop which is not waited for here
+        // as it could be waiting for this one
+        pairSelector.executeAsync(() -> {
+            if (connectedImmediately) {
+                appendPair(pairSelector, socketChannel1, socketChannel2);
+            } else {
+                connectDeferred(pairSelector, socketChannel1, socketChannel2);
+            }
+            return true;
+        }).whenComplete((done, e) -> {
+            if (e != null) {
+                LOGGER.error("Fail to pass the connection to the selector loop", e);
+                NioUtils.closeNoLinger(socketChannel1);
+                NioUtils.closeNoLinger(socketChannel2);
+            }
+        });
     }
 
-    private void connectDeferred(SocketChannel socketChannel1, SocketChannel socketChannel2) {
+    private void connectDeferred(NioSelector pairSelector, SocketChannel socketChannel1, SocketChannel socketChannel2) {
         if (socketOptions.getConnectionTimeoutMs() > 0) {
-            reactor.getSelector().schedule(() -> {
+            pairSelector.schedule(() -> {
                 if (socketChannel2.isOpen() && !socketChannel2.isConnected()) {
                     LOGGER.error("Fail to connect to <{}> in {}ms",
                         connectAddress, socketOptions.getConnectionTimeoutMs());
@@ -166,7 +275,7 @@ class TcpAcceptor implements NetFreezer {
             }, TimeUnit.MILLISECONDS.toNanos(socketOptions.getConnectionTimeoutMs()));
         }
 
-        reactor.getSelector().register(socketChannel2, SelectionKey.OP_CONNECT, selectionKey -> {
+        pairSelector.register(socketChannel2, SelectionKey.OP_CONNECT, selectionKey -> {
             boolean connected;
             try {
                 connected = socketChannel2.finishConnect();
@@ -182,18 +291,21 @@ class TcpAcceptor implements NetFreezer {
                 return;
             }
 
-            appendPair(socketChannel1, socketChannel2);
-        });
+            appendPair(pairSelector, socketChannel1, socketChannel2);
+        }, crusher.getCrusherCpuMeter());
     }
 
-    private void appendPair(SocketChannel socketChannel1, SocketChannel socketChannel2) {
+    private void appendPair(NioSelector pairSelector,
+            SocketChannel socketChannel1, SocketChannel socketChannel2)
+    {
         try {
             totalAccepted.incrementAndGet();
 
             InetSocketAddress clientAddress = (InetSocketAddress) socketChannel1.getRemoteAddress();
-            Runnable pairShutdown = () -> crusher.closeClient(clientAddress);
+            Runnable pairShutdown = () -> crusher.notifyPairClosed(clientAddress);
 
-            TcpPair pair = new TcpPair(reactor, filters, socketChannel1, socketChannel2, bufferOptions, pairShutdown);
+            TcpPair pair = new TcpNioPair(pairSelector, filters, socketChannel1, socketChannel2, bufferOptions,
+                crusher.getCrusherCpuMeter(), socketOptions.getIoBudgetBytes(), pairShutdown);
             pair.unfreeze();
 
             crusher.notifyPairCreated(pair);
@@ -212,40 +324,60 @@ class TcpAcceptor implements NetFreezer {
         return totalAccepted.get();
     }
 
+    int getListenerCount() {
+        return listeners.size();
+    }
+
+    InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) listeners.get(0).channel.getLocalAddress();
+    }
+
     @Override
     public void freeze() {
-        reactor.getSelector().execute(() -> {
-            if (state.is(State.OPEN)) {
-                if (serverSelectionKey.isValid()) {
-                    serverSelectionKey.interestOps(0);
-                }
+        reactor.await(selector.execute(this::doFreeze));
+    }
 
-                state.set(State.FROZEN);
+    @Override
+    public CompletableFuture<Void> freezeAsync() {
+        return selector.executeAsync(this::doFreeze).thenCompose(frozen -> frozen);
+    }
 
-                LOGGER.debug("TcpCrusher acceptor <{}>-<{}> is frozen", bindAddress, connectAddress);
+    private CompletableFuture<Void> doFreeze() {
+        if (state.is(State.OPEN)) {
+            final CompletableFuture<Void> frozen = setListenerInterestOps(0);
 
-                return true;
-            } else {
-                throw new IllegalStateException("Acceptor is not open on freeze");
-            }
-        });
+            state.set(State.FROZEN);
+
+            LOGGER.debug("TcpCrusher acceptor <{}>-<{}> is frozen", bindAddress, connectAddress);
+
+            return frozen;
+        } else {
+            throw new IllegalStateException("Acceptor is not open on freeze");
+        }
     }
 
     @Override
     public void unfreeze() {
-        reactor.getSelector().execute(() -> {
-            if (state.is(State.FROZEN)) {
-                serverSelectionKey.interestOps(SelectionKey.OP_ACCEPT);
+        reactor.await(selector.execute(this::doUnfreeze));
+    }
 
-                state.set(State.OPEN);
+    @Override
+    public CompletableFuture<Void> unfreezeAsync() {
+        return selector.executeAsync(this::doUnfreeze).thenCompose(unfrozen -> unfrozen);
+    }
 
-                LOGGER.debug("TcpCrusher acceptor <{}>-<{}> is unfrozen", bindAddress, connectAddress);
+    private CompletableFuture<Void> doUnfreeze() {
+        if (state.is(State.FROZEN)) {
+            final CompletableFuture<Void> unfrozen = setListenerInterestOps(SelectionKey.OP_ACCEPT);
 
-                return true;
-            } else {
-                throw new IllegalStateException("Acceptor is not frozen on unfreeze");
-            }
-        });
+            state.set(State.OPEN);
+
+            LOGGER.debug("TcpCrusher acceptor <{}>-<{}> is unfrozen", bindAddress, connectAddress);
+
+            return unfrozen;
+        } else {
+            throw new IllegalStateException("Acceptor is not frozen on unfreeze");
+        }
     }
 
     @Override
@@ -253,6 +385,48 @@ class TcpAcceptor implements NetFreezer {
         return state.isAnyOf(State.FROZEN | State.CLOSED);
     }
 
+    private CompletableFuture<Void> setListenerInterestOps(int ops) {
+        return forEachListener(listener -> {
+            if (listener.selectionKey.isValid()) {
+                listener.selectionKey.interestOps(ops);
+            }
+        });
+    }
+
+    // listeners could live in other selector loops which are not waited for here as they could be waiting for this one
+    private CompletableFuture<Void> forEachListener(Consumer<Listener> action) {
+        CompletableFuture<?>[] futures = listeners.stream()
+            .map(listener -> listener.selector.executeAsync(() -> {
+                action.accept(listener);
+                return true;
+            }))
+            .toArray(CompletableFuture<?>[]::new);
+
+        return CompletableFuture.allOf(futures);
+    }
+
+    private static final class Listener {
+
+        private final NioSelector selector;
+
+        private final ServerSocketChannel channel;
+
+        private SelectionKey selectionKey;
+
+        Listener(NioSelector selector, ServerSocketChannel channel) {
+            this.selector = selector;
+            this.channel = channel;
+        }
+
+        void close() {
+            if (selectionKey != null) {
+                selectionKey.cancel();
+            }
+
+            NioUtils.close(channel);
+        }
+    }
+
     private static final class State extends BitState {
 
         static final int OPEN = bit(0);
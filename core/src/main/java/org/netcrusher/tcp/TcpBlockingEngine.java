@@ -0,0 +1,144 @@
+package org.netcrusher.tcp;
+
+import org.netcrusher.core.buffer.BufferOptions;
+import org.netcrusher.core.nio.NioUtils;
+import org.netcrusher.core.reactor.NioReactor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Alternative engine which copies each direction of a pair in its own thread.
+ * Threads are virtual on JDK 21+ and platform daemon threads on older JDKs. Connections are still
+ * accepted by the reactor and its selector loops tell the threads when their sockets are ready
+ */
+class TcpBlockingEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TcpBlockingEngine.class);
+
+    private static final String THREAD_NAME_PREFIX = "NetCrusher TCP copier #";
+
+    private final TcpCrusher crusher;
+
+    private final NioReactor reactor;
+
+    private final InetSocketAddress connectAddress;
+
+    private final InetSocketAddress bindBeforeConnectAddress;
+
+    private final TcpCrusherSocketOptions socketOptions;
+
+    private final TcpFilters filters;
+
+    private final BufferOptions bufferOptions;
+
+    private final ThreadFactory threadFactory;
+
+    TcpBlockingEngine(
+        TcpCrusher crusher,
+        NioReactor reactor,
+        InetSocketAddress connectAddress,
+        InetSocketAddress bindBeforeConnectAddress,
+        TcpCrusherSocketOptions socketOptions,
+        TcpFilters filters,
+        BufferOptions bufferOptions)
+    {
+        this.crusher = crusher;
+        this.reactor = reactor;
+        this.connectAddress = connectAddress;
+        this.bindBeforeConnectAddress = bindBeforeConnectAddress;
+        this.socketOptions = socketOptions;
+        this.filters = filters;
+        this.bufferOptions = bufferOptions;
+        this.threadFactory = createThreadFactory();
+    }
+
+    private static ThreadFactory createThreadFactory() {
+        // Thread.ofVirtual() is called reflectively so the library is still built and run on Java 11
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                .invoke(builder, THREAD_NAME_PREFIX, 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            LOGGER.debug("Blocking engine uses virtual threads");
+
+            return factory;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Virtual threads are not available, blocking engine uses platform threads");
+        }
+
+        AtomicLong counter = new AtomicLong(0);
+        return r -> {
+            Thread thread = new Thread(r);
+            thread.setName(THREAD_NAME_PREFIX + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Connects the accepted socket to the target and starts copying. Doesn't block the caller
+     * @param socketChannel1 Accepted socket in blocking mode
+     */
+    void accept(SocketChannel socketChannel1) {
+        threadFactory.newThread(() -> connect(socketChannel1)).start();
+    }
+
+    @SuppressWarnings("PMD.CloseResource")
+    private void connect(SocketChannel socketChannel1) {
+        final SocketChannel socketChannel2;
+        try {
+            socketChannel2 = SocketChannel.open();
+        } catch (IOException e) {
+            LOGGER.error("Fail to open outgoing connection", e);
+            NioUtils.closeNoLinger(socketChannel1);
+            return;
+        }
+
+        try {
+            socketOptions.setupSocketChannel(socketChannel2);
+            bufferOptions.checkTcpSocket(socketChannel2.socket());
+
+            if (bindBeforeConnectAddress != null) {
+                socketChannel2.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                socketChannel2.bind(bindBeforeConnectAddress);
+            }
+
+            socketChannel2.socket().connect(connectAddress, (int) socketOptions.getConnectionTimeoutMs());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Fail to connect to <{}>", connectAddress, e);
+            NioUtils.closeNoLinger(socketChannel1);
+            NioUtils.closeNoLinger(socketChannel2);
+            return;
+        }
+
+        final TcpBlockingPair pair;
+        try {
+            InetSocketAddress clientAddress = (InetSocketAddress) socketChannel1.getRemoteAddress();
+            Runnable pairShutdown = () -> crusher.notifyPairClosed(clientAddress);
+
+            pair = new TcpBlockingPair(threadFactory, reactor.nextSelector(), filters,
+                socketChannel1, socketChannel2, bufferOptions, pairShutdown);
+        } catch (IOException e) {
+            LOGGER.error("Fail to create TcpCrusher TCP pair", e);
+            NioUtils.closeNoLinger(socketChannel1);
+            NioUtils.closeNoLinger(socketChannel2);
+            return;
+        }
+
+        pair.unfreeze();
+
+        crusher.notifyPairCreated(pair);
+
+        pair.start();
+    }
+
+}
@@ -0,0 +1,682 @@
+package org.netcrusher.tcp;
+
+import org.netcrusher.core.buffer.BufferOptions;
+import org.netcrusher.core.filter.TransformFilter;
+import org.netcrusher.core.filter.TransformFilterFactory;
+import org.netcrusher.core.meter.RateMeter;
+import org.netcrusher.core.meter.RateMeterImpl;
+import org.netcrusher.core.meter.RateMeters;
+import org.netcrusher.core.nio.NioUtils;
+import org.netcrusher.core.reactor.NioSelector;
+import org.netcrusher.core.state.BitState;
+import org.netcrusher.core.throttle.Throttler;
+import org.netcrusher.core.throttle.ThrottlerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pair which copies each direction in a dedicated thread. The thread blocks while its sockets are not ready,
+ * the readiness comes from a selector loop of the reactor so freezing stops reads and writes at once like
+ * it does for a NIO pair: incoming data stays in the socket and the data already read waits for unfreeze.
+ * A throttled direction has a second thread which writes: buffers are stamped with their deadline when they
+ * are read, like TcpQueue schedules them, and are written in order as soon as they are due, so delays of
+ * consecutive buffers overlap. The deadline clock stops while the pair is frozen
+ */
+class TcpBlockingPair implements TcpPair {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TcpBlockingPair.class);
+
+    private static final int DIRECTION_COUNT = 2;
+
+    private static final long FREE_SLOT_CHECK_MS = 100;
+
+    private final ThreadFactory threadFactory;
+
+    private final TcpFilters filters;
+
+    private final NioSelector selector;
+
+    private final Endpoint inner;
+
+    private final Endpoint outer;
+
+    private final BufferOptions bufferOptions;
+
+    private final Runnable ownerClose;
+
+    private final InetSocketAddress clientAddress;
+
+    private final RateMeterImpl innerSentMeter;
+
+    private final RateMeterImpl outerSentMeter;
+
+    private final RateMeterImpl cpuMeter;
+
+    private final AtomicInteger activeDirections;
+
+    private final ReentrantLock lock;
+
+    private final Condition stateChanged;
+
+    private final State state;
+
+    private long frozenSinceNs;
+
+    private long frozenNs;
+
+    TcpBlockingPair(
+        ThreadFactory threadFactory,
+        NioSelector selector,
+        TcpFilters filters,
+        SocketChannel inner,
+        SocketChannel outer,
+        BufferOptions bufferOptions,
+        Runnable ownerClose) throws IOException
+    {
+        this.threadFactory = threadFactory;
+        this.selector = selector;
+        this.filters = filters;
+        this.inner = new Endpoint(inner);
+        this.outer = new Endpoint(outer);
+        this.bufferOptions = bufferOptions;
+        this.ownerClose = ownerClose;
+
+        this.clientAddress = (InetSocketAddress) inner.getRemoteAddress();
+
+        this.innerSentMeter = new RateMeterImpl();
+        this.outerSentMeter = new RateMeterImpl();
+        this.cpuMeter = new RateMeterImpl();
+        this.activeDirections = new AtomicInteger(DIRECTION_COUNT);
+
+        // no synchronized blocks as a virtual thread would be pinned to its carrier while waiting
+        this.lock = new ReentrantLock();
+        this.stateChanged = lock.newCondition();
+        this.state = new State(State.FROZEN);
+        this.frozenSinceNs = System.nanoTime();
+        this.frozenNs = 0;
+    }
+
+    void start() {
+        try {
+            inner.register();
+            outer.register();
+        } catch (IOException e) {
+            LOGGER.error("Fail to register sockets of the pair for '{}'", clientAddress, e);
+            closeAll();
+            return;
+        }
+
+        Direction innerToOuter = new Direction("INNER->OUTER", inner, outer, outerSentMeter,
+            filters.getOutgoingTransformFilterFactory(), filters.getOutgoingThrottlerFactory());
+        Direction outerToInner = new Direction("OUTER->INNER", outer, inner, innerSentMeter,
+            filters.getIncomingTransformFilterFactory(), filters.getIncomingThrottlerFactory());
+
+        innerToOuter.startWriter();
+        outerToInner.startWriter();
+
+        threadFactory.newThread(outerToInner).start();
+
+        innerToOuter.run();
+    }
+
+    private void closeAll() {
+        this.close();
+        ownerClose.run();
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (state.is(State.CLOSED)) {
+                return;
+            }
+
+            state.set(State.CLOSED);
+            stateChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        if (outerSentMeter.getTotalCount() > 0) {
+            NioUtils.close(outer.channel);
+        } else {
+            NioUtils.closeNoLinger(outer.channel);
+        }
+
+        if (innerSentMeter.getTotalCount() > 0) {
+            NioUtils.close(inner.channel);
+        } else {
+            NioUtils.closeNoLinger(inner.channel);
+        }
+
+        // sockets are released by the selector when it flushes their cancelled keys
+        selector.executeAsync(() -> true);
+
+        LOGGER.debug("Pair for '{}' is closed", clientAddress);
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        close();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void freeze() {
+        changeState(State.OPEN, State.FROZEN, "Pair is not open on freeze");
+    }
+
+    @Override
+    public CompletableFuture<Void> freezeAsync() {
+        freeze();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> freezeIfOpenAsync() {
+        changeState(State.OPEN, State.FROZEN, null);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void unfreeze() {
+        changeState(State.FROZEN, State.OPEN, "Pair is not frozen on unfreeze");
+    }
+
+    @Override
+    public CompletableFuture<Void> unfreezeAsync() {
+        unfreeze();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> unfreezeIfFrozenAsync() {
+        changeState(State.FROZEN, State.OPEN, null);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> drainAsync() {
+        if (isFrozen()) {
+            // frozen pair is not going to flush anything
+            closeAll();
+        } else {
+            // blocked reads get EOF so each direction writes what it has read and half-closes its target
+            shutdownInput(inner.channel);
+            shutdownInput(outer.channel);
+        }
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static void shutdownInput(SocketChannel channel) {
+        try {
+            channel.shutdownInput();
+        } catch (ClosedChannelException e) {
+            LOGGER.debug("Channel is already closed on draining");
+        } catch (IOException e) {
+            LOGGER.error("Fail to shutdown input", e);
+        }
+    }
+
+    private void changeState(int from, int to, String errorMessage) {
+        lock.lock();
+        try {
+            if (state.is(from)) {
+                // the time the pair is frozen doesn't count for deadlines of the data it holds
+                if (to == State.FROZEN) {
+                    frozenSinceNs = System.nanoTime();
+                } else if (from == State.FROZEN) {
+                    frozenNs += System.nanoTime() - frozenSinceNs;
+                }
+
+                state.set(to);
+                stateChanged.signalAll();
+            } else if (errorMessage != null) {
+                throw new IllegalStateException(errorMessage);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean awaitOpen() throws InterruptedException {
+        lock.lock();
+        try {
+            while (state.is(State.FROZEN)) {
+                stateChanged.await();
+            }
+
+            return state.is(State.OPEN);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long getActiveNs() {
+        lock.lock();
+        try {
+            return calculateActiveNs();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long calculateActiveNs() {
+        // time which stops while the pair is frozen
+        final long nowNs = state.is(State.FROZEN) ? frozenSinceNs : System.nanoTime();
+        return nowNs - frozenNs;
+    }
+
+    private boolean awaitDue(long deadlineNs) throws InterruptedException {
+        lock.lock();
+        try {
+            while (state.not(State.CLOSED)) {
+                if (state.is(State.FROZEN)) {
+                    stateChanged.await();
+                } else {
+                    final long delayNs = deadlineNs - calculateActiveNs();
+                    if (delayNs <= 0) {
+                        return true;
+                    }
+                    stateChanged.awaitNanos(delayNs);
+                }
+            }
+
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int readWhenReady(Endpoint source, ByteBuffer bb) throws IOException, InterruptedException {
+        while (true) {
+            lock.lock();
+            try {
+                awaitOpenLocked();
+
+                // the pair can't be frozen in the middle of the read so a frozen pair leaves data in the socket
+                final int read = source.channel.read(bb);
+                if (read != 0) {
+                    return read;
+                }
+
+                source.readyOps &= ~SelectionKey.OP_READ;
+            } finally {
+                lock.unlock();
+            }
+
+            awaitReady(source, SelectionKey.OP_READ);
+        }
+    }
+
+    private void writeWhenReady(Endpoint target, ByteBuffer bb, RateMeterImpl sentMeter)
+        throws IOException, InterruptedException
+    {
+        while (bb.hasRemaining()) {
+            lock.lock();
+            try {
+                awaitOpenLocked();
+
+                final int written = target.channel.write(bb);
+                if (written > 0) {
+                    sentMeter.update(written);
+                    continue;
+                }
+
+                target.readyOps &= ~SelectionKey.OP_WRITE;
+            } finally {
+                lock.unlock();
+            }
+
+            awaitReady(target, SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void awaitOpenLocked() throws ClosedChannelException, InterruptedException {
+        while (state.is(State.FROZEN)) {
+            stateChanged.await();
+        }
+
+        if (state.is(State.CLOSED)) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private void awaitReady(Endpoint endpoint, int op) throws InterruptedException {
+        // the interest is set by the loop which also resets it when the socket is ready
+        selector.executeAsync(() -> endpoint.interest(op));
+
+        lock.lock();
+        try {
+            while (state.is(State.OPEN) && (endpoint.readyOps & op) == 0) {
+                stateChanged.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void ready(Endpoint endpoint, SelectionKey selectionKey) {
+        final int readyOps = selectionKey.readyOps();
+        selectionKey.interestOps(selectionKey.interestOps() & ~readyOps);
+
+        lock.lock();
+        try {
+            endpoint.readyOps |= readyOps;
+            stateChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isClosed() {
+        lock.lock();
+        try {
+            return state.is(State.CLOSED);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isFrozen() {
+        lock.lock();
+        try {
+            return state.isAnyOf(State.FROZEN | State.CLOSED);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public InetSocketAddress getClientAddress() {
+        return clientAddress;
+    }
+
+    @Override
+    public RateMeter getCpuMeter() {
+        // data is copied by the pair's own threads, selector callbacks only tell the sockets are ready
+        return cpuMeter;
+    }
+
+    @Override
+    public RateMeters getByteMeters() {
+        return new RateMeters(innerSentMeter, outerSentMeter);
+    }
+
+    private final class Direction implements Runnable {
+
+        private final String name;
+
+        private final Endpoint source;
+
+        private final Endpoint target;
+
+        private final RateMeterImpl sentMeter;
+
+        private final TransformFilter filter;
+
+        private final Throttler throttler;
+
+        private final ByteBuffer bb;
+
+        private final BlockingQueue<Slot> freeSlots;
+
+        private final BlockingQueue<Slot> readySlots;
+
+        Direction(String name, Endpoint source, Endpoint target, RateMeterImpl sentMeter,
+                  TransformFilterFactory filterFactory, ThrottlerFactory throttlerFactory)
+        {
+            this.name = name;
+            this.source = source;
+            this.target = target;
+            this.sentMeter = sentMeter;
+            this.filter = filterFactory != null ? filterFactory.allocate(clientAddress) : null;
+            this.throttler = throttlerFactory != null ? throttlerFactory.allocate(clientAddress) : null;
+
+            if (throttler != null) {
+                final int count = bufferOptions.getCount();
+
+                this.bb = null;
+                this.freeSlots = new ArrayBlockingQueue<>(count);
+                // one more place for the end marker so the reader never waits for it
+                this.readySlots = new ArrayBlockingQueue<>(count + 1);
+
+                for (int i = 0; i < count; i++) {
+                    freeSlots.add(new Slot(NioUtils.allocaleByteBuffer(bufferOptions.getSize(),
+                        bufferOptions.isDirect())));
+                }
+            } else {
+                this.bb = NioUtils.allocaleByteBuffer(bufferOptions.getSize(), bufferOptions.isDirect());
+                this.freeSlots = null;
+                this.readySlots = null;
+            }
+        }
+
+        void startWriter() {
+            if (throttler != null) {
+                threadFactory.newThread(this::write).start();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (throttler != null) {
+                    readDelayed();
+                } else {
+                    copy();
+                }
+            } catch (ClosedChannelException e) {
+                LOGGER.debug("Channel closed on {}", name);
+            } catch (IOException e) {
+                LOGGER.debug("Exception on {}", name, e);
+                closeAll();
+            } catch (InterruptedException e) {
+                LOGGER.debug("Interrupted on {}", name);
+                closeAll();
+            }
+
+            if (throttler != null) {
+                // the writer finishes the direction when it meets the end
+                readySlots.add(Slot.END);
+            } else {
+                finish();
+            }
+        }
+
+        private void write() {
+            try {
+                writeDelayed();
+            } catch (ClosedChannelException e) {
+                LOGGER.debug("Channel closed on {}", name);
+            } catch (IOException e) {
+                LOGGER.debug("Exception on {}", name, e);
+                closeAll();
+            } catch (InterruptedException e) {
+                LOGGER.debug("Interrupted on {}", name);
+                closeAll();
+            }
+
+            // the reader could wait for a buffer which is never going to be written
+            Slot slot;
+            while ((slot = readySlots.poll()) != null) {
+                if (slot != Slot.END) {
+                    freeSlots.add(slot);
+                }
+            }
+
+            finish();
+        }
+
+        private void finish() {
+            // the pair is done when both directions have reached EOF
+            if (activeDirections.decrementAndGet() == 0) {
+                closeAll();
+            }
+        }
+
+        private void copy() throws IOException, InterruptedException {
+            while (true) {
+                bb.clear();
+
+                final int read = readWhenReady(source, bb);
+                if (read < 0) {
+                    LOGGER.debug("EOF on {}", name);
+                    target.channel.shutdownOutput();
+                    return;
+                }
+
+                bb.flip();
+
+                if (filter != null) {
+                    filter.transform(bb);
+                }
+
+                // data already read is kept while the pair is frozen
+                writeWhenReady(target, bb, sentMeter);
+            }
+        }
+
+        private void readDelayed() throws IOException, InterruptedException {
+            while (true) {
+                final Slot slot = takeFreeSlot();
+                if (slot == null) {
+                    return;
+                }
+
+                final ByteBuffer slotBuffer = slot.bb;
+                slotBuffer.clear();
+
+                final int read = readWhenReady(source, slotBuffer);
+                if (read < 0) {
+                    LOGGER.debug("EOF on {}", name);
+                    freeSlots.add(slot);
+                    return;
+                }
+
+                slotBuffer.flip();
+
+                if (filter != null) {
+                    filter.transform(slotBuffer);
+                }
+
+                if (slotBuffer.hasRemaining()) {
+                    // the deadline is fixed on read so the next buffers are delayed in parallel with this one
+                    slot.deadlineNs = getActiveNs() + throttler.calculateDelayNs(slotBuffer);
+                    readySlots.add(slot);
+                } else {
+                    freeSlots.add(slot);
+                }
+            }
+        }
+
+        private Slot takeFreeSlot() throws InterruptedException {
+            // a writer which has quit on close doesn't return the buffers it has not written yet
+            while (true) {
+                final Slot slot = freeSlots.poll(FREE_SLOT_CHECK_MS, TimeUnit.MILLISECONDS);
+                if (slot != null) {
+                    return slot;
+                }
+
+                if (isClosed()) {
+                    return null;
+                }
+            }
+        }
+
+        private void writeDelayed() throws IOException, InterruptedException {
+            while (true) {
+                final Slot slot = readySlots.take();
+                if (slot == Slot.END) {
+                    // everything read before EOF is written
+                    if (awaitOpen()) {
+                        target.channel.shutdownOutput();
+                    }
+                    return;
+                }
+
+                // data already read is kept while the pair is frozen
+                if (!awaitDue(slot.deadlineNs)) {
+                    freeSlots.add(slot);
+                    return;
+                }
+
+                writeWhenReady(target, slot.bb, sentMeter);
+
+                freeSlots.add(slot);
+            }
+        }
+    }
+
+    private final class Endpoint {
+
+        private final SocketChannel channel;
+
+        private SelectionKey selectionKey;
+
+        private int readyOps;
+
+        Endpoint(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void register() throws IOException {
+            channel.configureBlocking(false);
+            selectionKey = selector.registerNow(channel, 0, key -> ready(this, key));
+        }
+
+        boolean interest(int op) {
+            if (selectionKey.isValid()) {
+                selectionKey.interestOps(selectionKey.interestOps() | op);
+                return true;
+            }
+
+            return false;
+        }
+    }
+
+    private static final class Slot {
+
+        private static final Slot END = new Slot(null);
+
+        private final ByteBuffer bb;
+
+        private long deadlineNs;
+
+        Slot(ByteBuffer bb) {
+            this.bb = bb;
+        }
+    }
+
+    private static final class State extends BitState {
+
+        static final int OPEN = bit(0);
+
+        static final int FROZEN = bit(1);
+
+        static final int CLOSED = bit(2);
+
+        State(int state) {
+            super(state);
+        }
+    }
+
+}
@@ -1,16 +1,19 @@
 package org.netcrusher.tcp;
 
+import org.netcrusher.core.buffer.MemoryBudget;
 import org.netcrusher.core.meter.RateMeter;
 import org.netcrusher.core.meter.RateMeterImpl;
 import org.netcrusher.core.nio.NioUtils;
 import org.netcrusher.core.nio.SelectionKeyControl;
-import org.netcrusher.core.reactor.NioReactor;
-import org.netcrusher.core.state.BitState;
+import org.netcrusher.core.reactor.NioSelector;
+import org.netcrusher.core.reactor.NioSelectorScheduledOp;
+import org.netcrusher.core.state.ConfinedBitState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
@@ -24,34 +27,48 @@ class TcpChannel {
 
     private static final long LINGER_PERIOD_NS = TimeUnit.MILLISECONDS.toNanos(500);
 
-    private final String name;
+    private static final int DISCARD_BUFFER_SIZE = 4 * 1024;
 
-    private final NioReactor reactor;
+    private final String name;
 
     private final Runnable ownerClose;
 
     private final SocketChannel channel;
 
-    private final SelectionKeyControl selectionKeyControl;
-
     private final TcpQueue incomingQueue;
 
     private final TcpQueue outgoingQueue;
 
     private final Meters meters;
 
+    // confined to the selector thread which serves the channel, a migrated channel is handed over
+    // to the next loop through its post-operation queue
     private final State state;
 
     private final Queue<Runnable> postOperations;
 
+    private final NioSelectorScheduledOp unthrottleOp;
+
+    private final TcpIoBudget budget;
+
+    private final RateMeterImpl[] cpuMeters;
+
+    private NioSelector selector;
+
+    private SelectionKeyControl selectionKeyControl;
+
+    private ByteBuffer discardBuffer;
+
     private TcpChannel other;
 
     TcpChannel(
-        String name, NioReactor reactor, Runnable ownerClose, SocketChannel channel,
-        TcpQueue incomingQueue, TcpQueue outgoingQueue)
+        String name, NioSelector selector, Runnable ownerClose, SocketChannel channel,
+        TcpQueue incomingQueue, TcpQueue outgoingQueue, TcpIoBudget budget, RateMeterImpl[] cpuMeters)
     {
         this.name = name;
-        this.reactor = reactor;
+        this.budget = budget;
+        this.cpuMeters = cpuMeters;
+        this.selector = selector;
         this.ownerClose = ownerClose;
         this.channel = channel;
 
@@ -62,19 +79,23 @@ class TcpChannel {
 
         this.meters = new Meters();
 
-        SelectionKey selectionKey = reactor.getSelector().register(channel, 0, this::callback);
+        this.unthrottleOp = new NioSelectorScheduledOp(this::unthrottleSend);
+
+        SelectionKey selectionKey = selector.register(channel, 0, this::callback, cpuMeters);
         this.selectionKeyControl = new SelectionKeyControl(selectionKey);
 
         this.state = new State(State.FROZEN);
     }
 
     void close() {
-        reactor.getSelector().execute(() -> {
+        selector.execute(() -> {
             if (state.not(State.CLOSED)) {
                 if (state.is(State.OPEN)) {
                     freeze();
                 }
 
+                unthrottleOp.cancel();
+
                 if (meters.getSentBytes().getTotalCount() > 0) {
                     NioUtils.close(channel);
                 } else {
@@ -103,7 +124,7 @@ class TcpChannel {
     }
 
     private void closeAllDeferred() {
-        reactor.getSelector().schedule(this::closeAll, LINGER_PERIOD_NS);
+        selector.schedule(this::closeAll, LINGER_PERIOD_NS);
     }
 
     private void closeEOF() {
@@ -115,6 +136,8 @@ class TcpChannel {
         if (other.state.isReadEof() && !incomingQueue.hasReadable() && !outgoingQueue.hasReadable()) {
             closeAllDeferred();
         }
+
+        checkDrained();
     }
 
     private void closeLocal() {
@@ -125,6 +148,9 @@ class TcpChannel {
     }
 
     private void callback(SelectionKey selectionKey) {
+        // the budget is shared with the other channel which is written right from this callback
+        budget.reset();
+
         try {
             if (selectionKey.isWritable()) {
                 handleWritableEvent(false);
@@ -137,8 +163,17 @@ class TcpChannel {
             closeAll();
         }
 
+        // the key is cancelled if the write has completed draining
+        if (selectionKey.isValid() && selectionKey.isReadable()) {
+            handleRead();
+        }
+    }
+
+    private void handleRead() {
         try {
-            if (selectionKey.isReadable()) {
+            if (state.isDiscarding()) {
+                handleDiscardedEvent();
+            } else {
                 handleReadableEvent();
             }
         } catch (EOFException e) {
@@ -157,6 +192,12 @@ class TcpChannel {
         final TcpQueue queue = incomingQueue;
 
         while (state.isWritable()) {
+            if (budget.isExhausted()) {
+                // the level-triggered key brings the channel back on the next loop iteration
+                suggestDeferredSent();
+                break;
+            }
+
             final TcpQueueBuffers queueBuffers = queue.requestReadableBuffers();
             if (queueBuffers.isEmpty()) {
                 if (queueBuffers.getDelayNs() > 0) {
@@ -183,20 +224,25 @@ class TcpChannel {
             }
 
             meters.getSentBytes().update(sent);
+            budget.consume(sent);
         }
 
         other.suggestDeferredRead();
 
         processPostOperations();
+
+        checkDrained();
     }
 
     private void handleReadableEvent() throws IOException {
         final TcpQueue queue = outgoingQueue;
 
-        while (state.isReadable()) {
+        // the rest of data stays in the socket until the next loop iteration if the budget is exhausted
+        while (state.isReadable() && !budget.isExhausted()) {
             final TcpQueueBuffers queueBuffers = queue.requestWritableBuffers();
             if (queueBuffers.isEmpty()) {
                 selectionKeyControl.disableReads();
+                awaitMemory();
                 break;
             }
 
@@ -217,6 +263,11 @@ class TcpChannel {
             }
 
             if (read == 0) {
+                // what the peer had sent before draining started is in the queue now
+                if (state.isDraining()) {
+                    state.setDiscarding(true);
+                    checkDrained();
+                }
                 break;
             }
 
@@ -225,6 +276,7 @@ class TcpChannel {
             }
 
             meters.getReadBytes().update(read);
+            budget.consume(read);
 
             other.suggestImmediateSent();
         }
@@ -232,6 +284,55 @@ class TcpChannel {
         other.suggestDeferredSent();
     }
 
+    private void awaitMemory() {
+        // the queue of this pair could be empty while others hold the budget so nothing here would resume
+        // reading, the channel is woken up by the thread which releases the memory
+        final MemoryBudget memoryBudget = selector.getMemoryBudget();
+        if (memoryBudget != null && memoryBudget.isExhausted() && !state.isMemoryWaiting()) {
+            state.setMemoryWaiting(true);
+
+            final NioSelector owner = selector;
+            memoryBudget.await(() -> owner.executeAsync(this::memoryReleased));
+        }
+    }
+
+    private boolean memoryReleased() {
+        state.setMemoryWaiting(false);
+
+        // the budget could be exhausted again by other channels before this one is woken up
+        if (state.is(State.OPEN)) {
+            if (outgoingQueue.hasWritable()) {
+                suggestDeferredRead();
+            } else {
+                awaitMemory();
+            }
+        }
+
+        return true;
+    }
+
+    private void handleDiscardedEvent() throws IOException {
+        // nothing is forwarded after the socket has been emptied once while draining but the socket
+        // is still read up to EOF so closing it doesn't reset the connection
+        while (true) {
+            discardBuffer.clear();
+
+            final int read = channel.read(discardBuffer);
+            if (read < 0) {
+                selectionKeyControl.disableReads();
+                state.setReadEof(true);
+                checkDrained();
+                break;
+            }
+
+            if (read == 0) {
+                break;
+            }
+
+            LOGGER.debug("Discarded {} bytes read from {} while draining", read, name);
+        }
+    }
+
     private void processPostOperations() {
         if (!incomingQueue.hasReadable() && other.state.isReadEof()) {
             while (!postOperations.isEmpty()) {
@@ -299,6 +400,99 @@ class TcpChannel {
         return state.isAnyOf(State.CLOSED | State.FROZEN);
     }
 
+    boolean isMigratable() {
+        // closing channel has pending operations and a deferred close scheduled in its current loop
+        // a channel waiting for the memory budget is resumed in its current loop
+        return state.is(State.OPEN) && !state.isReadEof() && !state.isDraining() && !state.isMemoryWaiting()
+            && postOperations.isEmpty();
+    }
+
+    void drain() {
+        if (state.is(State.OPEN) && !state.isDraining()) {
+            state.setDraining(true);
+
+            this.discardBuffer = ByteBuffer.allocate(DISCARD_BUFFER_SIZE);
+            if (!state.isReadEof()) {
+                selectionKeyControl.enableReads();
+
+                // an idle socket gets no read event so it is checked for data right away
+                budget.reset();
+                handleRead();
+            }
+
+            suggestDeferredSent();
+        }
+    }
+
+    void checkDrained() {
+        if (state.isDraining() && state.is(State.OPEN)) {
+            shutdownIfFlushed();
+            other.shutdownIfFlushed();
+
+            if (isDrained() && other.isDrained()) {
+                LOGGER.debug("Channels {} and {} are drained", name, other.name);
+                closeAll();
+            }
+        }
+    }
+
+    private void shutdownIfFlushed() {
+        // half-close when the other side has nothing more to forward and the queued data is written
+        if (!state.isOutputShutdown() && !incomingQueue.hasReadable()
+            && (other.state.isDiscarding() || other.state.isReadEof()))
+        {
+            shutdownWrite();
+            state.setOutputShutdown(true);
+        }
+    }
+
+    private boolean isDrained() {
+        return state.isOutputShutdown() && state.isReadEof();
+    }
+
+    void detach(NioSelector target) {
+        // the key is kept with no interest so it is reused if the channel comes back to this loop
+        if (selectionKeyControl.isValid()) {
+            selectionKeyControl.setNone();
+        }
+
+        // the throttling delay is checked again on the first write in the new loop
+        unthrottleOp.cancel();
+        state.setSendThrottled(false);
+
+        // the old loop's cached time is refreshed only while that loop iterates
+        outgoingQueue.rebind(target.getChronometer(), target.getBufferPool());
+
+        // the key doesn't listen to anything until the new loop resumes the channel
+        this.selector = target;
+        try {
+            this.selectionKeyControl = new SelectionKeyControl(
+                target.registerNow(channel, 0, this::callback, cpuMeters));
+        } catch (ClosedChannelException e) {
+            LOGGER.debug("Channel {} is closed on migration", name);
+        }
+    }
+
+    boolean resume() {
+        if (!selectionKeyControl.isValid()) {
+            return false;
+        }
+
+        // interest is restored from the state as the channel could be frozen or unfrozen in the meantime
+        if (state.is(State.OPEN)) {
+            int operations = 0;
+            if (state.isReadable() && outgoingQueue.hasWritable()) {
+                operations |= SelectionKey.OP_READ;
+            }
+            if (incomingQueue.hasReadable()) {
+                operations |= SelectionKey.OP_WRITE;
+            }
+            selectionKeyControl.set(operations);
+        }
+
+        return true;
+    }
+
     private void throttleSend(long delayNs) {
         if (this.state.is(State.OPEN) && !this.state.isSendThrottled()) {
             if (LOGGER.isTraceEnabled()) {
@@ -311,7 +505,7 @@ class TcpChannel {
                 this.selectionKeyControl.disableWrites();
             }
 
-            reactor.getSelector().schedule(this::unthrottleSend, delayNs);
+            selector.schedule(unthrottleOp, delayNs);
         }
     }
 
@@ -341,7 +535,7 @@ class TcpChannel {
         return meters.getSentBytes();
     }
 
-    static final class State extends BitState {
+    static final class State extends ConfinedBitState {
 
         static final int OPEN = bit(0);
 
@@ -353,10 +547,22 @@ class TcpChannel {
 
         private boolean sendThrottled;
 
+        private boolean draining;
+
+        private boolean discarding;
+
+        private boolean outputShutdown;
+
+        private boolean memoryWaiting;
+
         State(int state) {
             super(state);
             this.readEof = false;
             this.sendThrottled = false;
+            this.draining = false;
+            this.discarding = false;
+            this.outputShutdown = false;
+            this.memoryWaiting = false;
         }
 
         void setReadEof(boolean readEof) {
@@ -375,12 +581,44 @@ class TcpChannel {
             this.sendThrottled = sendThrottled;
         }
 
+        boolean isDraining() {
+            return draining;
+        }
+
+        void setDraining(boolean draining) {
+            this.draining = draining;
+        }
+
+        boolean isDiscarding() {
+            return discarding;
+        }
+
+        void setDiscarding(boolean discarding) {
+            this.discarding = discarding;
+        }
+
+        boolean isOutputShutdown() {
+            return outputShutdown;
+        }
+
+        void setOutputShutdown(boolean outputShutdown) {
+            this.outputShutdown = outputShutdown;
+        }
+
+        boolean isMemoryWaiting() {
+            return memoryWaiting;
+        }
+
+        void setMemoryWaiting(boolean memoryWaiting) {
+            this.memoryWaiting = memoryWaiting;
+        }
+
         boolean isWritable() {
-            return is(OPEN) && !sendThrottled;
+            return is(OPEN) && !sendThrottled && !outputShutdown;
         }
 
         boolean isReadable() {
-            return is(OPEN) && !readEof;
+            return is(OPEN) && !readEof && !discarding;
         }
     }
 
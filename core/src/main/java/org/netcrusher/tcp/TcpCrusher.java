@@ -3,8 +3,11 @@ package org.netcrusher.tcp;
 import org.netcrusher.NetCrusher;
 import org.netcrusher.NetFreezer;
 import org.netcrusher.core.buffer.BufferOptions;
+import org.netcrusher.core.meter.RateMeter;
+import org.netcrusher.core.meter.RateMeterImpl;
 import org.netcrusher.core.meter.RateMeters;
 import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.core.reactor.NioSelector;
 import org.netcrusher.core.state.BitState;
 import org.netcrusher.tcp.callback.TcpClientCreation;
 import org.netcrusher.tcp.callback.TcpClientDeletion;
@@ -15,7 +18,10 @@ import java.net.InetSocketAddress;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
@@ -54,6 +60,8 @@ public class TcpCrusher implements NetCrusher {
 
     private final NioReactor reactor;
 
+    private final NioSelector selector;
+
     private final Map<InetSocketAddress, TcpPair> pairs;
 
     private final TcpClientCreation creationListener;
@@ -66,10 +74,20 @@ public class TcpCrusher implements NetCrusher {
 
     private final TcpFilters filters;
 
+    private final RateMeterImpl cpuMeter;
+
+    private final TcpBlockingEngine blockingEngine;
+
+    private final TcpRebalancer rebalancer;
+
+    private final LongAdder migrationCount;
+
     private final State state;
 
     private TcpAcceptor acceptor;
 
+    private volatile CompletableFuture<Void> drained;
+
     public TcpCrusher(TcpCrusherOptions options) {
         if (options == null) {
             throw new IllegalArgumentException("Options are not set");
@@ -85,6 +103,7 @@ public class TcpCrusher implements NetCrusher {
         );
 
         this.reactor = options.getReactor();
+        this.selector = reactor.nextSelector();
         this.bindAddress = options.getBindAddress();
         this.connectAddress = options.getConnectAddress();
         this.bindBeforeConnectAddress = options.getBindBeforeConnectAddress();
@@ -95,7 +114,22 @@ public class TcpCrusher implements NetCrusher {
         this.deferredListeners = options.isDeferredListeners();
 
         this.pairs = new ConcurrentHashMap<>(DEFAULT_PAIR_CAPACITY);
+        this.cpuMeter = new RateMeterImpl();
         this.state = new State(State.CLOSED);
+
+        if (options.isBlockingEngine()) {
+            this.blockingEngine = new TcpBlockingEngine(this, reactor,
+                connectAddress, bindBeforeConnectAddress, socketOptions, filters, bufferOptions);
+        } else {
+            this.blockingEngine = null;
+        }
+
+        this.migrationCount = new LongAdder();
+        if (options.getRebalancePeriodMs() > 0 && reactor.getLoopCount() > 1 && blockingEngine == null) {
+            this.rebalancer = new TcpRebalancer(this, reactor, options.getRebalancePeriodMs());
+        } else {
+            this.rebalancer = null;
+        }
     }
 
     void notifyPairCreated(TcpPair pair) {
@@ -103,6 +137,11 @@ public class TcpCrusher implements NetCrusher {
 
         pairs.put(pair.getClientAddress(), pair);
 
+        // the pair could have been connecting when draining started
+        if (drained != null) {
+            pair.drainAsync();
+        }
+
         if (creationListener != null) {
             Runnable r = () -> creationListener.created(pair.getClientAddress());
 
@@ -110,6 +149,45 @@ public class TcpCrusher implements NetCrusher {
         }
     }
 
+    NioSelector getSelector() {
+        return selector;
+    }
+
+    RateMeterImpl getCrusherCpuMeter() {
+        return cpuMeter;
+    }
+
+    TcpBlockingEngine getBlockingEngine() {
+        return blockingEngine;
+    }
+
+    Collection<TcpPair> getPairs() {
+        return pairs.values();
+    }
+
+    CompletableFuture<Boolean> migrateAsync(TcpNioPair pair, NioSelector target) {
+        return pair.migrateAsync(target).thenApply(migrated -> {
+            if (migrated) {
+                migrationCount.increment();
+            }
+            return migrated;
+        });
+    }
+
+    CompletableFuture<Boolean> migrateClientAsync(InetSocketAddress clientAddress, NioSelector target) {
+        TcpPair pair = pairs.get(clientAddress);
+        if (pair instanceof TcpNioPair) {
+            return migrateAsync((TcpNioPair) pair, target);
+        } else {
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    void notifyPairClosed(InetSocketAddress clientAddress) {
+        // the pair could live in another selector loop so we should not wait here
+        closeClientAsync(clientAddress);
+    }
+
     private void notifyPairDeleted(TcpPair pair) {
         if (deletionListener != null) {
             Runnable r = () -> deletionListener.deleted(pair.getClientAddress(), pair.getByteMeters());
@@ -120,7 +198,7 @@ public class TcpCrusher implements NetCrusher {
 
     @Override
     public void open() {
-        reactor.getSelector().execute(() -> {
+        reactor.await(selector.execute(() -> {
             if (state.is(State.CLOSED)) {
                 this.acceptor = new TcpAcceptor(this, reactor,
                     bindAddress, connectAddress, bindBeforeConnectAddress,
@@ -128,39 +206,105 @@ public class TcpCrusher implements NetCrusher {
 
                 state.set(State.FROZEN);
 
-                LOGGER.info("TcpCrusher <{}>-<{}> is open", bindAddress, connectAddress);
+                if (rebalancer != null) {
+                    rebalancer.start();
+                }
 
-                unfreeze();
+                reactor.addCrusher(this);
+
+                LOGGER.info("TcpCrusher <{}>-<{}> is open", bindAddress, connectAddress);
 
-                return true;
+                return doUnfreeze();
             } else {
                 throw new IllegalStateException("TcpCrusher is already open");
             }
-        });
+        }));
     }
 
     @Override
     public void close() {
-        reactor.getSelector().execute(() -> {
-            if (state.not(State.CLOSED)) {
-                if (state.is(State.OPEN)) {
-                    freeze();
-                }
+        reactor.await(selector.execute(this::doClose));
+    }
 
-                closeAllPairs();
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        return selector.executeAsync(this::doClose).thenCompose(closed -> closed);
+    }
 
-                acceptor.close();
-                acceptor = null;
+    private CompletableFuture<Void> doClose() {
+        if (state.not(State.CLOSED)) {
+            final CompletableFuture<Void> frozen = state.is(State.OPEN)
+                ? doFreeze() : CompletableFuture.completedFuture(null);
 
-                state.set(State.CLOSED);
+            if (rebalancer != null) {
+                rebalancer.stop();
+            }
 
-                LOGGER.info("TcpCrusher <{}>-<{}> is closed", bindAddress, connectAddress);
+            final CompletableFuture<Void> pairsClosed = doCloseAllPairs();
 
-                return true;
-            } else {
-                return false;
+            final CompletableFuture<Void> acceptorClosed = acceptor.close();
+            acceptor = null;
+
+            if (drained != null) {
+                drained.complete(null);
+                drained = null;
             }
-        });
+
+            reactor.removeCrusher(this);
+
+            state.set(State.CLOSED);
+
+            LOGGER.info("TcpCrusher <{}>-<{}> is closed", bindAddress, connectAddress);
+
+            return CompletableFuture.allOf(frozen, pairsClosed, acceptorClosed);
+        } else {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> closeGracefullyAsync(long timeoutMs) {
+        return selector.executeAsync(this::doDrain)
+            .thenCompose(draining -> draining.copy()
+                .orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .handle((done, e) -> {
+                    if (e != null) {
+                        LOGGER.warn("TcpCrusher <{}>-<{}> has {} pair(s) not drained in {}ms",
+                            bindAddress, connectAddress, pairs.size(), timeoutMs);
+                    }
+                    return null;
+                }))
+            .thenCompose(done -> closeAsync());
+    }
+
+    private CompletableFuture<Void> doDrain() {
+        if (state.is(State.CLOSED)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (drained == null) {
+            drained = new CompletableFuture<>();
+
+            if (!acceptor.isFrozen()) {
+                acceptor.freezeAsync();
+            }
+
+            LOGGER.info("TcpCrusher <{}>-<{}> is draining {} pair(s)", bindAddress, connectAddress, pairs.size());
+
+            for (TcpPair pair : pairs.values()) {
+                pair.drainAsync();
+            }
+
+            completeDrainIfEmpty();
+        }
+
+        return drained;
+    }
+
+    private void completeDrainIfEmpty() {
+        if (drained != null && pairs.isEmpty()) {
+            drained.complete(null);
+        }
     }
 
     @Override
@@ -172,35 +316,39 @@ public class TcpCrusher implements NetCrusher {
      * Close all pairs but keeps listening socket open
      */
     public void closeAllPairs() {
-        reactor.getSelector().execute(() -> {
-            if (state.not(State.CLOSED)) {
-                for (TcpPair pair : pairs.values()) {
-                    pair.close();
-                    notifyPairDeleted(pair);
-                }
+        reactor.await(selector.execute(this::doCloseAllPairs));
+    }
 
-                pairs.clear();
+    // pairs could live in different selector loops so they are closed in parallel and nobody waits here
+    private CompletableFuture<Void> doCloseAllPairs() {
+        if (state.not(State.CLOSED)) {
+            CompletableFuture<?>[] futures = pairs.values().stream()
+                .map(this::closePair)
+                .toArray(CompletableFuture<?>[]::new);
 
-                return true;
-            } else {
-                return false;
-            }
-        });
+            pairs.clear();
+
+            return CompletableFuture.allOf(futures);
+        } else {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private CompletableFuture<Void> closePair(TcpPair pair) {
+        return pair.closeAsync().whenComplete((done, e) -> notifyPairDeleted(pair));
     }
 
     @Override
     public void reopen() {
-        reactor.getSelector().execute(() -> {
+        reactor.await(selector.execute(() -> {
             if (state.not(State.CLOSED)) {
-                close();
-
-                open();
-
-                return true;
+                return doClose();
             } else {
                 throw new IllegalStateException("TcpCrusher is already closed");
             }
-        });
+        }));
+
+        open();
     }
 
     /**
@@ -210,40 +358,47 @@ public class TcpCrusher implements NetCrusher {
      */
     @Override
     public void freeze() {
-        reactor.getSelector().execute(() -> {
-            if (state.is(State.OPEN)) {
-                if (!acceptor.isFrozen()) {
-                    acceptor.freeze();
-                }
+        reactor.await(selector.execute(this::doFreeze));
+    }
 
-                freezeAllPairs();
+    @Override
+    public CompletableFuture<Void> freezeAsync() {
+        return selector.executeAsync(this::doFreeze).thenCompose(frozen -> frozen);
+    }
 
-                state.set(State.FROZEN);
+    private CompletableFuture<Void> doFreeze() {
+        if (state.is(State.OPEN)) {
+            final CompletableFuture<Void> acceptorFrozen = acceptor.isFrozen()
+                ? CompletableFuture.completedFuture(null) : acceptor.freezeAsync();
 
-                return true;
-            } else {
-                throw new IllegalStateException("TcpCrusher is not open on freeze");
-            }
-        });
+            final CompletableFuture<Void> pairsFrozen = doFreezeAllPairs();
+
+            state.set(State.FROZEN);
+
+            return CompletableFuture.allOf(acceptorFrozen, pairsFrozen);
+        } else {
+            throw new IllegalStateException("TcpCrusher is not open on freeze");
+        }
     }
 
     /**
      * Freezes all TCP pairs
      */
     public void freezeAllPairs() {
-        reactor.getSelector().execute(() -> {
-            if (state.not(State.CLOSED)) {
-                for (TcpPair pair : pairs.values()) {
-                    if (!pair.isFrozen()) {
-                        pair.freeze();
-                    }
-                }
+        reactor.await(selector.execute(this::doFreezeAllPairs));
+    }
 
-                return true;
-            } else {
-                throw new IllegalStateException("TcpCrusher is closed");
-            }
-        });
+    // pairs could live in different selector loops so they work in parallel and nobody waits here
+    private CompletableFuture<Void> doFreezeAllPairs() {
+        if (state.not(State.CLOSED)) {
+            CompletableFuture<?>[] futures = pairs.values().stream()
+                .map(TcpPair::freezeIfOpenAsync)
+                .toArray(CompletableFuture<?>[]::new);
+
+            return CompletableFuture.allOf(futures);
+        } else {
+            throw new IllegalStateException("TcpCrusher is closed");
+        }
     }
 
     /**
@@ -253,40 +408,46 @@ public class TcpCrusher implements NetCrusher {
      */
     @Override
     public void unfreeze() {
-        reactor.getSelector().execute(() -> {
-            if (state.is(State.FROZEN)) {
-                unfreezeAllPairs();
+        reactor.await(selector.execute(this::doUnfreeze));
+    }
 
-                if (acceptor.isFrozen()) {
-                    acceptor.unfreeze();
-                }
+    @Override
+    public CompletableFuture<Void> unfreezeAsync() {
+        return selector.executeAsync(this::doUnfreeze).thenCompose(unfrozen -> unfrozen);
+    }
 
-                state.set(State.OPEN);
+    private CompletableFuture<Void> doUnfreeze() {
+        if (state.is(State.FROZEN)) {
+            final CompletableFuture<Void> pairsUnfrozen = doUnfreezeAllPairs();
 
-                return true;
-            } else {
-                throw new IllegalStateException("TcpCrusher is not frozen on unfreeze");
-            }
-        });
+            final CompletableFuture<Void> acceptorUnfrozen = acceptor.isFrozen()
+                ? acceptor.unfreezeAsync() : CompletableFuture.completedFuture(null);
+
+            state.set(State.OPEN);
+
+            return CompletableFuture.allOf(pairsUnfrozen, acceptorUnfrozen);
+        } else {
+            throw new IllegalStateException("TcpCrusher is not frozen on unfreeze");
+        }
     }
 
     /**
      * Unfreezes all TCP pairs
      */
     public void unfreezeAllPairs() {
-        reactor.getSelector().execute(() -> {
-            if (state.not(State.CLOSED)) {
-                for (TcpPair pair : pairs.values()) {
-                    if (pair.isFrozen()) {
-                        pair.unfreeze();
-                    }
-                }
+        reactor.await(selector.execute(this::doUnfreezeAllPairs));
+    }
 
-                return true;
-            } else {
-                throw new IllegalStateException("TcpCrusher is closed");
-            }
-        });
+    private CompletableFuture<Void> doUnfreezeAllPairs() {
+        if (state.not(State.CLOSED)) {
+            CompletableFuture<?>[] futures = pairs.values().stream()
+                .map(TcpPair::unfreezeIfFrozenAsync)
+                .toArray(CompletableFuture<?>[]::new);
+
+            return CompletableFuture.allOf(futures);
+        } else {
+            throw new IllegalStateException("TcpCrusher is closed");
+        }
     }
 
     @Override
@@ -306,7 +467,7 @@ public class TcpCrusher implements NetCrusher {
 
     @Override
     public Collection<InetSocketAddress> getClientAddresses() {
-        return reactor.getSelector().execute(() -> {
+        return selector.execute(() -> {
             if (state.not(State.CLOSED)) {
                 return this.pairs.values().stream()
                     .map(TcpPair::getClientAddress)
@@ -319,7 +480,7 @@ public class TcpCrusher implements NetCrusher {
 
     @Override
     public RateMeters getClientByteMeters(InetSocketAddress clientAddress) {
-        return reactor.getSelector().execute(() -> {
+        return selector.execute(() -> {
             if (state.not(State.CLOSED)) {
                 TcpPair pair = this.pairs.get(clientAddress);
                 if (pair != null) {
@@ -332,21 +493,48 @@ public class TcpCrusher implements NetCrusher {
     }
 
     @Override
-    public boolean closeClient(InetSocketAddress clientAddress) {
-        return reactor.getSelector().execute(() -> {
+    public RateMeter getCpuMeter() {
+        return cpuMeter;
+    }
+
+    @Override
+    public RateMeter getClientCpuMeter(InetSocketAddress clientAddress) {
+        return selector.execute(() -> {
             if (state.not(State.CLOSED)) {
-                TcpPair pair = pairs.remove(clientAddress);
+                TcpPair pair = this.pairs.get(clientAddress);
                 if (pair != null) {
-                    pair.close();
-                    notifyPairDeleted(pair);
-                    return true;
+                    return pair.getCpuMeter();
                 }
             }
 
-            return false;
+            return null;
         });
     }
 
+    @Override
+    public boolean closeClient(InetSocketAddress clientAddress) {
+        CompletableFuture<Boolean> closed = selector.execute(() -> doCloseClient(clientAddress));
+        reactor.await(closed);
+        return closed.join();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> closeClientAsync(InetSocketAddress clientAddress) {
+        return selector.executeAsync(() -> doCloseClient(clientAddress)).thenCompose(closed -> closed);
+    }
+
+    private CompletableFuture<Boolean> doCloseClient(InetSocketAddress clientAddress) {
+        if (state.not(State.CLOSED)) {
+            TcpPair pair = pairs.remove(clientAddress);
+            if (pair != null) {
+                completeDrainIfEmpty();
+                return closePair(pair).thenApply(done -> true);
+            }
+        }
+
+        return CompletableFuture.completedFuture(false);
+    }
+
     /**
      * Request freezer for the specific client
      * @param clientAddress Client address
@@ -361,7 +549,7 @@ public class TcpCrusher implements NetCrusher {
      * @return Freezer for acceptor or null
      */
     public NetFreezer getAcceptorFreezer() {
-        return reactor.getSelector().execute(() -> {
+        return selector.execute(() -> {
             if (state.not(State.CLOSED)) {
                 return acceptor;
             } else {
@@ -372,7 +560,7 @@ public class TcpCrusher implements NetCrusher {
 
     @Override
     public int getClientTotalCount() {
-        return reactor.getSelector().execute(() -> {
+        return selector.execute(() -> {
             if (state.not(State.CLOSED)) {
                 return acceptor.getTotalAccepted();
             } else {
@@ -381,6 +569,25 @@ public class TcpCrusher implements NetCrusher {
         });
     }
 
+    /**
+     * Get how many times pairs have been moved between the reactor's selector loops
+     * @return Number of migrations
+     * @see TcpCrusherBuilder#withRebalancePeriodMs(long)
+     */
+    public long getMigrationCount() {
+        return migrationCount.sum();
+    }
+
+    /**
+     * Get utilization of each reactor's selector loop measured by the rebalancer in its last period.
+     * Utilization is a fraction of time the loop has been running callbacks and operations
+     * @return Values from 0 to 1 in the order of loops or an empty array if the rebalancing is not enabled
+     * @see TcpCrusherBuilder#withRebalancePeriodMs(long)
+     */
+    public double[] getLoopUtilization() {
+        return rebalancer != null ? rebalancer.getUtilization() : new double[0];
+    }
+
     private static final class State extends BitState {
 
         static final int OPEN = bit(0);
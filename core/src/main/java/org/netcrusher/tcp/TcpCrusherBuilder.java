@@ -130,6 +130,31 @@ public final class TcpCrusherBuilder {
         return this;
     }
 
+    /**
+     * Set whether the crusher binds one listening socket per reactor's selector loop with SO_REUSEPORT,
+     * so the kernel spreads incoming connections across loops. Each loop then owns the pairs it accepts.
+     * Falls back to a single listening socket if the platform doesn't support SO_REUSEPORT
+     * @param reusePort SO_REUSEPORT flag value
+     * @see StandardSocketOptions#SO_REUSEPORT
+     * @return This builder instance to chain with other methods
+     */
+    public TcpCrusherBuilder withReusePort(boolean reusePort) {
+        this.options.getSocketOptions().setReusePort(reusePort);
+        return this;
+    }
+
+    /**
+     * Set how many bytes a pair may read and write in one selector callback. A pair which runs out of
+     * the budget yields the selector loop and continues on the next loop iteration, so a bulk transfer
+     * doesn't hold up other pairs on the same loop
+     * @param ioBudgetBytes Budget in bytes. Zero means unlimited (default)
+     * @return This builder instance to chain with other methods
+     */
+    public TcpCrusherBuilder withIoBudgetBytes(long ioBudgetBytes) {
+        this.options.getSocketOptions().setIoBudgetBytes(ioBudgetBytes);
+        return this;
+    }
+
     /**
      * Set whether both sockets would use SO_KEEPALIVE feature
      * @param keepAlive SO_KEEPALIVE flag value
@@ -215,6 +240,36 @@ public final class TcpCrusherBuilder {
         return this;
     }
 
+    /**
+     * Make each queue size its buffers after the reads of its connection. Buffers start with the size set by
+     * withBufferSize() and follow a moving estimate of read sizes within the bounds, so connections with short
+     * messages hold small buffers and bulk transfers get large ones. Adaptive queues don't use the reactor's
+     * buffer pool. The blocking engine keeps the fixed size
+     * @param minSize The smallest buffer size in bytes
+     * @param maxSize The largest buffer size in bytes
+     * @return This builder instance to chain with other methods
+     */
+    public TcpCrusherBuilder withAdaptiveBufferSize(int minSize, int maxSize) {
+        this.options.getBufferOptions().setMinSize(minSize);
+        this.options.getBufferOptions().setMaxSize(maxSize);
+        return this;
+    }
+
+    /**
+     * Hold delayed data in a delay line instead of queue buffers. Throttled queues copy data into chunks of
+     * off-heap memory which are allocated as data arrives, and past the memory limit into chunks of a file
+     * mapped from java.io.tmpdir. So a long delay doesn't cap the throughput at count * size / delay and
+     * the memory follows the real bandwidth-delay product. Queues without a throttler don't use the line
+     * @param memoryBytes How many bytes of each queue are kept in memory before spilling to the file
+     * @param capacityBytes How many bytes each queue could delay. Zero disables the delay line
+     * @return This builder instance to chain with other methods
+     */
+    public TcpCrusherBuilder withDelayLine(long memoryBytes, long capacityBytes) {
+        this.options.getBufferOptions().setDelayLineMemory(memoryBytes);
+        this.options.getBufferOptions().setDelayLineCapacity(capacityBytes);
+        return this;
+    }
+
     /**
      * Set buffer allocation method
      * @param direct Set true if ByteBuffer should be allocated as direct
@@ -279,6 +334,33 @@ public final class TcpCrusherBuilder {
         return this;
     }
 
+    /**
+     * Set whether pairs are served by blocking I/O with a thread per direction instead of the reactor's
+     * selector loops. Threads are virtual on JDK 21+ so the engine scales to many slow connections there.
+     * Filters, throttlers and freezing behave the same way. Incoming connections are still accepted
+     * by the reactor
+     * @param blockingEngine Set true to use the blocking engine
+     * @return This builder instance to chain with other methods
+     */
+    public TcpCrusherBuilder withBlockingEngine(boolean blockingEngine) {
+        this.options.setBlockingEngine(blockingEngine);
+        return this;
+    }
+
+    /**
+     * Set how often pairs are rebalanced between the reactor's selector loops. Each period a heavy pair
+     * is moved from the busiest loop to the least busy one if their utilization differs enough.
+     * Has no effect with a single loop reactor or with the blocking engine
+     * @param periodMs Period in milliseconds. Zero means no rebalancing (default)
+     * @return This builder instance to chain with other methods
+     * @see TcpCrusher#getMigrationCount()
+     * @see TcpCrusher#getLoopUtilization()
+     */
+    public TcpCrusherBuilder withRebalancePeriodMs(long periodMs) {
+        this.options.setRebalancePeriodMs(periodMs);
+        return this;
+    }
+
     /**
      * Builds a new TcpCrusher instance
      * @return TcpCrusher instance
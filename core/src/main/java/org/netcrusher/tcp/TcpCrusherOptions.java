@@ -41,6 +41,10 @@ public class TcpCrusherOptions {
 
     private BufferOptions bufferOptions;
 
+    private boolean blockingEngine;
+
+    private long rebalancePeriodMs;
+
     public TcpCrusherOptions() {
         this.socketOptions = new TcpCrusherSocketOptions();
 
@@ -50,6 +54,8 @@ public class TcpCrusherOptions {
         this.bufferOptions.setDirect(true);
 
         this.deferredListeners = true;
+        this.blockingEngine = false;
+        this.rebalancePeriodMs = 0;
     }
 
     public void validate() {
@@ -69,9 +75,27 @@ public class TcpCrusherOptions {
             throw new IllegalArgumentException("Socket options are not set");
         }
 
+        if (socketOptions.getIoBudgetBytes() < 0) {
+            throw new IllegalArgumentException("I/O budget must not be negative");
+        }
+
         if (bufferOptions == null) {
             throw new IllegalArgumentException("Buffer options are not set");
         }
+
+        if (bufferOptions.isAdaptive()
+            && (bufferOptions.getMinSize() <= 0 || bufferOptions.getMinSize() > bufferOptions.getMaxSize()))
+        {
+            throw new IllegalArgumentException("Adaptive buffer size bounds are illegal");
+        }
+
+        if (bufferOptions.getDelayLineMemory() < 0 || bufferOptions.getDelayLineCapacity() < 0) {
+            throw new IllegalArgumentException("Delay line sizes must not be negative");
+        }
+
+        if (rebalancePeriodMs < 0) {
+            throw new IllegalArgumentException("Rebalance period must not be negative");
+        }
     }
 
     public InetSocketAddress getBindAddress() {
@@ -178,4 +202,20 @@ public class TcpCrusherOptions {
         this.bufferOptions = bufferOptions;
     }
 
+    public boolean isBlockingEngine() {
+        return blockingEngine;
+    }
+
+    public void setBlockingEngine(boolean blockingEngine) {
+        this.blockingEngine = blockingEngine;
+    }
+
+    public long getRebalancePeriodMs() {
+        return rebalancePeriodMs;
+    }
+
+    public void setRebalancePeriodMs(long rebalancePeriodMs) {
+        this.rebalancePeriodMs = rebalancePeriodMs;
+    }
+
 }
@@ -25,6 +25,10 @@ public class TcpCrusherSocketOptions implements Serializable {
 
     private int lingerMs;
 
+    private boolean reusePort;
+
+    private long ioBudgetBytes;
+
     public TcpCrusherSocketOptions() {
         this.backlog = DEFAULT_BACKLOG;
         this.rcvBufferSize = 0;
@@ -33,6 +37,8 @@ public class TcpCrusherSocketOptions implements Serializable {
         this.tcpNoDelay = true;
         this.keepAlive = true;
         this.lingerMs = -1;
+        this.reusePort = false;
+        this.ioBudgetBytes = 0;
     }
 
     public TcpCrusherSocketOptions copy() {
@@ -45,6 +51,8 @@ public class TcpCrusherSocketOptions implements Serializable {
         copy.tcpNoDelay = this.tcpNoDelay;
         copy.keepAlive = this.keepAlive;
         copy.lingerMs = this.lingerMs;
+        copy.reusePort = this.reusePort;
+        copy.ioBudgetBytes = this.ioBudgetBytes;
 
         return copy;
     }
@@ -105,6 +113,22 @@ public class TcpCrusherSocketOptions implements Serializable {
         this.lingerMs = lingerMs;
     }
 
+    public long getIoBudgetBytes() {
+        return ioBudgetBytes;
+    }
+
+    public void setIoBudgetBytes(long ioBudgetBytes) {
+        this.ioBudgetBytes = ioBudgetBytes;
+    }
+
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
     void setupSocketChannel(SocketChannel socketChannel) throws IOException {
         socketChannel.setOption(StandardSocketOptions.SO_KEEPALIVE, keepAlive);
         socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, tcpNoDelay);
@@ -0,0 +1,358 @@
+package org.netcrusher.tcp;
+
+import org.netcrusher.NetCrusherException;
+import org.netcrusher.core.nio.NioUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Byte stream held until its scheduled time. Data is copied into chunks of off-heap memory and the buffers
+ * it came from are free at once, so the amount of delayed data depends on the capacity of the line rather
+ * than on the number of queue buffers. Chunks are allocated while data arrives and freed as it is sent.
+ * Past the memory limit new chunks are mapped from a temporary file which is deleted when the line is cleared.
+ * Each append is a segment with its own scheduled time and segments are sent in order
+ */
+class TcpDelayLine {
+
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TcpDelayLine.class);
+
+    private static final int INITIAL_SEGMENT_COUNT = 64;
+
+    private static final int INITIAL_CHUNK_COUNT = 4;
+
+    private static final int VIEW_COUNT = 16;
+
+    private final long memoryLimit;
+
+    private final long capacity;
+
+    private final ByteBuffer[] views;
+
+    private final int[] viewStarts;
+
+    private final TcpQueueBuffers readableView;
+
+    private Chunk[] chunks;
+
+    private int chunkHead;
+
+    private int chunkCount;
+
+    private Chunk spareChunk;
+
+    private Chunk[] spareMapped;
+
+    private int spareMappedCount;
+
+    private long[] segmentEnds;
+
+    private long[] segmentNs;
+
+    private int segmentHead;
+
+    private int segmentCount;
+
+    private long appendedBytes;
+
+    private long sentBytes;
+
+    private long memoryBytes;
+
+    private long mappedBytes;
+
+    private Path spillPath;
+
+    private FileChannel spillChannel;
+
+    private int requested;
+
+    TcpDelayLine(long memoryLimit, long capacity) {
+        this.memoryLimit = memoryLimit;
+        this.capacity = capacity;
+
+        this.views = new ByteBuffer[VIEW_COUNT];
+        this.viewStarts = new int[VIEW_COUNT];
+        this.readableView = new TcpQueueBuffers(views);
+
+        this.chunks = new Chunk[INITIAL_CHUNK_COUNT];
+        this.spareMapped = new Chunk[INITIAL_CHUNK_COUNT];
+        this.segmentEnds = new long[INITIAL_SEGMENT_COUNT];
+        this.segmentNs = new long[INITIAL_SEGMENT_COUNT];
+    }
+
+    boolean isEmpty() {
+        return appendedBytes == sentBytes;
+    }
+
+    boolean isFull() {
+        return appendedBytes - sentBytes >= capacity;
+    }
+
+    long getSize() {
+        return appendedBytes - sentBytes;
+    }
+
+    long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    long getMappedBytes() {
+        return mappedBytes;
+    }
+
+    void append(ByteBuffer bb, long scheduledNs) {
+        final int bytes = bb.remaining();
+        final int limit = bb.limit();
+
+        while (bb.hasRemaining()) {
+            ByteBuffer writer = tailWriter();
+            bb.limit(bb.position() + Math.min(writer.remaining(), bb.remaining()));
+            writer.put(bb);
+            bb.limit(limit);
+        }
+
+        appendedBytes += bytes;
+
+        if (segmentCount > 0 && segmentNs[segmentIndex(segmentCount - 1)] == scheduledNs) {
+            segmentEnds[segmentIndex(segmentCount - 1)] = appendedBytes;
+        } else {
+            if (segmentCount == segmentEnds.length) {
+                growSegments();
+            }
+
+            final int index = segmentIndex(segmentCount);
+            segmentEnds[index] = appendedBytes;
+            segmentNs[index] = scheduledNs;
+            segmentCount++;
+        }
+    }
+
+    TcpQueueBuffers request(long nowNs) {
+        if (isEmpty()) {
+            return TcpQueueBuffers.EMPTY;
+        }
+
+        long dueEnd = sentBytes;
+        for (int i = 0; i < segmentCount; i++) {
+            final int index = segmentIndex(i);
+            if (segmentNs[index] - nowNs > 0) {
+                if (dueEnd == sentBytes) {
+                    return readableView.set(0, 0, segmentNs[index] - nowNs);
+                }
+                break;
+            }
+            dueEnd = segmentEnds[index];
+        }
+
+        long left = dueEnd - sentBytes;
+        requested = 0;
+        for (int i = 0; i < chunkCount && left > 0 && requested < views.length; i++) {
+            Chunk chunk = chunks[chunkIndex(i)];
+
+            final int start = chunk.reader.position();
+            final int step = (int) Math.min(chunk.writer.position() - start, left);
+            chunk.reader.limit(start + step);
+
+            views[requested] = chunk.reader;
+            viewStarts[requested] = start;
+            requested++;
+
+            left -= step;
+        }
+
+        return readableView.set(0, requested, 0);
+    }
+
+    void release() {
+        for (int i = 0; i < requested; i++) {
+            sentBytes += views[i].position() - viewStarts[i];
+            views[i] = null;
+        }
+        requested = 0;
+
+        while (chunkCount > 0) {
+            Chunk chunk = chunks[chunkHead];
+            if (chunk.reader.position() < chunk.writer.position()) {
+                break;
+            }
+
+            if (chunk.writer.hasRemaining() && chunkCount == 1) {
+                // the last chunk is read up to the end of data so it is filled again from the start
+                chunk.rewind();
+                break;
+            }
+
+            chunks[chunkHead] = null;
+            chunkHead = chunkIndex(1);
+            chunkCount--;
+            freeChunk(chunk);
+        }
+
+        while (segmentCount > 0 && segmentEnds[segmentHead] <= sentBytes) {
+            segmentHead = segmentIndex(1);
+            segmentCount--;
+        }
+    }
+
+    void clear() {
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[chunkIndex(i)] = null;
+        }
+        for (int i = 0; i < spareMappedCount; i++) {
+            spareMapped[i] = null;
+        }
+
+        chunkHead = 0;
+        chunkCount = 0;
+        spareChunk = null;
+        spareMappedCount = 0;
+        segmentHead = 0;
+        segmentCount = 0;
+        sentBytes = appendedBytes;
+        memoryBytes = 0;
+        mappedBytes = 0;
+
+        // mapped chunks stay valid until they are collected although the file is already deleted
+        if (spillChannel != null) {
+            NioUtils.close(spillChannel);
+            spillChannel = null;
+            LOGGER.debug("Spill file {} is deleted", spillPath);
+        }
+    }
+
+    private ByteBuffer tailWriter() {
+        if (chunkCount > 0) {
+            ByteBuffer writer = chunks[chunkIndex(chunkCount - 1)].writer;
+            if (writer.hasRemaining()) {
+                return writer;
+            }
+        }
+
+        if (chunkCount == chunks.length) {
+            growChunks();
+        }
+
+        Chunk chunk = allocateChunk();
+        chunks[chunkIndex(chunkCount)] = chunk;
+        chunkCount++;
+
+        return chunk.writer;
+    }
+
+    private Chunk allocateChunk() {
+        if (spareChunk != null) {
+            Chunk chunk = spareChunk;
+            spareChunk = null;
+            return chunk;
+        }
+
+        if (memoryBytes + CHUNK_SIZE <= memoryLimit) {
+            memoryBytes += CHUNK_SIZE;
+            return new Chunk(NioUtils.allocaleByteBuffer(CHUNK_SIZE, true), false);
+        }
+
+        if (spareMappedCount > 0) {
+            Chunk chunk = spareMapped[--spareMappedCount];
+            spareMapped[spareMappedCount] = null;
+            return chunk;
+        }
+
+        return mapChunk();
+    }
+
+    private Chunk mapChunk() {
+        try {
+            if (spillChannel == null) {
+                spillPath = Files.createTempFile("netcrusher-delay-", ".bin");
+                spillChannel = FileChannel.open(spillPath, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+                LOGGER.debug("Delayed data is spilled to {}", spillPath);
+            }
+
+            ByteBuffer bb = spillChannel.map(FileChannel.MapMode.READ_WRITE, mappedBytes, CHUNK_SIZE);
+            mappedBytes += CHUNK_SIZE;
+
+            return new Chunk(bb, true);
+        } catch (IOException e) {
+            throw new NetCrusherException("Fail to map a chunk of the spill file", e);
+        }
+    }
+
+    private void freeChunk(Chunk chunk) {
+        chunk.rewind();
+
+        // file regions are reused as the file can't shrink, one memory chunk is kept to avoid churn
+        if (chunk.mapped) {
+            if (spareMappedCount == spareMapped.length) {
+                Chunk[] grown = new Chunk[spareMapped.length * 2];
+                System.arraycopy(spareMapped, 0, grown, 0, spareMappedCount);
+                spareMapped = grown;
+            }
+            spareMapped[spareMappedCount++] = chunk;
+        } else if (spareChunk == null) {
+            spareChunk = chunk;
+        } else {
+            memoryBytes -= CHUNK_SIZE;
+        }
+    }
+
+    private void growChunks() {
+        Chunk[] grown = new Chunk[chunks.length * 2];
+        for (int i = 0; i < chunkCount; i++) {
+            grown[i] = chunks[chunkIndex(i)];
+        }
+        chunks = grown;
+        chunkHead = 0;
+    }
+
+    private void growSegments() {
+        long[] grownEnds = new long[segmentEnds.length * 2];
+        long[] grownNs = new long[segmentNs.length * 2];
+        for (int i = 0; i < segmentCount; i++) {
+            grownEnds[i] = segmentEnds[segmentIndex(i)];
+            grownNs[i] = segmentNs[segmentIndex(i)];
+        }
+        segmentEnds = grownEnds;
+        segmentNs = grownNs;
+        segmentHead = 0;
+    }
+
+    private int chunkIndex(int offset) {
+        return (chunkHead + offset) % chunks.length;
+    }
+
+    private int segmentIndex(int offset) {
+        return (segmentHead + offset) % segmentEnds.length;
+    }
+
+    private static final class Chunk {
+
+        private final ByteBuffer writer;
+
+        private final ByteBuffer reader;
+
+        private final boolean mapped;
+
+        private Chunk(ByteBuffer bb, boolean mapped) {
+            this.writer = bb;
+            this.reader = bb.duplicate();
+            this.mapped = mapped;
+            rewind();
+        }
+
+        private void rewind() {
+            writer.clear();
+            reader.position(0);
+            reader.limit(0);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.netcrusher.tcp;
+
+/**
+ * Bytes both channels of a pair may transfer in one selector callback. Not thread-safe:
+ * should be used only from the pair's selector thread
+ */
+class TcpIoBudget {
+
+    private final long limitBytes;
+
+    private long remainingBytes;
+
+    TcpIoBudget(long limitBytes) {
+        this.limitBytes = limitBytes;
+        this.remainingBytes = limitBytes;
+    }
+
+    void reset() {
+        remainingBytes = limitBytes;
+    }
+
+    void consume(long bytes) {
+        remainingBytes -= bytes;
+    }
+
+    boolean isExhausted() {
+        return limitBytes > 0 && remainingBytes <= 0;
+    }
+}
@@ -0,0 +1,326 @@
+package org.netcrusher.tcp;
+
+import org.netcrusher.core.buffer.BufferOptions;
+import org.netcrusher.core.meter.RateMeter;
+import org.netcrusher.core.meter.RateMeterImpl;
+import org.netcrusher.core.meter.RateMeters;
+import org.netcrusher.core.reactor.NioSelector;
+import org.netcrusher.core.state.BitState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+class TcpNioPair implements TcpPair {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TcpNioPair.class);
+
+    private static final Object MIGRATED = new Object();
+
+    private final TcpChannel innerChannel;
+
+    private final TcpChannel outerChannel;
+
+    private final TcpQueue innerToOuter;
+
+    private final TcpQueue outerToInner;
+
+    private final Runnable ownerClose;
+
+    private final InetSocketAddress clientAddress;
+
+    private final RateMeterImpl cpuMeter;
+
+    private final State state;
+
+    private volatile NioSelector selector;
+
+    TcpNioPair(
+        NioSelector selector,
+        TcpFilters filters,
+        SocketChannel inner,
+        SocketChannel outer,
+        BufferOptions bufferOptions,
+        RateMeterImpl crusherCpuMeter,
+        long ioBudgetBytes,
+        Runnable ownerClose) throws IOException
+    {
+        this.ownerClose = ownerClose;
+        this.selector = selector;
+        this.cpuMeter = new RateMeterImpl();
+
+        this.clientAddress = (InetSocketAddress) inner.getRemoteAddress();
+
+        this.innerToOuter = TcpQueue.allocateQueue(clientAddress, bufferOptions,
+            filters.getOutgoingTransformFilterFactory(), filters.getOutgoingThrottlerFactory(),
+            selector.getChronometer(), selector.getBufferPool(), selector.getMemoryBudget());
+        this.outerToInner = TcpQueue.allocateQueue(clientAddress, bufferOptions,
+            filters.getIncomingTransformFilterFactory(), filters.getIncomingThrottlerFactory(),
+            selector.getChronometer(), selector.getBufferPool(), selector.getMemoryBudget());
+
+        RateMeterImpl[] cpuMeters = { cpuMeter, crusherCpuMeter };
+        TcpIoBudget budget = new TcpIoBudget(ioBudgetBytes);
+
+        this.innerChannel = new TcpChannel("INNER", selector, this::closeAll, inner,
+            outerToInner, innerToOuter, budget, cpuMeters);
+        this.outerChannel = new TcpChannel("OUTER", selector, this::closeAll, outer,
+            innerToOuter, outerToInner, budget, cpuMeters);
+
+        this.innerChannel.setOther(outerChannel);
+        this.outerChannel.setOther(innerChannel);
+
+        this.state = new State(State.FROZEN);
+    }
+
+    private void closeAll() {
+        this.close();
+        ownerClose.run();
+    }
+
+    // the pair could be migrated to another loop while an operation is waiting in the old loop's queue
+    // so the operation is passed to the new owner if the old loop doesn't own the pair anymore
+    @SuppressWarnings("unchecked")
+    private <T> T execute(Callable<T> callable) {
+        while (true) {
+            final NioSelector owner = selector;
+            final Object result = owner.execute(() -> owner == selector ? callable.call() : MIGRATED);
+            if (result != MIGRATED) {
+                return (T) result;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> executeAsync(Callable<T> callable) {
+        final NioSelector owner = selector;
+        return owner.executeAsync(() -> owner == selector ? callable.call() : MIGRATED)
+            .thenCompose(result -> result == MIGRATED
+                ? executeAsync(callable) : CompletableFuture.completedFuture((T) result));
+    }
+
+    @Override
+    public void close() {
+        execute(this::doClose);
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        return executeAsync(this::doClose).thenApply(done -> null);
+    }
+
+    private boolean doClose() {
+        if (state.not(State.CLOSED)) {
+            if (state.is(State.OPEN)) {
+                freeze();
+            }
+
+            innerChannel.close();
+            outerChannel.close();
+
+            // pooled buffers go back with whatever data was left undelivered
+            innerToOuter.reset();
+            outerToInner.reset();
+
+            state.set(State.CLOSED);
+
+            LOGGER.debug("Pair for '{}' is closed", clientAddress);
+
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public void freeze() {
+        execute(this::doFreeze);
+    }
+
+    @Override
+    public CompletableFuture<Void> freezeAsync() {
+        return executeAsync(this::doFreeze).thenApply(done -> null);
+    }
+
+    // the pair could be closed concurrently in its own selector loop so the state is checked there
+    @Override
+    public CompletableFuture<Void> freezeIfOpenAsync() {
+        return executeAsync(() -> state.is(State.OPEN) && doFreeze()).thenApply(done -> null);
+    }
+
+    private boolean doFreeze() {
+        if (state.is(State.OPEN)) {
+            if (!innerChannel.isFrozen()) {
+                innerChannel.freeze();
+            }
+            if (!outerChannel.isFrozen()) {
+                outerChannel.freeze();
+            }
+
+            state.set(State.FROZEN);
+
+            return true;
+        } else {
+            throw new IllegalStateException("Pair is not open on freeze");
+        }
+    }
+
+    @Override
+    public void unfreeze() {
+        execute(this::doUnfreeze);
+    }
+
+    @Override
+    public CompletableFuture<Void> unfreezeAsync() {
+        return executeAsync(this::doUnfreeze).thenApply(done -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> unfreezeIfFrozenAsync() {
+        return executeAsync(() -> state.is(State.FROZEN) && doUnfreeze()).thenApply(done -> null);
+    }
+
+    private boolean doUnfreeze() {
+        if (state.is(State.FROZEN)) {
+            if (innerChannel.isFrozen()) {
+                innerChannel.unfreeze();
+            }
+            if (outerChannel.isFrozen()) {
+                outerChannel.unfreeze();
+            }
+
+            state.set(State.OPEN);
+
+            return true;
+        } else {
+            throw new IllegalStateException("Pair is not frozen on unfreeze");
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> drainAsync() {
+        return executeAsync(this::doDrain).thenApply(done -> null);
+    }
+
+    private boolean doDrain() {
+        if (state.is(State.OPEN)) {
+            innerChannel.drain();
+            outerChannel.drain();
+
+            // both queues could be empty already
+            innerChannel.checkDrained();
+            outerChannel.checkDrained();
+
+            return true;
+        } else if (state.is(State.FROZEN)) {
+            // frozen pair is not going to flush anything
+            closeAll();
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Moves both channels of the pair with their queues to another selector loop. Only an open pair
+     * which is not closing could be migrated
+     * @param target Selector loop to move the pair to
+     * @return Future with 'true' if the pair has been migrated
+     */
+    CompletableFuture<Boolean> migrateAsync(NioSelector target) {
+        final NioSelector source = selector;
+        return source.executeAsync(() -> source == selector && doMigrate(target));
+    }
+
+    private boolean doMigrate(NioSelector target) {
+        if (selector == target || state.not(State.OPEN)
+            || !innerChannel.isMigratable() || !outerChannel.isMigratable())
+        {
+            return false;
+        }
+
+        // both channels leave the old loop right here and are resumed by the new one, so the state
+        // with queues is never shared between two loops and queued bytes keep their order
+        innerChannel.detach(target);
+        outerChannel.detach(target);
+
+        this.selector = target;
+
+        // the pair could be migrated once again before it is resumed here
+        target.executeAsync(() -> selector == target && resume());
+
+        LOGGER.debug("Pair for '{}' is migrated to another selector loop", clientAddress);
+
+        return true;
+    }
+
+    private boolean resume() {
+        if (state.is(State.CLOSED)) {
+            return false;
+        }
+
+        boolean innerResumed = innerChannel.resume();
+        boolean outerResumed = outerChannel.resume();
+
+        if (innerResumed && outerResumed) {
+            return true;
+        } else {
+            LOGGER.debug("Pair for '{}' has lost its channel on migration", clientAddress);
+            closeAll();
+            return false;
+        }
+    }
+
+    NioSelector getSelector() {
+        return selector;
+    }
+
+    TcpQueue getInnerToOuter() {
+        return innerToOuter;
+    }
+
+    TcpQueue getOuterToInner() {
+        return outerToInner;
+    }
+
+    long getTransferredBytes() {
+        return innerChannel.getSentBytesMeter().getTotalCount() + outerChannel.getSentBytesMeter().getTotalCount();
+    }
+
+    @Override
+    public boolean isFrozen() {
+        return state.isAnyOf(State.FROZEN | State.CLOSED);
+    }
+
+    @Override
+    public InetSocketAddress getClientAddress() {
+        return clientAddress;
+    }
+
+    @Override
+    public RateMeter getCpuMeter() {
+        return cpuMeter;
+    }
+
+    @Override
+    public RateMeters getByteMeters() {
+        return new RateMeters(innerChannel.getSentBytesMeter(), outerChannel.getSentBytesMeter());
+    }
+
+    private static final class State extends BitState {
+
+        static final int OPEN = bit(0);
+
+        static final int FROZEN = bit(1);
+
+        static final int CLOSED = bit(2);
+
+        State(int state) {
+            super(state);
+        }
+    }
+
+}
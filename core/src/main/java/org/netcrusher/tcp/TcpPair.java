@@ -1,152 +1,38 @@
 package org.netcrusher.tcp;
 
 import org.netcrusher.NetFreezer;
-import org.netcrusher.core.buffer.BufferOptions;
+import org.netcrusher.core.meter.RateMeter;
 import org.netcrusher.core.meter.RateMeters;
-import org.netcrusher.core.reactor.NioReactor;
-import org.netcrusher.core.state.BitState;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
 
-class TcpPair implements NetFreezer {
+/**
+ * Proxied connection of one client: the accepted inner socket and the outer socket connected to the target
+ * @see TcpNioPair
+ * @see TcpBlockingPair
+ */
+interface TcpPair extends NetFreezer {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(TcpPair.class);
+    void close();
 
-    private final TcpChannel innerChannel;
+    CompletableFuture<Void> closeAsync();
 
-    private final TcpChannel outerChannel;
+    CompletableFuture<Void> freezeIfOpenAsync();
 
-    private final Runnable ownerClose;
+    CompletableFuture<Void> unfreezeIfFrozenAsync();
 
-    private final NioReactor reactor;
+    /**
+     * Forwards data which is already in sockets and queues and then half-closes both sockets.
+     * The pair closes itself when both peers have closed their sides
+     * @return Future which is completed when draining is started
+     */
+    CompletableFuture<Void> drainAsync();
 
-    private final InetSocketAddress clientAddress;
+    InetSocketAddress getClientAddress();
 
-    private final State state;
+    RateMeter getCpuMeter();
 
-    TcpPair(
-        NioReactor reactor,
-        TcpFilters filters,
-        SocketChannel inner,
-        SocketChannel outer,
-        BufferOptions bufferOptions,
-        Runnable ownerClose) throws IOException
-    {
-        this.ownerClose = ownerClose;
-        this.reactor = reactor;
-
-        this.clientAddress = (InetSocketAddress) inner.getRemoteAddress();
-
-        TcpQueue innerToOuter = TcpQueue.allocateQueue(clientAddress, bufferOptions,
-            filters.getOutgoingTransformFilterFactory(), filters.getOutgoingThrottlerFactory());
-        TcpQueue outerToInner = TcpQueue.allocateQueue(clientAddress, bufferOptions,
-            filters.getIncomingTransformFilterFactory(), filters.getIncomingThrottlerFactory());
-
-        this.innerChannel = new TcpChannel("INNER", reactor, this::closeAll, inner,
-            outerToInner, innerToOuter);
-        this.outerChannel = new TcpChannel("OUTER", reactor, this::closeAll, outer,
-            innerToOuter, outerToInner);
-
-        this.innerChannel.setOther(outerChannel);
-        this.outerChannel.setOther(innerChannel);
-
-        this.state = new State(State.FROZEN);
-    }
-
-    private void closeAll() {
-        this.close();
-        ownerClose.run();
-    }
-
-    void close() {
-        reactor.getSelector().execute(() -> {
-            if (state.not(State.CLOSED)) {
-                if (state.is(State.OPEN)) {
-                    freeze();
-                }
-
-                innerChannel.close();
-                outerChannel.close();
-
-                state.set(State.CLOSED);
-
-                LOGGER.debug("Pair for '{}' is closed", clientAddress);
-
-                return true;
-            } else {
-                return false;
-            }
-        });
-    }
-
-    @Override
-    public void freeze() {
-        reactor.getSelector().execute(() -> {
-            if (state.is(State.OPEN)) {
-                if (!innerChannel.isFrozen()) {
-                    innerChannel.freeze();
-                }
-                if (!outerChannel.isFrozen()) {
-                    outerChannel.freeze();
-                }
-
-                state.set(State.FROZEN);
-
-                return true;
-            } else {
-                throw new IllegalStateException("Pair is not open on freeze");
-            }
-        });
-    }
-
-    @Override
-    public void unfreeze() {
-        reactor.getSelector().execute(() -> {
-            if (state.is(State.FROZEN)) {
-                if (innerChannel.isFrozen()) {
-                    innerChannel.unfreeze();
-                }
-                if (outerChannel.isFrozen()) {
-                    outerChannel.unfreeze();
-                }
-
-                state.set(State.OPEN);
-
-                return true;
-            } else {
-                throw new IllegalStateException("Pair is not frozen on unfreeze");
-            }
-        });
-    }
-
-    @Override
-    public boolean isFrozen() {
-        return state.isAnyOf(State.FROZEN | State.CLOSED);
-    }
-
-    InetSocketAddress getClientAddress() {
-        return clientAddress;
-    }
-
-    RateMeters getByteMeters() {
-        return new RateMeters(innerChannel.getSentBytesMeter(), outerChannel.getSentBytesMeter());
-    }
-
-    private static final class State extends BitState {
-
-        static final int OPEN = bit(0);
-
-        static final int FROZEN = bit(1);
-
-        static final int CLOSED = bit(2);
-
-        State(int state) {
-            super(state);
-        }
-    }
+    RateMeters getByteMeters();
 
 }
@@ -1,6 +1,10 @@
 package org.netcrusher.tcp;
 
+import org.netcrusher.core.buffer.AdaptiveBufferSize;
 import org.netcrusher.core.buffer.BufferOptions;
+import org.netcrusher.core.buffer.BufferPool;
+import org.netcrusher.core.buffer.MemoryBudget;
+import org.netcrusher.core.chronometer.Chronometer;
 import org.netcrusher.core.filter.TransformFilter;
 import org.netcrusher.core.filter.TransformFilterFactory;
 import org.netcrusher.core.nio.NioUtils;
@@ -9,209 +13,468 @@ import org.netcrusher.core.throttle.ThrottlerFactory;
 
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.util.ArrayDeque;
-import java.util.Queue;
 
+/**
+ * Fixed ring of buffers. Readable buffers are filled and scheduled for sending and go from the head,
+ * writable ones follow them from the fill index up to the head again. Each buffer is referenced twice
+ * in the view array so a range which wraps around the ring is still a contiguous slice for gathering
+ * and scattering I/O, and the views are reused so neither reads nor writes allocate.
+ * With a buffer pool the ring holds only buffers with data and a few ones to read into: they are borrowed
+ * when data arrives and returned as soon as they are sent, so an idle queue holds no memory.
+ * With a memory budget each readable buffer is charged for its data until it is sent, and the queue has
+ * no writable buffers while the budget is exhausted.
+ * A queue with neither filter nor throttler is a plain relay: filled buffers are readable at once
+ * without scheduling and reading the clock.
+ * An adaptive queue also gets its buffers on demand but allocates them itself with the size estimated
+ * from previous reads and keeps sent ones of the current size as spare, so a chatty connection holds
+ * a few small buffers while a bulk one grows them up to the maximal size.
+ * A throttled queue with a delay line copies filled buffers into the line and reuses them at once, so
+ * delayed data is limited by the capacity of the line instead of the ring and the delay doesn't cap
+ * the throughput at count * size / delay
+ */
 class TcpQueue {
 
-    private final Queue<BufferEntry> readable;
+    private static final int BORROW_BATCH = 4;
 
-    private final Queue<BufferEntry> writable;
+    private final ByteBuffer[] buffers;
 
-    private final BufferEntry[] entryArray;
+    private final long[] scheduledNs;
 
-    private final ByteBuffer[] bufferArray;
+    private final int[] chargedBytes;
+
+    private final int count;
+
+    private final int bufferSize;
+
+    private BufferPool pool;
+
+    private final AdaptiveBufferSize adaptiveSize;
+
+    private final ByteBuffer[] spare;
+
+    private final boolean direct;
+
+    private final boolean onDemand;
+
+    private final MemoryBudget budget;
+
+    private final TcpQueueBuffers readableView;
+
+    private final TcpQueueBuffers writableView;
 
     private final TransformFilter filter;
 
     private final Throttler throttler;
 
+    private Chronometer chronometer;
+
+    private final boolean passThrough;
+
+    private final TcpDelayLine delayLine;
+
+    private int head;
+
+    private int size;
+
+    private int held;
+
+    private int spareCount;
+
+    private long offeredBytes;
+
     TcpQueue(
             BufferOptions bufferOptions,
             TransformFilter filter,
-            Throttler throttler)
+            Throttler throttler,
+            Chronometer chronometer,
+            BufferPool pool,
+            MemoryBudget budget)
     {
-        final int count = bufferOptions.getCount();
+        this.count = bufferOptions.getCount();
+        this.bufferSize = bufferOptions.getSize();
+
+        this.buffers = new ByteBuffer[count * 2];
+        this.scheduledNs = new long[count];
+        this.chargedBytes = new int[count];
+        this.budget = budget;
+
+        this.direct = bufferOptions.isDirect();
+
+        // a pool of other buffers can't be used so the queue allocates its own ones
+        this.pool = pool != null && pool.accepts(bufferOptions) ? pool : null;
+        if (bufferOptions.isAdaptive()) {
+            this.adaptiveSize = bufferOptions.createAdaptiveSize();
+            this.spare = new ByteBuffer[count];
+        } else {
+            this.adaptiveSize = null;
+            this.spare = null;
+        }
 
-        this.readable = new ArrayDeque<>(count);
-        this.writable = new ArrayDeque<>(count);
+        this.onDemand = this.pool != null || this.adaptiveSize != null;
+        if (onDemand) {
+            this.held = 0;
+        } else {
+            this.held = count;
+            for (int i = 0; i < count; i++) {
+                setBuffer(i, NioUtils.allocaleByteBuffer(bufferSize, direct));
+            }
+        }
 
-        this.bufferArray = new ByteBuffer[count];
-        this.entryArray = new BufferEntry[count];
+        this.readableView = new TcpQueueBuffers(buffers);
+        this.writableView = new TcpQueueBuffers(buffers);
 
         this.filter = filter;
         this.throttler = throttler;
+        this.chronometer = chronometer;
+        this.passThrough = filter == null && throttler == null;
 
-        for (int i = 0; i < count; i++) {
-            this.writable.add(new BufferEntry(bufferOptions.getSize(), bufferOptions.isDirect()));
+        if (throttler != null && bufferOptions.getDelayLineCapacity() > 0) {
+            this.delayLine = new TcpDelayLine(bufferOptions.getDelayLineMemory(),
+                bufferOptions.getDelayLineCapacity());
+        } else {
+            this.delayLine = null;
         }
+
+        this.head = 0;
+        this.size = 0;
     }
 
     public static TcpQueue allocateQueue(
         InetSocketAddress clientAddress,
         BufferOptions bufferOptions,
         TransformFilterFactory transformFilterFactory,
-        ThrottlerFactory throttlerFactory)
+        ThrottlerFactory throttlerFactory,
+        Chronometer chronometer,
+        BufferPool pool,
+        MemoryBudget budget)
     {
+        // no-op filters are dropped so such queues relay data as if nothing is configured
         final TransformFilter transformFilter;
         if (transformFilterFactory != null) {
-            transformFilter = transformFilterFactory.allocate(clientAddress);
+            transformFilter = unlessNoop(transformFilterFactory.allocate(clientAddress), TransformFilter.NOOP);
         } else {
             transformFilter = null;
         }
 
         final Throttler throttler;
         if (throttlerFactory != null) {
-            throttler = throttlerFactory.allocate(clientAddress);
+            throttler = unlessNoop(throttlerFactory.allocate(clientAddress), Throttler.NOOP);
         } else {
             throttler = null;
         }
 
-        return new TcpQueue(bufferOptions, transformFilter, throttler);
+        return new TcpQueue(bufferOptions, transformFilter, throttler, chronometer, pool, budget);
+    }
+
+    private static <T> T unlessNoop(T value, T noop) {
+        return value != noop ? value : null;
     }
 
     public void reset() {
-        writable.addAll(readable);
-        readable.clear();
-        writable.forEach(e -> e.getBuffer().clear());
+        for (int i = 0; i < size; i++) {
+            discharge(index(head + i));
+        }
+
+        if (delayLine != null) {
+            dischargeDelayed(delayLine.getSize());
+            delayLine.clear();
+        }
+
+        for (int i = 0; i < count; i++) {
+            ByteBuffer bb = buffers[i];
+            if (bb != null) {
+                bb.clear();
+                if (onDemand) {
+                    giveBuffer(bb);
+                    setBuffer(i, null);
+                }
+            }
+        }
+
+        head = 0;
+        size = 0;
+        held = onDemand ? 0 : count;
+    }
+
+    /**
+     * Binds the queue to the clock and the pool of the selector loop its pair is migrated to. Deadlines
+     * which are already scheduled stay valid as all the loops' clocks tick from the same time source
+     * @param chronometer Clock of the new loop
+     * @param pool Buffer pool of the new loop
+     */
+    void rebind(Chronometer chronometer, BufferPool pool) {
+        this.chronometer = chronometer;
+
+        // borrowed buffers are given back to the new pool so it should hold the same buffers
+        if (this.pool != null && pool != null && pool.getBufferSize() == this.pool.getBufferSize()) {
+            this.pool = pool;
+        }
     }
 
     public boolean hasReadable() {
-        BufferEntry readableEntry = readable.peek();
-        if (readableEntry != null) {
-            if (readableEntry.getBuffer().hasRemaining()) {
+        if (delayLine != null && !delayLine.isEmpty()) {
+            return true;
+        }
+
+        if (size > 0) {
+            if (buffers[head].hasRemaining()) {
                 return true;
             } else {
                 throw new IllegalStateException("Illegal queue state. Possibly no release() call after request()");
             }
         }
 
-        BufferEntry writableEntry = writable.peek();
-        return writableEntry != null && writableEntry.getBuffer().position() > 0;
+        return held > 0 && buffers[head].position() > 0;
     }
 
     public long calculateReadableBytes() {
-        long size = 0;
+        long bytes = 0;
+
+        for (int i = head, limit = head + size; i < limit; i++) {
+            bytes += buffers[i].remaining();
+        }
 
-        for (BufferEntry readableEntry : readable) {
-            size += readableEntry.getBuffer().remaining();
+        if (held > 0) {
+            bytes += buffers[head + size].position();
         }
 
-        BufferEntry writableEntry = writable.peek();
-        if (writableEntry != null) {
-            size += writableEntry.getBuffer().position();
+        if (delayLine != null) {
+            bytes += delayLine.getSize();
         }
 
-        return size;
+        return bytes;
     }
 
     public TcpQueueBuffers requestReadableBuffers() {
-        BufferEntry entryToSteal = writable.peek();
-        if (entryToSteal != null && entryToSteal.getBuffer().position() > 0) {
+        if (delayLine != null) {
+            delayWritableBuffers();
+            return delayLine.request(chronometer.getTickNs());
+        }
+
+        if (held > 0 && buffers[head + size].position() > 0) {
             freeWritableBuffer();
         }
 
-        final int size = readable.size();
         if (size == 0) {
             return TcpQueueBuffers.EMPTY;
         }
 
-        long nowNs = System.nanoTime();
+        if (passThrough) {
+            return readableView.set(head, size, 0);
+        }
 
-        readable.toArray(entryArray);
-        for (int i = 0; i < size; i++) {
-            BufferEntry entry = entryArray[i];
+        long nowNs = chronometer.getTickNs();
 
-            long delayNs = entry.getScheduledNs() - nowNs;
+        for (int i = 0; i < size; i++) {
+            long delayNs = scheduledNs[index(head + i)] - nowNs;
             if (delayNs > 0) {
-                return new TcpQueueBuffers(bufferArray, 0, i, delayNs);
-            } else {
-                bufferArray[i] = entry.getBuffer();
+                return readableView.set(head, i, delayNs);
             }
         }
 
-        return new TcpQueueBuffers(bufferArray, 0, size);
+        return readableView.set(head, size, 0);
     }
 
     public void releaseReadableBuffers() {
-        while (!readable.isEmpty()) {
-            BufferEntry entry = readable.element();
-            if (entry.getBuffer().hasRemaining()) {
-                break;
-            } else {
-                freeReadableBuffer();
-            }
+        if (delayLine != null) {
+            final long sizeBefore = delayLine.getSize();
+            delayLine.release();
+            dischargeDelayed(sizeBefore - delayLine.getSize());
+        }
+
+        while (size > 0 && !buffers[head].hasRemaining()) {
+            freeReadableBuffer();
+        }
+
+        // a drained queue keeps nothing
+        if (onDemand && size == 0 && held > 0 && buffers[head].position() == 0) {
+            returnWritableBuffers(held);
         }
     }
 
     private void freeReadableBuffer() {
-        BufferEntry entry = readable.remove();
+        ByteBuffer bb = buffers[head];
+        bb.clear();
+
+        discharge(head);
 
-        entry.getBuffer().clear();
+        if (onDemand) {
+            giveBuffer(bb);
+            setBuffer(head, null);
+        } else {
+            held++;
+        }
 
-        writable.add(entry);
+        head = index(head + 1);
+        size--;
     }
 
     public boolean hasWritable() {
-        BufferEntry entry = writable.peek();
-        if (entry != null) {
-            if (entry.getBuffer().hasRemaining()) {
+        if (isBlocked()) {
+            return false;
+        }
+
+        if (held > 0) {
+            if (buffers[head + size].hasRemaining()) {
                 return true;
             } else {
                 throw new IllegalStateException("Illegal queue state. Possibly no release() call after request()");
             }
         }
 
-        return false;
+        // a pooled queue gets buffers for its empty slots on request
+        return size < count;
     }
 
     public long calculateWritableBytes() {
-        long size = 0;
+        final int emptySize = adaptiveSize != null ? adaptiveSize.getSize() : bufferSize;
+        return (long) (count - size - held) * emptySize + calculateRemaining(head + size, held);
+    }
+
+    private long calculateRemaining(int offset, int number) {
+        long bytes = 0;
 
-        for (BufferEntry entry : writable) {
-            size += entry.getBuffer().remaining();
+        for (int i = offset, limit = offset + number; i < limit; i++) {
+            bytes += buffers[i].remaining();
         }
 
-        return size;
+        return bytes;
     }
 
     public TcpQueueBuffers requestWritableBuffers() {
-        final int size = writable.size();
-        if (size == 0) {
+        final int free = count - size;
+        if (free == 0 || isBlocked()) {
             return TcpQueueBuffers.EMPTY;
         }
 
-        writable.toArray(entryArray);
-        for (int i = 0; i < size; i++) {
-            BufferEntry entry = entryArray[i];
-            bufferArray[i] = entry.getBuffer();
+        if (held < BORROW_BATCH && held < free) {
+            borrowWritableBuffers(Math.min(BORROW_BATCH, free) - held);
         }
 
-        return new TcpQueueBuffers(bufferArray, 0, size);
+        if (adaptiveSize != null) {
+            offeredBytes = calculateRemaining(head + size, held);
+        }
+
+        return writableView.set(head + size, held, 0);
     }
 
     public void releaseWritableBuffers() {
-        while (!writable.isEmpty()) {
-            BufferEntry entry = writable.element();
-            if (entry.getBuffer().hasRemaining()) {
-                break;
-            } else {
-                freeWritableBuffer();
+        // empty reads end each readable event and tell nothing about the traffic
+        if (adaptiveSize != null && held > 0) {
+            final long read = offeredBytes - calculateRemaining(head + size, held);
+            if (read > 0) {
+                adaptiveSize.record(read);
+            }
+        }
+
+        if (delayLine != null) {
+            delayWritableBuffers();
+            return;
+        }
+
+        // a buffer emptied by the filter goes behind the held ones so the next filled one is freed in turn
+        while (held > 0 && !buffers[head + size].hasRemaining()) {
+            freeWritableBuffer();
+        }
+    }
+
+    private void delayWritableBuffers() {
+        // buffers are filled one by one so the data ends at the first empty buffer
+        for (int i = head + size, limit = i + held; i < limit && buffers[i].position() > 0; i++) {
+            ByteBuffer bb = buffers[i];
+            bb.flip();
+
+            if (filter != null) {
+                filter.transform(bb);
+            }
+
+            if (bb.hasRemaining()) {
+                final long delayNs = throttler.calculateDelayNs(bb);
+                chargeDelayed(bb.remaining());
+                delayLine.append(bb, chronometer.getTickNs() + delayNs);
+            }
+
+            bb.clear();
+        }
+    }
+
+    private void borrowWritableBuffers(int number) {
+        for (int i = 0; i < number; i++) {
+            setBuffer(index(head + size + held), takeBuffer());
+            held++;
+        }
+    }
+
+    private void returnWritableBuffers(int number) {
+        for (int i = 0; i < number; i++) {
+            held--;
+            final int position = index(head + size + held);
+            giveBuffer(buffers[position]);
+            setBuffer(position, null);
+        }
+    }
+
+    private ByteBuffer takeBuffer() {
+        if (pool != null) {
+            return pool.borrow();
+        }
+
+        // spare buffers left from the previous size are dropped
+        final int targetSize = adaptiveSize.getSize();
+        while (spareCount > 0) {
+            ByteBuffer bb = spare[--spareCount];
+            spare[spareCount] = null;
+            if (bb.capacity() == targetSize) {
+                return bb;
+            }
+        }
+
+        return NioUtils.allocaleByteBuffer(targetSize, direct);
+    }
+
+    private void giveBuffer(ByteBuffer bb) {
+        if (pool != null) {
+            pool.release(bb);
+        } else if (bb.capacity() == adaptiveSize.getSize() && spareCount < spare.length) {
+            bb.clear();
+            spare[spareCount++] = bb;
+        }
+    }
+
+    long calculateAllocatedBytes() {
+        long bytes = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (buffers[i] != null) {
+                bytes += buffers[i].capacity();
             }
         }
+
+        for (int i = 0; i < spareCount; i++) {
+            bytes += spare[i].capacity();
+        }
+
+        return bytes;
     }
 
     private void freeWritableBuffer() {
-        BufferEntry entry = writable.remove();
+        final int fill = head + size;
 
-        ByteBuffer bb = entry.getBuffer();
+        ByteBuffer bb = buffers[fill];
         bb.flip();
 
-        if (filter != null) {
-            filter.transform(bb);
-        }
+        if (!passThrough) {
+            if (filter != null) {
+                filter.transform(bb);
+            }
+
+            if (!bb.hasRemaining()) {
+                // the filter has dropped everything so the buffer is reused after the ones filled behind it
+                bb.clear();
+                rotateWritableBuffers(fill);
+                return;
+            }
 
-        if (bb.hasRemaining()) {
             final long delayNs;
             if (throttler != null) {
                 delayNs = throttler.calculateDelayNs(bb);
@@ -219,38 +482,72 @@ class TcpQueue {
                 delayNs = Throttler.NO_DELAY_NS;
             }
 
-            entry.schedule(delayNs);
+            scheduledNs[index(fill)] = chronometer.getTickNs() + delayNs;
+        }
 
-            readable.add(entry);
-        } else {
-            bb.clear();
-            writable.add(entry);
+        charge(index(fill), bb.remaining());
+
+        size++;
+        held--;
+    }
+
+    private void rotateWritableBuffers(int fill) {
+        final ByteBuffer first = buffers[fill];
+        for (int i = fill, limit = fill + held - 1; i < limit; i++) {
+            setBuffer(index(i), buffers[i + 1]);
         }
+        setBuffer(index(fill + held - 1), first);
+    }
+
+    boolean isPassThrough() {
+        return passThrough;
     }
 
-    static final class BufferEntry {
+    private boolean isBlocked() {
+        return budget != null && budget.isExhausted() || delayLine != null && delayLine.isFull();
+    }
 
-        private final ByteBuffer buffer;
+    TcpDelayLine getDelayLine() {
+        return delayLine;
+    }
 
-        private long scheduledNs;
+    Chronometer getChronometer() {
+        return chronometer;
+    }
 
-        BufferEntry(int capacity, boolean direct) {
-            this.buffer = NioUtils.allocaleByteBuffer(capacity, direct);
-            this.scheduledNs = System.nanoTime();
+    private void charge(int position, int bytes) {
+        if (budget != null) {
+            chargedBytes[position] = bytes;
+            budget.acquire(bytes);
         }
+    }
 
-        void schedule(long delayNs) {
-            this.scheduledNs = System.nanoTime() + delayNs;
+    private void discharge(int position) {
+        if (budget != null) {
+            budget.release(chargedBytes[position]);
+            chargedBytes[position] = 0;
         }
+    }
 
-        ByteBuffer getBuffer() {
-            return buffer;
+    private void chargeDelayed(long bytes) {
+        if (budget != null) {
+            budget.acquire(bytes);
         }
+    }
 
-        long getScheduledNs() {
-            return scheduledNs;
+    private void dischargeDelayed(long bytes) {
+        if (budget != null && bytes > 0) {
+            budget.release(bytes);
         }
+    }
+
+    private void setBuffer(int position, ByteBuffer bb) {
+        buffers[position] = bb;
+        buffers[position + count] = bb;
+    }
 
+    private int index(int position) {
+        return position < count ? position : position - count;
     }
 
 }
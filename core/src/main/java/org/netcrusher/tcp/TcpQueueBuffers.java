@@ -2,27 +2,33 @@ package org.netcrusher.tcp;
 
 import java.nio.ByteBuffer;
 
+/**
+ * Slice of the queue's buffer array. A queue reuses its views so a view is only valid until the next request
+ */
 class TcpQueueBuffers {
 
-    public static final TcpQueueBuffers EMPTY = new TcpQueueBuffers(null, -1, 0, 0);
+    public static final TcpQueueBuffers EMPTY = new TcpQueueBuffers(null);
 
     private final ByteBuffer[] array;
 
-    private final int offset;
+    private int offset;
 
-    private final int count;
+    private int count;
 
-    private final long delayNs;
+    private long delayNs;
 
-    TcpQueueBuffers(ByteBuffer[] array, int offset, int count, long delayNs) {
+    TcpQueueBuffers(ByteBuffer[] array) {
         this.array = array;
+        this.offset = -1;
+        this.count = 0;
+        this.delayNs = 0;
+    }
+
+    TcpQueueBuffers set(int offset, int count, long delayNs) {
         this.offset = offset;
         this.count = count;
         this.delayNs = delayNs;
-    }
-
-    TcpQueueBuffers(ByteBuffer[] array, int offset, int count) {
-        this(array, offset, count, 0);
+        return this;
     }
 
     public ByteBuffer[] getArray() {
@@ -0,0 +1,152 @@
+package org.netcrusher.tcp;
+
+import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.core.reactor.NioSelector;
+import org.netcrusher.core.reactor.NioSelectorScheduledOp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically moves a heavy pair from the busiest selector loop to the least busy one. Loops are compared
+ * by utilization, pairs are compared by bytes they have transferred in the last period.
+ * All methods except getUtilization() should be called from the crusher's selector thread
+ */
+class TcpRebalancer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TcpRebalancer.class);
+
+    // loops which utilization differs less are considered balanced
+    private static final double UTILIZATION_TOLERANCE = 0.2;
+
+    private final TcpCrusher crusher;
+
+    private final NioSelector selector;
+
+    private final List<NioSelector> loops;
+
+    private final long periodNs;
+
+    private final NioSelectorScheduledOp rebalanceOp;
+
+    private final long[] lastBusyTimeNs;
+
+    private Map<TcpNioPair, Long> lastPairBytes;
+
+    private long lastTimeNs;
+
+    private volatile double[] utilization;
+
+    TcpRebalancer(TcpCrusher crusher, NioReactor reactor, long periodMs) {
+        this.crusher = crusher;
+        this.selector = crusher.getSelector();
+        this.loops = reactor.getSelectors();
+        this.periodNs = TimeUnit.MILLISECONDS.toNanos(periodMs);
+        this.rebalanceOp = new NioSelectorScheduledOp(this::rebalance);
+        this.lastBusyTimeNs = new long[loops.size()];
+        this.lastPairBytes = Collections.emptyMap();
+        this.utilization = new double[loops.size()];
+    }
+
+    void start() {
+        this.lastTimeNs = System.nanoTime();
+        for (int i = 0; i < loops.size(); i++) {
+            lastBusyTimeNs[i] = loops.get(i).getBusyTimeNs();
+        }
+        this.lastPairBytes = Collections.emptyMap();
+
+        selector.schedule(rebalanceOp, periodNs);
+    }
+
+    void stop() {
+        rebalanceOp.cancel();
+    }
+
+    double[] getUtilization() {
+        return utilization.clone();
+    }
+
+    private void rebalance() {
+        try {
+            doRebalance();
+        } finally {
+            selector.schedule(rebalanceOp, periodNs);
+        }
+    }
+
+    private void doRebalance() {
+        final long nowNs = System.nanoTime();
+        final long elapsedNs = Math.max(1, nowNs - lastTimeNs);
+        lastTimeNs = nowNs;
+
+        final double[] loopUtilization = new double[loops.size()];
+        int busiest = 0;
+        int idlest = 0;
+        for (int i = 0; i < loops.size(); i++) {
+            final long busyTimeNs = loops.get(i).getBusyTimeNs();
+            loopUtilization[i] = Math.min(1.0, (double) (busyTimeNs - lastBusyTimeNs[i]) / elapsedNs);
+            lastBusyTimeNs[i] = busyTimeNs;
+
+            if (loopUtilization[i] > loopUtilization[busiest]) {
+                busiest = i;
+            }
+            if (loopUtilization[i] < loopUtilization[idlest]) {
+                idlest = i;
+            }
+        }
+        this.utilization = loopUtilization;
+
+        final NioSelector source = loops.get(busiest);
+
+        // bytes of the last period for pairs which live in the busiest loop
+        final Map<TcpNioPair, Long> pairBytes = new HashMap<>();
+        final Map<TcpNioPair, Long> candidates = new HashMap<>();
+        long sourceBytes = 0;
+        for (TcpPair pair : crusher.getPairs()) {
+            if (pair instanceof TcpNioPair) {
+                final TcpNioPair nioPair = (TcpNioPair) pair;
+                final long totalBytes = nioPair.getTransferredBytes();
+                pairBytes.put(nioPair, totalBytes);
+
+                if (nioPair.getSelector() == source) {
+                    final long bytes = totalBytes - lastPairBytes.getOrDefault(nioPair, totalBytes);
+                    candidates.put(nioPair, bytes);
+                    sourceBytes += bytes;
+                }
+            }
+        }
+        this.lastPairBytes = pairBytes;
+
+        final double gap = loopUtilization[busiest] - loopUtilization[idlest];
+        if (gap < UTILIZATION_TOLERANCE || candidates.size() < 2 || sourceBytes == 0) {
+            return;
+        }
+
+        // the best pair takes a half of the gap, a pair which takes more would just move the hot spot
+        TcpNioPair best = null;
+        double bestDistance = Double.MAX_VALUE;
+        for (Map.Entry<TcpNioPair, Long> entry : candidates.entrySet()) {
+            final double share = loopUtilization[busiest] * entry.getValue() / sourceBytes;
+            if (share > 0 && share < gap) {
+                final double distance = Math.abs(share - gap / 2);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = entry.getKey();
+                }
+            }
+        }
+
+        if (best != null) {
+            LOGGER.debug("Pair for '{}' is moving from loop #{} ({}) to loop #{} ({})",
+                best.getClientAddress(), busiest, loopUtilization[busiest], idlest, loopUtilization[idlest]);
+
+            crusher.migrateAsync(best, loops.get(idlest));
+        }
+    }
+
+}
@@ -3,6 +3,7 @@ package org.netcrusher.tcp.main;
 import org.netcrusher.NetFreezer;
 import org.netcrusher.core.filter.LoggingFilter;
 import org.netcrusher.core.main.AbstractCrusherMain;
+import org.netcrusher.core.meter.RateMeter;
 import org.netcrusher.core.meter.RateMeters;
 import org.netcrusher.core.reactor.NioReactor;
 import org.netcrusher.core.throttle.rate.ByteRateThrottler;
@@ -69,6 +70,11 @@ public class TcpCrusherMain extends AbstractCrusherMain<TcpCrusher> {
         if (byteMeters != null) {
             LOGGER.info("Client statistics for <{}>", address);
             statusClientMeters(byteMeters);
+
+            RateMeter cpuMeter = crusher.getClientCpuMeter(address);
+            if (cpuMeter != null) {
+                LOGGER.info("\ttotal cpu time (ns): {}", cpuMeter.getTotal());
+            }
         } else {
             LOGGER.warn("Client for <{}> is not found", address);
         }
@@ -0,0 +1,34 @@
+package org.netcrusher.core.meter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class HistogramImplTest {
+
+    @Test
+    void testRecord() {
+        HistogramImpl histogram = new HistogramImpl(1, 10, 100);
+
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(5);
+        histogram.record(100);
+        histogram.record(1000);
+
+        Assertions.assertArrayEquals(new long[] { 1, 10, 100 }, histogram.getBucketBounds());
+        Assertions.assertArrayEquals(new long[] { 2, 1, 1, 1 }, histogram.getBucketCounts());
+        Assertions.assertEquals(5, histogram.getTotalCount());
+        Assertions.assertEquals(1000, histogram.getMax());
+
+        Assertions.assertEquals(3, histogram.getCountAbove(1));
+        Assertions.assertEquals(2, histogram.getCountAbove(10));
+        Assertions.assertEquals(1, histogram.getCountAbove(50));
+        Assertions.assertEquals(0, histogram.getCountAbove(1000));
+    }
+
+    @Test
+    void testBounds() {
+        Assertions.assertThrows(IllegalArgumentException.class, HistogramImpl::new);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new HistogramImpl(10, 10));
+    }
+}
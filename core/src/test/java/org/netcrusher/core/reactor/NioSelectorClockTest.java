@@ -0,0 +1,133 @@
+package org.netcrusher.core.reactor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.core.chronometer.Chronometer;
+import org.netcrusher.core.chronometer.SystemChronometer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+class NioSelectorClockTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NioSelectorClockTest.class);
+
+    private static final long PAUSE_MS = 5;
+
+    private static final int WARMUP_PACKET_COUNT = 1_000_000;
+
+    private static final int PACKET_COUNT = 5_000_000;
+
+    private NioReactor reactor;
+
+    @AfterEach
+    void tearDown() {
+        if (reactor != null) {
+            reactor.close();
+        }
+    }
+
+    @Test
+    void testCached() throws Exception {
+        reactor = new NioReactor();
+
+        NioSelector selector = reactor.getSelector();
+        Chronometer loopChronometer = reactor.getLoopChronometer();
+
+        long[] ticks = selector.execute(() -> {
+            long before = selector.getChronometer().getTickNs();
+            Thread.sleep(PAUSE_MS);
+            return new long[] {
+                before,
+                selector.getChronometer().getTickNs(),
+                loopChronometer.getTickNs(),
+                SystemChronometer.INSTANCE.getTickNs()
+            };
+        });
+
+        // the time doesn't flow inside one callback
+        Assertions.assertEquals(ticks[0], ticks[1]);
+        Assertions.assertEquals(ticks[0], ticks[2]);
+        Assertions.assertTrue(ticks[3] - ticks[0] >= TimeUnit.MILLISECONDS.toNanos(PAUSE_MS));
+
+        // the next iteration sees the fresh time
+        long next = selector.execute(() -> selector.getChronometer().getTickNs());
+        Assertions.assertTrue(next - ticks[0] >= TimeUnit.MILLISECONDS.toNanos(PAUSE_MS));
+
+        // other threads read the clock directly
+        long outside = loopChronometer.getTickNs();
+        Assertions.assertTrue(outside - ticks[0] >= TimeUnit.MILLISECONDS.toNanos(PAUSE_MS));
+    }
+
+    @Test
+    void testScheduled() throws Exception {
+        reactor = new NioReactor();
+
+        NioSelector selector = reactor.getSelector();
+
+        long delayNs = TimeUnit.MILLISECONDS.toNanos(PAUSE_MS);
+
+        long[] ticks = new long[2];
+        selector.execute(() -> {
+            ticks[0] = selector.getChronometer().getTickNs();
+            return selector.schedule(() -> ticks[1] = selector.getChronometer().getTickNs(), delayNs);
+        });
+
+        Thread.sleep(PAUSE_MS * 20);
+
+        // scheduled operations never see the time earlier than their deadlines
+        long fired = selector.execute(() -> ticks[1]);
+        Assertions.assertTrue(fired - ticks[0] >= delayNs);
+    }
+
+    @Test
+    void testDisabled() throws Exception {
+        reactor = NioReactorBuilder.builder()
+            .withClockRefreshPeriod(0)
+            .build();
+
+        NioSelector selector = reactor.getSelector();
+
+        long[] ticks = selector.execute(() -> {
+            long before = selector.getChronometer().getTickNs();
+            Thread.sleep(PAUSE_MS);
+            return new long[] { before, selector.getChronometer().getTickNs() };
+        });
+
+        Assertions.assertTrue(ticks[1] - ticks[0] >= TimeUnit.MILLISECONDS.toNanos(PAUSE_MS));
+    }
+
+    @Test
+    void testThroughput() throws Exception {
+        reactor = new NioReactor();
+
+        NioSelector selector = reactor.getSelector();
+
+        // a packet reads the time when it is scheduled and when it is checked for sending
+        double cachedPps = selector.execute(() -> measure(selector.getChronometer()));
+        double systemPps = selector.execute(() -> measure(SystemChronometer.INSTANCE));
+
+        LOGGER.info("Packet rate with the cached clock: {} pps, with the system clock: {} pps (x{})",
+            String.format("%.0f", cachedPps), String.format("%.0f", systemPps),
+            String.format("%.2f", cachedPps / systemPps));
+    }
+
+    private static double measure(Chronometer chronometer) {
+        long sink = 0;
+        for (int i = 0; i < WARMUP_PACKET_COUNT; i++) {
+            sink += chronometer.getTickNs() - chronometer.getTickNs();
+        }
+
+        final long startNs = System.nanoTime();
+        for (int i = 0; i < PACKET_COUNT; i++) {
+            sink += chronometer.getTickNs() - chronometer.getTickNs();
+        }
+        final long elapsedNs = Math.max(1, System.nanoTime() - startNs);
+
+        Assertions.assertTrue(sink <= 0);
+
+        return PACKET_COUNT * 1e9 / elapsedNs;
+    }
+}
@@ -0,0 +1,246 @@
+package org.netcrusher.core.reactor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+class NioSelectorPostQueueTest {
+
+    private static final int CAPACITY = 16;
+
+    private static final int PRODUCER_COUNT = 4;
+
+    private static final int OPERATION_COUNT = 10_000;
+
+    private NioReactor reactor;
+
+    @AfterEach
+    void tearDown() {
+        if (reactor != null) {
+            reactor.close();
+        }
+    }
+
+    @Test
+    void testQueue() throws Exception {
+        NioSelectorPostQueue queue = new NioSelectorPostQueue(5);
+        Assertions.assertEquals(5, queue.getCapacity());
+
+        List<NioSelectorPostOp<Integer>> operations = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final int value = i;
+            NioSelectorPostOp<Integer> operation = new NioSelectorPostOp<>(() -> value);
+            operations.add(operation);
+            Assertions.assertTrue(queue.offer(operation));
+        }
+
+        // capacity is not rounded up to the number of slots
+        Assertions.assertFalse(queue.offer(new NioSelectorPostOp<>(() -> -1)));
+        Assertions.assertEquals(5, queue.size());
+
+        for (NioSelectorPostOp<Integer> operation : operations) {
+            Assertions.assertSame(operation, queue.poll());
+        }
+
+        Assertions.assertNull(queue.poll());
+        Assertions.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void testSpill() {
+        NioSelectorPostQueue queue = new NioSelectorPostQueue(2);
+
+        NioSelectorPostOp<Integer> first = new NioSelectorPostOp<>(() -> 1);
+        NioSelectorPostOp<Integer> second = new NioSelectorPostOp<>(() -> 2);
+        NioSelectorPostOp<Integer> spilled = new NioSelectorPostOp<>(() -> 3);
+        NioSelectorPostOp<Integer> last = new NioSelectorPostOp<>(() -> 4);
+
+        Assertions.assertTrue(queue.offer(first));
+        Assertions.assertTrue(queue.offer(second));
+        Assertions.assertFalse(queue.offer(spilled));
+        queue.spill(spilled);
+        Assertions.assertEquals(3, queue.size());
+
+        // the spilled operation goes after the ones offered before it but before the later ones
+        Assertions.assertSame(first, queue.poll());
+        Assertions.assertTrue(queue.offer(last));
+        Assertions.assertSame(second, queue.poll());
+        Assertions.assertSame(spilled, queue.poll());
+        Assertions.assertSame(last, queue.poll());
+
+        Assertions.assertNull(queue.poll());
+        Assertions.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void testConcurrentProducers() throws Exception {
+        NioSelectorPostQueue queue = new NioSelectorPostQueue(CAPACITY);
+
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCER_COUNT; p++) {
+            final int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < OPERATION_COUNT; i++) {
+                    final int value = producer * OPERATION_COUNT + i;
+                    NioSelectorPostOp<Integer> operation = new NioSelectorPostOp<>(() -> value);
+                    while (!queue.offer(operation)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            producers.add(thread);
+        }
+
+        // operations of each producer keep their order
+        int[] expected = new int[PRODUCER_COUNT];
+        int polled = 0;
+        while (polled < PRODUCER_COUNT * OPERATION_COUNT) {
+            NioSelectorPostOp<?> operation = queue.poll();
+            if (operation != null) {
+                operation.run();
+                int value = (Integer) operation.getFuture().get();
+                int producer = value / OPERATION_COUNT;
+                Assertions.assertEquals(producer * OPERATION_COUNT + expected[producer], value);
+                expected[producer]++;
+                polled++;
+            } else {
+                Thread.yield();
+            }
+        }
+
+        for (Thread thread : producers) {
+            thread.join();
+        }
+
+        Assertions.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void testFailPolicy() throws Exception {
+        reactor = NioReactorBuilder.builder()
+            .withPostQueue(CAPACITY, NioPostOverflowPolicy.FAIL)
+            .build();
+
+        NioSelector selector = reactor.getSelector();
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> blocker = selector.executeAsync(() -> {
+            blocked.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        });
+        blocked.await();
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < CAPACITY; i++) {
+            final int value = i;
+            futures.add(selector.executeAsync(() -> value));
+        }
+
+        CompletableFuture<Integer> rejected = selector.executeAsync(() -> -1);
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, rejected::get);
+        Assertions.assertTrue(e.getCause() instanceof RejectedExecutionException);
+
+        Assertions.assertThrows(RejectedExecutionException.class, () -> selector.execute(() -> -1));
+
+        Assertions.assertEquals(2, reactor.getRejectedPostCount());
+        Assertions.assertEquals(CAPACITY, reactor.getPostQueueSize());
+
+        release.countDown();
+        Assertions.assertTrue(blocker.get());
+        for (int i = 0; i < CAPACITY; i++) {
+            Assertions.assertEquals(i, futures.get(i).get());
+        }
+
+        Assertions.assertEquals(0, reactor.getPostQueueSize());
+        Assertions.assertTrue(reactor.getPostLatencyHistogram().getTotalCount() >= CAPACITY + 1);
+    }
+
+    @Test
+    void testBlockPolicy() throws Exception {
+        reactor = NioReactorBuilder.builder()
+            .withPostQueue(CAPACITY, NioPostOverflowPolicy.BLOCK)
+            .build();
+
+        NioSelector selector = reactor.getSelector();
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        selector.executeAsync(() -> {
+            blocked.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        });
+        blocked.await();
+
+        for (int i = 0; i < CAPACITY; i++) {
+            selector.executeAsync(() -> true);
+        }
+
+        // the poster waits for a free slot
+        CompletableFuture<CompletableFuture<Integer>> poster =
+            CompletableFuture.supplyAsync(() -> selector.executeAsync(() -> 42));
+
+        Thread.sleep(100);
+        Assertions.assertFalse(poster.isDone());
+
+        release.countDown();
+        Assertions.assertEquals(42, poster.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, reactor.getRejectedPostCount());
+        Assertions.assertTrue(reactor.getPostLatencyHistogram().getMax() >= TimeUnit.MILLISECONDS.toMicros(10));
+    }
+
+    @Test
+    void testCrossLoopPost() throws Exception {
+        reactor = NioReactorBuilder.builder()
+            .withLoopCount(2)
+            .withPostQueue(CAPACITY, NioPostOverflowPolicy.BLOCK)
+            .build();
+
+        NioSelector selectorA = reactor.getSelectors().get(0);
+        NioSelector selectorB = reactor.getSelectors().get(1);
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> blocker = selectorB.executeAsync(() -> {
+            blocked.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        });
+        blocked.await();
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < CAPACITY; i++) {
+            final int value = i;
+            futures.add(selectorB.executeAsync(() -> value));
+        }
+
+        // the loop posts to the full queue of another loop and keeps serving its own operations
+        CompletableFuture<CompletableFuture<Integer>> posted =
+            selectorA.executeAsync(() -> selectorB.executeAsync(() -> CAPACITY));
+        CompletableFuture<CompletableFuture<Integer>> postedNext =
+            selectorA.executeAsync(() -> selectorB.executeAsync(() -> CAPACITY + 1));
+        Assertions.assertTrue(selectorA.executeAsync(() -> true).get(10, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(2, reactor.getSpilledPostCount());
+        Assertions.assertEquals(CAPACITY + 2, selectorB.getPostQueueSize());
+
+        release.countDown();
+        Assertions.assertTrue(blocker.get(10, TimeUnit.SECONDS));
+        for (int i = 0; i < CAPACITY; i++) {
+            Assertions.assertEquals(i, futures.get(i).get(10, TimeUnit.SECONDS));
+        }
+        Assertions.assertEquals(CAPACITY, posted.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(CAPACITY + 1, postedNext.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(0, reactor.getRejectedPostCount());
+        Assertions.assertEquals(0, reactor.getPostQueueSize());
+    }
+}
@@ -0,0 +1,228 @@
+package org.netcrusher.core.reactor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.core.meter.RateMeterImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class NioSelectorTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NioSelectorTest.class);
+
+    private static final int OPERATION_COUNT = 10_000;
+
+    private static final int WARMUP_ITERATION_COUNT = 50_000;
+
+    private static final int ITERATION_COUNT = 10_000;
+
+    private NioReactor reactor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        reactor = new NioReactor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (reactor != null) {
+            reactor.close();
+        }
+    }
+
+    @Test
+    void testPostOperations() {
+        NioSelector selector = reactor.getSelector();
+
+        List<Integer> executed = new ArrayList<>(OPERATION_COUNT);
+        List<CompletableFuture<Integer>> futures = new ArrayList<>(OPERATION_COUNT);
+        for (int i = 0; i < OPERATION_COUNT; i++) {
+            final int value = i;
+            futures.add(selector.executeAsync(() -> {
+                executed.add(value);
+                return value;
+            }));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+        int total = selector.execute(executed::size);
+        Assertions.assertEquals(OPERATION_COUNT, total);
+
+        // posted operations keep their order
+        for (int i = 0; i < OPERATION_COUNT; i++) {
+            Assertions.assertEquals(i, executed.get(i));
+            Assertions.assertEquals(i, futures.get(i).join());
+        }
+
+        long posted = selector.getWakeupCount() + selector.getCoalescedWakeupCount();
+        Assertions.assertEquals(OPERATION_COUNT + 1, posted);
+        Assertions.assertTrue(selector.getWakeupCount() < posted);
+    }
+
+    @Test
+    void testSteadyStateAllocation() throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        NioSelector selector = reactor.getSelector();
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+
+            try (SocketChannel writer = SocketChannel.open(serverChannel.getLocalAddress());
+                 SocketChannel reader = serverChannel.accept())
+            {
+                reader.configureBlocking(false);
+
+                ByteBuffer readBuffer = ByteBuffer.allocateDirect(64);
+                AtomicLong readCount = new AtomicLong();
+                selector.register(reader, SelectionKey.OP_READ, selectionKey -> {
+                    readBuffer.clear();
+                    if (reader.read(readBuffer) > 0) {
+                        readCount.incrementAndGet();
+                    }
+                });
+
+                ByteBuffer writeBuffer = ByteBuffer.allocateDirect(1);
+
+                pingPong(writer, writeBuffer, readCount, WARMUP_ITERATION_COUNT);
+
+                long allocatedBefore = threadMXBean.getThreadAllocatedBytes(selector.getThreadId());
+                pingPong(writer, writeBuffer, readCount, ITERATION_COUNT);
+                long allocatedAfter = threadMXBean.getThreadAllocatedBytes(selector.getThreadId());
+
+                long allocated = allocatedAfter - allocatedBefore;
+                LOGGER.info("Selector thread has allocated {} bytes in {} iterations", allocated, ITERATION_COUNT);
+
+                Assertions.assertEquals(0, allocated);
+            }
+        }
+    }
+
+    @Test
+    void testCpuAccounting() throws Exception {
+        NioSelector selector = reactor.getSelector();
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+
+            try (SocketChannel writer = SocketChannel.open(serverChannel.getLocalAddress());
+                 SocketChannel reader = serverChannel.accept())
+            {
+                reader.configureBlocking(false);
+
+                final long callbackNs = TimeUnit.MICROSECONDS.toNanos(100);
+
+                ByteBuffer readBuffer = ByteBuffer.allocateDirect(64);
+                AtomicLong readCount = new AtomicLong();
+                RateMeterImpl cpuMeter = new RateMeterImpl();
+                RateMeterImpl parentCpuMeter = new RateMeterImpl();
+                selector.register(reader, SelectionKey.OP_READ, selectionKey -> {
+                    final long startNs = System.nanoTime();
+                    while (System.nanoTime() - startNs < callbackNs) {
+                        Thread.onSpinWait();
+                    }
+
+                    readBuffer.clear();
+                    if (reader.read(readBuffer) > 0) {
+                        readCount.incrementAndGet();
+                    }
+                }, cpuMeter, parentCpuMeter);
+
+                pingPong(writer, ByteBuffer.allocateDirect(1), readCount, 1_000);
+
+                // callbacks are sampled so the total is an estimate
+                long totalNs = cpuMeter.getTotalCount();
+                LOGGER.info("Accounted {}us for {} callbacks", totalNs / 1000, readCount.get());
+
+                Assertions.assertTrue(totalNs >= readCount.get() * callbackNs / 2);
+                Assertions.assertEquals(totalNs, parentCpuMeter.getTotalCount());
+            }
+        }
+    }
+
+    @Test
+    void testRebuild() throws Exception {
+        NioSelector selector = reactor.getSelector();
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+
+            try (SocketChannel writer = SocketChannel.open(serverChannel.getLocalAddress());
+                 SocketChannel reader = serverChannel.accept())
+            {
+                reader.configureBlocking(false);
+
+                ByteBuffer readBuffer = ByteBuffer.allocateDirect(64);
+                AtomicLong readCount = new AtomicLong();
+                SelectionKey selectionKey = selector.register(reader, SelectionKey.OP_READ, key -> {
+                    readBuffer.clear();
+                    if (reader.read(readBuffer) > 0) {
+                        readCount.incrementAndGet();
+                    }
+                });
+
+                pingPong(writer, ByteBuffer.allocateDirect(1), readCount, 10);
+
+                selector.execute(() -> {
+                    selector.rebuild();
+                    return null;
+                });
+
+                Assertions.assertEquals(1, selector.getRebuildCount());
+                Assertions.assertEquals(1, reactor.getRebuildCount());
+
+                // the key handed out before the rebuild controls the new registration
+                Assertions.assertTrue(selectionKey.isValid());
+                int interestOps = selector.execute(selectionKey::interestOps);
+                Assertions.assertEquals(SelectionKey.OP_READ, interestOps);
+
+                pingPong(writer, ByteBuffer.allocateDirect(1), readCount, 10);
+
+                selector.execute(() -> selectionKey.interestOps(0));
+                final long readBefore = readCount.get();
+                writer.write(ByteBuffer.allocateDirect(1));
+                Thread.sleep(100);
+                Assertions.assertEquals(readBefore, readCount.get());
+
+                selector.execute(() -> {
+                    selectionKey.cancel();
+                    return null;
+                });
+            }
+        }
+    }
+
+    private static void pingPong(SocketChannel writer, ByteBuffer writeBuffer, AtomicLong readCount, int count)
+        throws Exception
+    {
+        for (int i = 0; i < count; i++) {
+            final long expected = readCount.get() + 1;
+
+            writeBuffer.clear();
+            writer.write(writeBuffer);
+
+            while (readCount.get() < expected) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
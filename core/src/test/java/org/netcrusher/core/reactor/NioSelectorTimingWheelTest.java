@@ -0,0 +1,194 @@
+package org.netcrusher.core.reactor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+class NioSelectorTimingWheelTest {
+
+    private static final long ORIGIN_NS = 1_000_000_000L;
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void testExpire() {
+        NioSelectorTimingWheel wheel = new NioSelectorTimingWheel(ORIGIN_NS, MS);
+
+        List<String> fired = new ArrayList<>();
+        wheel.add(new NioSelectorScheduledOp(() -> fired.add("a")), ORIGIN_NS + 5 * MS);
+        wheel.add(new NioSelectorScheduledOp(() -> fired.add("b")), ORIGIN_NS + 5 * MS + MS / 2);
+        wheel.add(new NioSelectorScheduledOp(() -> fired.add("c")), ORIGIN_NS + 20 * MS);
+        Assertions.assertEquals(3, wheel.size());
+
+        wheel.expire(ORIGIN_NS + 4 * MS);
+        Assertions.assertTrue(fired.isEmpty());
+
+        wheel.expire(ORIGIN_NS + 5 * MS);
+        Assertions.assertEquals(List.of("a"), fired);
+
+        wheel.expire(ORIGIN_NS + 6 * MS);
+        Assertions.assertEquals(List.of("a", "b"), fired);
+
+        wheel.expire(ORIGIN_NS + 100 * MS);
+        Assertions.assertEquals(List.of("a", "b", "c"), fired);
+        Assertions.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testFarDeadline() {
+        NioSelectorTimingWheel wheel = new NioSelectorTimingWheel(ORIGIN_NS, MS);
+
+        List<String> fired = new ArrayList<>();
+        wheel.add(new NioSelectorScheduledOp(() -> fired.add("far")), ORIGIN_NS + 2000 * MS);
+
+        // the wheel makes several full rotations before the deadline
+        for (long ms = 0; ms < 2000; ms += 7) {
+            wheel.expire(ORIGIN_NS + ms * MS);
+            Assertions.assertTrue(fired.isEmpty());
+        }
+
+        wheel.expire(ORIGIN_NS + 2000 * MS);
+        Assertions.assertEquals(List.of("far"), fired);
+    }
+
+    @Test
+    void testCancelAndReschedule() {
+        NioSelectorTimingWheel wheel = new NioSelectorTimingWheel(ORIGIN_NS, MS);
+
+        List<String> fired = new ArrayList<>();
+        NioSelectorScheduledOp op = new NioSelectorScheduledOp(() -> fired.add("op"));
+
+        wheel.add(op, ORIGIN_NS + 10 * MS);
+        Assertions.assertTrue(op.isScheduled());
+        Assertions.assertTrue(op.cancel());
+        Assertions.assertFalse(op.isScheduled());
+        Assertions.assertFalse(op.cancel());
+        Assertions.assertEquals(0, wheel.size());
+
+        wheel.add(op, ORIGIN_NS + 10 * MS);
+        wheel.add(op, ORIGIN_NS + 30 * MS);
+        Assertions.assertEquals(1, wheel.size());
+
+        wheel.expire(ORIGIN_NS + 20 * MS);
+        Assertions.assertTrue(fired.isEmpty());
+
+        wheel.expire(ORIGIN_NS + 30 * MS);
+        Assertions.assertEquals(List.of("op"), fired);
+        Assertions.assertFalse(op.isScheduled());
+    }
+
+    @Test
+    void testCancelFromOperation() {
+        NioSelectorTimingWheel wheel = new NioSelectorTimingWheel(ORIGIN_NS, MS);
+
+        List<String> fired = new ArrayList<>();
+        NioSelectorScheduledOp second = new NioSelectorScheduledOp(() -> fired.add("second"));
+        NioSelectorScheduledOp third = new NioSelectorScheduledOp(() -> fired.add("third"));
+        NioSelectorScheduledOp first = new NioSelectorScheduledOp(() -> {
+            fired.add("first");
+            second.cancel();
+        });
+
+        wheel.add(first, ORIGIN_NS + MS);
+        wheel.add(second, ORIGIN_NS + MS);
+        wheel.add(third, ORIGIN_NS + MS);
+
+        wheel.expire(ORIGIN_NS + 2 * MS);
+        Assertions.assertEquals(List.of("first", "third"), fired);
+        Assertions.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testRescheduleFromOperation() {
+        NioSelectorTimingWheel wheel = new NioSelectorTimingWheel(ORIGIN_NS, MS);
+
+        int[] counter = new int[1];
+        NioSelectorScheduledOp[] holder = new NioSelectorScheduledOp[1];
+        holder[0] = new NioSelectorScheduledOp(() -> {
+            counter[0]++;
+            wheel.add(holder[0], ORIGIN_NS);
+        });
+
+        wheel.add(holder[0], ORIGIN_NS);
+
+        // the operation re-armed in the past should not loop forever in a single pass
+        wheel.expire(ORIGIN_NS + MS);
+        int expired = counter[0];
+        Assertions.assertTrue(expired > 0);
+        Assertions.assertTrue(holder[0].isScheduled());
+
+        wheel.expire(ORIGIN_NS + MS);
+        Assertions.assertTrue(counter[0] > expired);
+    }
+
+    @Test
+    void testNextDeadline() {
+        NioSelectorTimingWheel wheel = new NioSelectorTimingWheel(ORIGIN_NS, MS);
+        Assertions.assertEquals(NioSelectorTimingWheel.NO_DEADLINE, wheel.nextDeadlineNs());
+
+        NioSelectorScheduledOp far = new NioSelectorScheduledOp(() -> { });
+        wheel.add(far, ORIGIN_NS + 3000 * MS);
+        Assertions.assertEquals(ORIGIN_NS + 3000 * MS, wheel.nextDeadlineNs());
+
+        NioSelectorScheduledOp near = new NioSelectorScheduledOp(() -> { });
+        wheel.add(near, ORIGIN_NS + 200 * MS + 300);
+        Assertions.assertEquals(ORIGIN_NS + 200 * MS + 300, wheel.nextDeadlineNs());
+
+        NioSelectorScheduledOp nearest = new NioSelectorScheduledOp(() -> { });
+        wheel.add(nearest, ORIGIN_NS + 200 * MS + 100);
+        Assertions.assertEquals(ORIGIN_NS + 200 * MS + 100, wheel.nextDeadlineNs());
+
+        nearest.cancel();
+        Assertions.assertEquals(ORIGIN_NS + 200 * MS + 300, wheel.nextDeadlineNs());
+
+        wheel.expire(ORIGIN_NS + 201 * MS);
+        Assertions.assertEquals(ORIGIN_NS + 3000 * MS, wheel.nextDeadlineNs());
+
+        far.cancel();
+        Assertions.assertEquals(NioSelectorTimingWheel.NO_DEADLINE, wheel.nextDeadlineNs());
+    }
+
+    @Test
+    void testSlotMinDeadline() {
+        NioSelectorTimingWheel wheel = new NioSelectorTimingWheel(ORIGIN_NS, MS);
+
+        // all operations share one slot: this rotation, one and two rotations later
+        final long[] deadlines = {
+            ORIGIN_NS + 1034 * MS + 10,
+            ORIGIN_NS + 10 * MS + 500,
+            ORIGIN_NS + 512 * MS + 10,
+            ORIGIN_NS + 10 * MS + 200,
+            ORIGIN_NS + 10 * MS + 700,
+        };
+        final NioSelectorScheduledOp[] ops = new NioSelectorScheduledOp[deadlines.length];
+        for (int i = 0; i < deadlines.length; i++) {
+            ops[i] = new NioSelectorScheduledOp(() -> { });
+            wheel.add(ops[i], deadlines[i]);
+        }
+        Assertions.assertEquals(ORIGIN_NS + 10 * MS + 200, wheel.nextDeadlineNs());
+
+        // removing an operation which is not the earliest keeps the slot minimum
+        ops[4].cancel();
+        Assertions.assertEquals(ORIGIN_NS + 10 * MS + 200, wheel.nextDeadlineNs());
+
+        // removing the earliest one makes the slot find the next earliest
+        ops[3].cancel();
+        Assertions.assertEquals(ORIGIN_NS + 10 * MS + 500, wheel.nextDeadlineNs());
+
+        // a new earlier operation becomes the minimum right away
+        wheel.add(ops[3], ORIGIN_NS + 10 * MS + 100);
+        Assertions.assertEquals(ORIGIN_NS + 10 * MS + 100, wheel.nextDeadlineNs());
+
+        wheel.expire(ORIGIN_NS + 11 * MS);
+        Assertions.assertEquals(ORIGIN_NS + 512 * MS + 10, wheel.nextDeadlineNs());
+
+        wheel.expire(ORIGIN_NS + 513 * MS);
+        Assertions.assertEquals(ORIGIN_NS + 1034 * MS + 10, wheel.nextDeadlineNs());
+
+        ops[0].cancel();
+        Assertions.assertEquals(NioSelectorTimingWheel.NO_DEADLINE, wheel.nextDeadlineNs());
+    }
+}
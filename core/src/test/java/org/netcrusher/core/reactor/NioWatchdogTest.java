@@ -0,0 +1,60 @@
+package org.netcrusher.core.reactor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.core.meter.Histogram;
+
+class NioWatchdogTest {
+
+    private static final long SAMPLE_PERIOD_MS = 5;
+
+    private static final long STALL_THRESHOLD_MS = 50;
+
+    private NioReactor reactor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        reactor = NioReactorBuilder.builder()
+            .withLoopCount(2)
+            .withWatchdog(SAMPLE_PERIOD_MS, STALL_THRESHOLD_MS)
+            .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (reactor != null) {
+            reactor.close();
+        }
+    }
+
+    @Test
+    void testStall() throws Exception {
+        Thread.sleep(STALL_THRESHOLD_MS);
+        Assertions.assertEquals(0, reactor.getStallCount());
+
+        // the operation blocks the second loop as a slow filter would
+        reactor.getSelectors().get(1).execute(() -> {
+            Thread.sleep(4 * STALL_THRESHOLD_MS);
+            return true;
+        });
+
+        Thread.sleep(SAMPLE_PERIOD_MS * 4);
+
+        Assertions.assertEquals(1, reactor.getStallCount());
+
+        Histogram histogram = reactor.getLoopLagHistogram();
+        Assertions.assertTrue(histogram.getTotalCount() > 0);
+        Assertions.assertTrue(histogram.getCountAbove(STALL_THRESHOLD_MS) > 0);
+        Assertions.assertTrue(histogram.getMax() >= STALL_THRESHOLD_MS);
+    }
+
+    @Test
+    void testDisabled() throws Exception {
+        try (NioReactor plain = new NioReactor()) {
+            Assertions.assertNull(plain.getLoopLagHistogram());
+            Assertions.assertEquals(0, plain.getStallCount());
+        }
+    }
+}
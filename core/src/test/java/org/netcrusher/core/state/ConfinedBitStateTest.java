@@ -0,0 +1,32 @@
+package org.netcrusher.core.state;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ConfinedBitStateTest {
+
+    private static final int OPEN = 1;
+
+    private static final int FROZEN = 1 << 1;
+
+    private static final int CLOSED = 1 << 2;
+
+    @Test
+    void testTransitions() {
+        ConfinedBitState state = new ConfinedBitState(FROZEN);
+
+        Assertions.assertEquals(FROZEN, state.get());
+        Assertions.assertTrue(state.is(FROZEN));
+        Assertions.assertTrue(state.not(OPEN));
+        Assertions.assertTrue(state.isAnyOf(OPEN | FROZEN));
+        Assertions.assertTrue(state.isNotOf(OPEN | CLOSED));
+
+        state.set(OPEN);
+
+        Assertions.assertEquals(OPEN, state.get());
+        Assertions.assertTrue(state.is(OPEN));
+        Assertions.assertFalse(state.isAnyOf(FROZEN | CLOSED));
+        Assertions.assertEquals("state=" + OPEN, state.toString());
+    }
+
+}
@@ -0,0 +1,175 @@
+package org.netcrusher.tcp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.tcp.bulk.TcpTestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class AdaptiveBufferTcpTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveBufferTcpTest.class);
+
+    private static final int PORT_FIXED_CRUSHER = 10077;
+
+    private static final int PORT_ADAPTIVE_CRUSHER = 10078;
+
+    private static final String HOSTNAME = "127.0.0.1";
+
+    private static final int MIN_SIZE = 512;
+
+    private static final int MAX_SIZE = 256 * 1024;
+
+    private static final long BULK_BYTES = 1024L * 1024 * 1024;
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    private static final int MESSAGE_SIZE = 100;
+
+    private static final int ROUND_TRIPS = 5_000;
+
+    private static final long WAIT_MS = 60_000;
+
+    private NioReactor reactor;
+
+    private TcpCrusher fixedCrusher;
+
+    private TcpCrusher adaptiveCrusher;
+
+    private ServerSocketChannel server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(HOSTNAME, 0));
+
+        reactor = new NioReactor();
+
+        fixedCrusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_FIXED_CRUSHER)
+            .withConnectAddress((InetSocketAddress) server.getLocalAddress())
+            .buildAndOpen();
+
+        adaptiveCrusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_ADAPTIVE_CRUSHER)
+            .withConnectAddress((InetSocketAddress) server.getLocalAddress())
+            .withAdaptiveBufferSize(MIN_SIZE, MAX_SIZE)
+            .buildAndOpen();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (fixedCrusher != null) {
+            fixedCrusher.close();
+        }
+
+        if (adaptiveCrusher != null) {
+            adaptiveCrusher.close();
+        }
+
+        if (reactor != null) {
+            reactor.close();
+        }
+
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void testBulk() throws Exception {
+        final double fixedGbps = measureBulk(PORT_FIXED_CRUSHER);
+        final double adaptiveGbps = measureBulk(PORT_ADAPTIVE_CRUSHER);
+
+        LOGGER.info("Bulk transfer: fixed buffers {} Gbit/s, adaptive buffers {} Gbit/s",
+            String.format("%.2f", fixedGbps), String.format("%.2f", adaptiveGbps));
+    }
+
+    @Test
+    void testChatty() throws Exception {
+        final long fixedUs = measureRoundTrips(PORT_FIXED_CRUSHER);
+        final long adaptiveUs = measureRoundTrips(PORT_ADAPTIVE_CRUSHER);
+
+        LOGGER.info("Short messages: fixed buffers {}us per round trip, adaptive buffers {}us per round trip",
+            fixedUs, adaptiveUs);
+    }
+
+    private double measureBulk(int port) throws Exception {
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress(HOSTNAME, port));
+             SocketChannel peer = server.accept())
+        {
+            CompletableFuture<Long> consumer =
+                CompletableFuture.supplyAsync(() -> TcpTestUtils.consume(peer, BULK_BYTES, CHUNK_SIZE));
+
+            final long startNs = System.nanoTime();
+
+            ByteBuffer bb = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            long sent = 0;
+            while (sent < BULK_BYTES) {
+                bb.clear();
+                while (bb.hasRemaining()) {
+                    sent += client.write(bb);
+                }
+            }
+
+            Assertions.assertEquals(BULK_BYTES, consumer.get(WAIT_MS, TimeUnit.MILLISECONDS));
+
+            return 8.0 * BULK_BYTES / (System.nanoTime() - startNs);
+        }
+    }
+
+    private long measureRoundTrips(int port) throws Exception {
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress(HOSTNAME, port));
+             SocketChannel peer = server.accept())
+        {
+            client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            peer.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            ByteBuffer request = ByteBuffer.allocate(MESSAGE_SIZE);
+            ByteBuffer response = ByteBuffer.allocate(MESSAGE_SIZE);
+
+            final long startNs = System.nanoTime();
+
+            for (int i = 0; i < ROUND_TRIPS; i++) {
+                request.clear();
+                request.put(0, (byte) i);
+                transfer(client, peer, request);
+
+                response.clear();
+                response.put(0, (byte) -i);
+                transfer(peer, client, response);
+            }
+
+            return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNs) / ROUND_TRIPS;
+        }
+    }
+
+    private static void transfer(SocketChannel from, SocketChannel to, ByteBuffer message) throws IOException {
+        final byte first = message.get(0);
+
+        while (message.hasRemaining()) {
+            from.write(message);
+        }
+
+        message.clear();
+        while (message.hasRemaining()) {
+            Assertions.assertTrue(to.read(message) >= 0);
+        }
+
+        Assertions.assertEquals(first, message.get(0));
+    }
+}
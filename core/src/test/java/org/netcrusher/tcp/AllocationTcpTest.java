@@ -0,0 +1,137 @@
+package org.netcrusher.tcp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.core.buffer.BufferPool;
+import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.core.reactor.NioReactorOptions;
+import org.netcrusher.tcp.bulk.TcpTestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class AllocationTcpTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AllocationTcpTest.class);
+
+    private static final int PORT_CRUSHER = 10093;
+
+    private static final String HOSTNAME = "127.0.0.1";
+
+    private static final long WARMUP_BYTES = 256L * 1024 * 1024;
+
+    private static final long TRANSFER_BYTES = 10L * 1024 * 1024 * 1024;
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    private static final long WAIT_MS = 60_000;
+
+    private NioReactor reactor;
+
+    private TcpCrusher crusher;
+
+    private ServerSocketChannel server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(HOSTNAME, 0));
+
+        reactor = new NioReactor();
+
+        crusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_CRUSHER)
+            .withConnectAddress((InetSocketAddress) server.getLocalAddress())
+            .buildAndOpen();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (crusher != null) {
+            crusher.close();
+        }
+
+        if (reactor != null) {
+            reactor.close();
+        }
+
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void test() throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        final long loopThreadId = reactor.getSelector().execute(() -> Thread.currentThread().getId());
+
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress(HOSTNAME, PORT_CRUSHER));
+             SocketChannel peer = server.accept())
+        {
+            CompletableFuture<Long> consumer =
+                CompletableFuture.supplyAsync(() ->
+                    TcpTestUtils.consume(peer, WARMUP_BYTES + TRANSFER_BYTES, CHUNK_SIZE));
+
+            send(client, WARMUP_BYTES);
+
+            final long allocatedBefore = threadMXBean.getThreadAllocatedBytes(loopThreadId);
+            final long startNs = System.nanoTime();
+
+            send(client, TRANSFER_BYTES);
+
+            Assertions.assertEquals(WARMUP_BYTES + TRANSFER_BYTES, consumer.get(WAIT_MS, TimeUnit.MILLISECONDS));
+
+            final long elapsedNs = System.nanoTime() - startNs;
+            final long allocated = threadMXBean.getThreadAllocatedBytes(loopThreadId) - allocatedBefore;
+
+            LOGGER.info("Loop has passed {} bytes at {} MB/s and allocated {} bytes", TRANSFER_BYTES,
+                String.format("%.0f", 1e3 * TRANSFER_BYTES / elapsedNs), allocated);
+
+            // requests to the queue don't allocate so the data path costs nothing to the heap,
+            // what's left is a few objects of the JIT
+            Assertions.assertEquals(0, allocated / (TRANSFER_BYTES / CHUNK_SIZE));
+        }
+
+        BufferPool pool = reactor.getBufferPool();
+        LOGGER.info("Buffer pool: {} hits, {} misses, high-water mark is {} buffers",
+            pool.getHitMeter().getTotalCount(), pool.getMissMeter().getTotalCount(), pool.getHighWaterCount());
+
+        // a closed pair gives all its buffers back
+        crusher.close();
+        Assertions.assertEquals(0, pool.getBorrowedCount());
+        Assertions.assertTrue(pool.getHighWaterCount() > 0);
+
+        // the default pool keeps only a few idle buffers
+        Assertions.assertEquals(NioReactorOptions.DEFAULT_BUFFER_POOL_IDLE_COUNT, pool.getMaxIdleCount());
+        Assertions.assertTrue(pool.getIdleCount() <= NioReactorOptions.DEFAULT_BUFFER_POOL_IDLE_COUNT);
+    }
+
+    private static void send(SocketChannel channel, long bytes) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocateDirect(CHUNK_SIZE);
+
+        long sent = 0;
+        while (sent < bytes) {
+            bb.clear();
+            bb.limit((int) Math.min(CHUNK_SIZE, bytes - sent));
+            while (bb.hasRemaining()) {
+                sent += channel.write(bb);
+            }
+        }
+    }
+}
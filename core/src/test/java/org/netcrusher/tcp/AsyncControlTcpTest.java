@@ -0,0 +1,212 @@
+package org.netcrusher.tcp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.NetFreezer;
+import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.core.reactor.NioReactorBuilder;
+import org.netcrusher.tcp.bulk.TcpBulkServer;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+class AsyncControlTcpTest {
+
+    private static final int PORT_CRUSHER = 10094;
+
+    private static final int PORT_SERVER = 10095;
+
+    private static final String HOSTNAME = "127.0.0.1";
+
+    private static final int LOOP_COUNT = 4;
+
+    private static final int CLIENT_COUNT = 32;
+
+    private static final long COUNT = 1024;
+
+    private static final long CONNECT_WAIT_MS = 10_000;
+
+    private NioReactor reactor;
+
+    private TcpCrusher crusher;
+
+    private TcpBulkServer server;
+
+    private List<SocketChannel> channels;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TcpBulkServer(new InetSocketAddress(HOSTNAME, PORT_SERVER), COUNT);
+        server.open();
+
+        reactor = NioReactorBuilder.builder()
+            .withLoopCount(LOOP_COUNT)
+            .build();
+
+        crusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_CRUSHER)
+            .withConnectAddress(HOSTNAME, PORT_SERVER)
+            .buildAndOpen();
+
+        channels = new ArrayList<>(CLIENT_COUNT);
+        for (int i = 0; i < CLIENT_COUNT; i++) {
+            channels.add(SocketChannel.open(new InetSocketAddress(HOSTNAME, PORT_CRUSHER)));
+        }
+
+        final long deadlineMs = System.currentTimeMillis() + CONNECT_WAIT_MS;
+        while (crusher.getClientAddresses().size() < CLIENT_COUNT && System.currentTimeMillis() < deadlineMs) {
+            Thread.sleep(10);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+
+        if (crusher != null) {
+            crusher.close();
+        }
+
+        if (reactor != null) {
+            reactor.close();
+        }
+
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void testClientFreeze() {
+        List<NetFreezer> freezers = new ArrayList<>(CLIENT_COUNT);
+        for (InetSocketAddress clientAddress : crusher.getClientAddresses()) {
+            freezers.add(crusher.getClientFreezer(clientAddress));
+        }
+        Assertions.assertEquals(CLIENT_COUNT, freezers.size());
+
+        CompletableFuture.allOf(freezers.stream()
+            .map(NetFreezer::freezeAsync)
+            .toArray(CompletableFuture<?>[]::new)).join();
+
+        for (NetFreezer freezer : freezers) {
+            Assertions.assertTrue(freezer.isFrozen());
+        }
+
+        CompletableFuture.allOf(freezers.stream()
+            .map(NetFreezer::unfreezeAsync)
+            .toArray(CompletableFuture<?>[]::new)).join();
+
+        for (NetFreezer freezer : freezers) {
+            Assertions.assertFalse(freezer.isFrozen());
+        }
+    }
+
+    @Test
+    void testClientClose() {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(CLIENT_COUNT);
+        for (InetSocketAddress clientAddress : crusher.getClientAddresses()) {
+            futures.add(crusher.closeClientAsync(clientAddress));
+        }
+        Assertions.assertEquals(CLIENT_COUNT, futures.size());
+
+        for (CompletableFuture<Boolean> future : futures) {
+            Assertions.assertTrue(future.join());
+        }
+
+        Assertions.assertTrue(crusher.getClientAddresses().isEmpty());
+        Assertions.assertFalse(crusher.closeClientAsync(new InetSocketAddress(HOSTNAME, 1)).join());
+    }
+
+    @Test
+    void testCrusher() {
+        crusher.freezeAsync().join();
+        Assertions.assertTrue(crusher.isFrozen());
+
+        CompletionException e = Assertions.assertThrows(CompletionException.class,
+            () -> crusher.freezeAsync().join());
+        Assertions.assertInstanceOf(IllegalStateException.class, e.getCause());
+
+        crusher.unfreezeAsync().join();
+        Assertions.assertFalse(crusher.isFrozen());
+
+        crusher.closeAsync().join();
+        Assertions.assertFalse(crusher.isOpen());
+        Assertions.assertTrue(crusher.getClientAddresses().isEmpty());
+    }
+
+    @Test
+    void testSelectorThread() throws Exception {
+        // the loop of the crusher can't wait for pairs in other loops so blocking calls fail instead of lying
+        List<Object> results = crusher.getSelector().executeAsync(() -> {
+            List<Object> outcomes = new ArrayList<>(CLIENT_COUNT + 1);
+            for (InetSocketAddress clientAddress : crusher.getClientAddresses()) {
+                try {
+                    outcomes.add(crusher.closeClient(clientAddress));
+                } catch (IllegalStateException e) {
+                    outcomes.add(e);
+                }
+            }
+            outcomes.add(crusher.closeClient(new InetSocketAddress(HOSTNAME, 1)));
+            return outcomes;
+        }).get(CONNECT_WAIT_MS, TimeUnit.MILLISECONDS);
+
+        Assertions.assertEquals(CLIENT_COUNT + 1, results.size());
+        Assertions.assertTrue(results.stream().anyMatch(IllegalStateException.class::isInstance));
+        Assertions.assertTrue(results.subList(0, CLIENT_COUNT).stream()
+            .allMatch(r -> Boolean.TRUE.equals(r) || r instanceof IllegalStateException));
+        Assertions.assertEquals(Boolean.FALSE, results.get(CLIENT_COUNT));
+
+        // the rejected calls are still completed in the background
+        final long deadlineMs = System.currentTimeMillis() + CONNECT_WAIT_MS;
+        while (!crusher.getClientAddresses().isEmpty() && System.currentTimeMillis() < deadlineMs) {
+            Thread.sleep(10);
+        }
+        Assertions.assertTrue(crusher.getClientAddresses().isEmpty());
+    }
+
+    @Test
+    void testDefaultMethods() {
+        // a freezer which only implements the blocking methods
+        NetFreezer freezer = new NetFreezer() {
+            private boolean frozen;
+
+            @Override
+            public void freeze() {
+                if (frozen) {
+                    throw new IllegalStateException("Already frozen");
+                }
+                frozen = true;
+            }
+
+            @Override
+            public void unfreeze() {
+                frozen = false;
+            }
+
+            @Override
+            public boolean isFrozen() {
+                return frozen;
+            }
+        };
+
+        freezer.freezeAsync().join();
+        Assertions.assertTrue(freezer.isFrozen());
+
+        CompletionException e = Assertions.assertThrows(CompletionException.class,
+            () -> freezer.freezeAsync().join());
+        Assertions.assertInstanceOf(IllegalStateException.class, e.getCause());
+
+        freezer.unfreezeAsync().join();
+        Assertions.assertFalse(freezer.isFrozen());
+    }
+}
@@ -0,0 +1,384 @@
+package org.netcrusher.tcp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.NetFreezer;
+import org.netcrusher.core.meter.RateMeter;
+import org.netcrusher.core.meter.RateMeters;
+import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.core.throttle.DelayThrottler;
+import org.netcrusher.tcp.bulk.TcpBulkClient;
+import org.netcrusher.tcp.bulk.TcpBulkServer;
+import org.netcrusher.tcp.bulk.TcpTestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class BlockingEngineTcpTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlockingEngineTcpTest.class);
+
+    private static final int PORT_CRUSHER = 10088;
+
+    private static final int PORT_SERVER = 10089;
+
+    private static final String HOSTNAME = "127.0.0.1";
+
+    private static final long COUNT = 64 * 1024 * 1024;
+
+    private static final long SEND_WAIT_MS = 60_000;
+
+    private static final long READ_WAIT_MS = 30_000;
+
+    private static final int CONNECTION_COUNT = Integer.getInteger("netcrusher.benchmark.connections", 500);
+
+    private static final int MESSAGE_SIZE = 16;
+
+    private static final long DELAY_MS = 100;
+
+    private static final long FROZEN_DELAY_MS = 300;
+
+    private static final long FREEZE_PAUSE_MS = 50;
+
+    private static final long DELAYED_COUNT = 4 * 1024 * 1024;
+
+    private static final int DELAYED_CHUNK_SIZE = 8 * 1024;
+
+    // keeps direct memory of NIO pairs small as each pair holds two queues of buffers
+    private static final int SOCKET_BUFFER_SIZE = 8 * 1024;
+
+    private NioReactor reactor;
+
+    private ServerSocketChannel echoServer;
+
+    private Thread echoThread;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        reactor = new NioReactor();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (reactor != null) {
+            reactor.close();
+        }
+
+        if (echoServer != null) {
+            echoServer.close();
+            echoThread.join(5_000);
+        }
+    }
+
+    @Test
+    void testBulk() throws Exception {
+        try (TcpBulkServer server = new TcpBulkServer(new InetSocketAddress(HOSTNAME, PORT_SERVER), COUNT)) {
+            server.open();
+
+            TcpCrusher crusher = TcpCrusherBuilder.builder()
+                .withReactor(reactor)
+                .withBindAddress(HOSTNAME, PORT_CRUSHER)
+                .withConnectAddress(HOSTNAME, PORT_SERVER)
+                .withBlockingEngine(true)
+                .buildAndOpen();
+
+            try (TcpBulkClient client1 = TcpBulkClient.forAddress("EXT",
+                new InetSocketAddress(HOSTNAME, PORT_CRUSHER), COUNT))
+            {
+                final byte[] producer1Digest = client1.awaitProducerResult(SEND_WAIT_MS).getDigest();
+
+                Assertions.assertEquals(1, server.getClients().size());
+                try (TcpBulkClient client2 = server.getClients().iterator().next()) {
+                    final byte[] producer2Digest = client2.awaitProducerResult(SEND_WAIT_MS).getDigest();
+
+                    final byte[] consumer1Digest = client1.awaitConsumerResult(READ_WAIT_MS).getDigest();
+                    final byte[] consumer2Digest = client2.awaitConsumerResult(READ_WAIT_MS).getDigest();
+
+                    InetSocketAddress clientAddress = crusher.getClientAddresses().iterator().next();
+                    RateMeters clientMeters = crusher.getClientByteMeters(clientAddress);
+                    Assertions.assertEquals(COUNT, awaitTotalCount(clientMeters.getReadMeter(), COUNT));
+                    Assertions.assertEquals(COUNT, awaitTotalCount(clientMeters.getSentMeter(), COUNT));
+
+                    Assertions.assertArrayEquals(producer1Digest, consumer2Digest);
+                    Assertions.assertArrayEquals(producer2Digest, consumer1Digest);
+                }
+            } finally {
+                crusher.close();
+            }
+        }
+    }
+
+    @Test
+    void testFreeze() throws Exception {
+        openEchoServer();
+
+        TcpCrusher crusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_CRUSHER)
+            .withConnectAddress((InetSocketAddress) echoServer.getLocalAddress())
+            .withBlockingEngine(true)
+            .buildAndOpen();
+
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(HOSTNAME, PORT_CRUSHER))) {
+            channel.socket().setSoTimeout(500);
+            ByteBuffer buffer = ByteBuffer.allocate(MESSAGE_SIZE);
+
+            TcpTestUtils.roundTrip(channel, buffer, 0);
+
+            InetSocketAddress clientAddress = crusher.getClientAddresses().iterator().next();
+            NetFreezer freezer = crusher.getClientFreezer(clientAddress);
+
+            freezer.freeze();
+            Assertions.assertTrue(freezer.isFrozen());
+            Assertions.assertThrows(IllegalStateException.class, freezer::freeze);
+
+            buffer.clear();
+            channel.write(buffer);
+            Assertions.assertThrows(SocketTimeoutException.class,
+                () -> channel.socket().getInputStream().read());
+
+            freezer.unfreeze();
+            Assertions.assertFalse(freezer.isFrozen());
+
+            // the message written while frozen comes back after unfreeze
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                Assertions.assertTrue(channel.read(buffer) >= 0);
+            }
+        } finally {
+            crusher.close();
+        }
+
+        Assertions.assertTrue(crusher.getClientAddresses().isEmpty());
+    }
+
+    @Test
+    void testFreezeWhileReading() throws Exception {
+        final AtomicLong filtered = new AtomicLong();
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(HOSTNAME, 0));
+
+            TcpCrusher crusher = TcpCrusherBuilder.builder()
+                .withReactor(reactor)
+                .withBindAddress(HOSTNAME, PORT_CRUSHER)
+                .withConnectAddress((InetSocketAddress) server.getLocalAddress())
+                .withOutgoingTransformFilterFactory(addr -> bb -> filtered.addAndGet(bb.remaining()))
+                .withBlockingEngine(true)
+                .buildAndOpen();
+
+            try (SocketChannel client = SocketChannel.open(new InetSocketAddress(HOSTNAME, PORT_CRUSHER));
+                 SocketChannel peer = server.accept())
+            {
+                NetFreezer freezer = awaitClientFreezer(crusher);
+
+                // the copier is already waiting for data when the pair is frozen
+                Thread.sleep(FREEZE_PAUSE_MS);
+                freezer.freeze();
+
+                ByteBuffer buffer = ByteBuffer.allocate(MESSAGE_SIZE);
+                client.write(buffer);
+
+                // nothing is taken from the socket while the pair is frozen
+                Thread.sleep(FREEZE_PAUSE_MS);
+                Assertions.assertEquals(0, filtered.get());
+
+                freezer.unfreeze();
+                receive(peer, MESSAGE_SIZE);
+                Assertions.assertEquals(MESSAGE_SIZE, filtered.get());
+            } finally {
+                crusher.close();
+            }
+        }
+    }
+
+    @Test
+    void testFreezeWhileDelayed() throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(HOSTNAME, 0));
+
+            TcpCrusher crusher = TcpCrusherBuilder.builder()
+                .withReactor(reactor)
+                .withBindAddress(HOSTNAME, PORT_CRUSHER)
+                .withConnectAddress((InetSocketAddress) server.getLocalAddress())
+                .withOutgoingThrottlerFactory(addr -> new DelayThrottler(FROZEN_DELAY_MS, TimeUnit.MILLISECONDS))
+                .withBlockingEngine(true)
+                .buildAndOpen();
+
+            try (SocketChannel client = SocketChannel.open(new InetSocketAddress(HOSTNAME, PORT_CRUSHER));
+                 SocketChannel peer = server.accept())
+            {
+                NetFreezer freezer = awaitClientFreezer(crusher);
+
+                client.write(ByteBuffer.allocate(MESSAGE_SIZE));
+
+                // the message is read and its delay runs for a while before the pair is frozen
+                Thread.sleep(FREEZE_PAUSE_MS);
+                freezer.freeze();
+                Thread.sleep(FROZEN_DELAY_MS * 2);
+                freezer.unfreeze();
+
+                final long unfrozenNs = System.nanoTime();
+                receive(peer, MESSAGE_SIZE);
+
+                // the rest of the delay passes after unfreeze
+                final long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - unfrozenNs);
+                Assertions.assertTrue(waitedMs >= FROZEN_DELAY_MS / 3,
+                    "Delayed message came in " + waitedMs + "ms after unfreeze");
+            } finally {
+                crusher.close();
+            }
+        }
+    }
+
+    private static long awaitTotalCount(RateMeter meter, long count) throws InterruptedException {
+        // the pair counts the bytes after the write returns so the peer could see them a bit earlier
+        final long deadlineMs = System.currentTimeMillis() + READ_WAIT_MS;
+        while (meter.getTotalCount() < count && System.currentTimeMillis() < deadlineMs) {
+            Thread.sleep(10);
+        }
+
+        return meter.getTotalCount();
+    }
+
+    private static NetFreezer awaitClientFreezer(TcpCrusher crusher) throws InterruptedException {
+        // the blocking engine connects the pair in its own thread
+        final long deadlineMs = System.currentTimeMillis() + READ_WAIT_MS;
+        while (crusher.getClientAddresses().isEmpty() && System.currentTimeMillis() < deadlineMs) {
+            Thread.sleep(10);
+        }
+
+        return crusher.getClientFreezer(crusher.getClientAddresses().iterator().next());
+    }
+
+    private static void receive(SocketChannel channel, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            Assertions.assertTrue(channel.read(buffer) >= 0);
+        }
+    }
+
+    @Test
+    void testDelay() throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(HOSTNAME, 0));
+
+            TcpCrusher crusher = TcpCrusherBuilder.builder()
+                .withReactor(reactor)
+                .withBindAddress(HOSTNAME, PORT_CRUSHER)
+                .withConnectAddress((InetSocketAddress) server.getLocalAddress())
+                .withOutgoingThrottlerFactory(addr -> new DelayThrottler(DELAY_MS, TimeUnit.MILLISECONDS))
+                .withBlockingEngine(true)
+                .buildAndOpen();
+
+            try (SocketChannel client = SocketChannel.open(new InetSocketAddress(HOSTNAME, PORT_CRUSHER));
+                 SocketChannel peer = server.accept())
+            {
+                final long startNs = System.nanoTime();
+
+                // nothing arrives earlier than the delay
+                final long notBeforeNs = startNs + TimeUnit.MILLISECONDS.toNanos(DELAY_MS);
+                CompletableFuture<Long> consumer = CompletableFuture.supplyAsync(() ->
+                    TcpTestUtils.consumeSequence(peer, DELAYED_COUNT, DELAYED_CHUNK_SIZE, notBeforeNs));
+
+                ByteBuffer bb = ByteBuffer.allocate(DELAYED_CHUNK_SIZE);
+                long sent = 0;
+                while (sent < DELAYED_COUNT) {
+                    bb.clear();
+                    for (int i = 0; i < DELAYED_CHUNK_SIZE; i++) {
+                        bb.put(i, (byte) (sent + i));
+                    }
+                    while (bb.hasRemaining()) {
+                        sent += client.write(bb);
+                    }
+                }
+
+                Assertions.assertEquals(DELAYED_COUNT, consumer.get(SEND_WAIT_MS, TimeUnit.MILLISECONDS));
+
+                // hundreds of reads are delayed at once, waiting for each of them would take many seconds
+                final long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+                LOGGER.info("{} bytes with {}ms delay are passed in {}ms", DELAYED_COUNT, DELAY_MS, elapsedMs);
+                Assertions.assertTrue(elapsedMs < DELAY_MS * 20, "Delayed transfer took " + elapsedMs + "ms");
+            } finally {
+                crusher.close();
+            }
+        }
+    }
+
+    @Test
+    void testManyConnections() throws Exception {
+        openEchoServer();
+
+        long nioMs = measureConnections(false);
+        long blockingMs = measureConnections(true);
+
+        LOGGER.info("{} connections with a round trip each: nio={}ms, blocking={}ms",
+            CONNECTION_COUNT, nioMs, blockingMs);
+    }
+
+    private long measureConnections(boolean blockingEngine) throws Exception {
+        TcpCrusher crusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_CRUSHER)
+            .withConnectAddress((InetSocketAddress) echoServer.getLocalAddress())
+            .withBacklog(CONNECTION_COUNT)
+            .withRcvBufferSize(SOCKET_BUFFER_SIZE)
+            .withSndBufferSize(SOCKET_BUFFER_SIZE)
+            .withBufferCount(4)
+            .withBufferSize(SOCKET_BUFFER_SIZE)
+            .withBlockingEngine(blockingEngine)
+            .buildAndOpen();
+
+        List<SocketChannel> channels = new ArrayList<>(CONNECTION_COUNT);
+        try {
+            final long startMs = System.currentTimeMillis();
+
+            ByteBuffer buffer = ByteBuffer.allocate(MESSAGE_SIZE);
+            for (int i = 0; i < CONNECTION_COUNT; i++) {
+                channels.add(SocketChannel.open(new InetSocketAddress(HOSTNAME, PORT_CRUSHER)));
+            }
+
+            for (SocketChannel channel : channels) {
+                TcpTestUtils.roundTrip(channel, buffer, 0);
+            }
+
+            final long elapsedMs = System.currentTimeMillis() - startMs;
+
+            LOGGER.info("Engine blocking={}: {} threads are alive",
+                blockingEngine, ManagementFactory.getThreadMXBean().getThreadCount());
+
+            Assertions.assertEquals(CONNECTION_COUNT, crusher.getClientAddresses().size());
+
+            return elapsedMs;
+        } finally {
+            for (SocketChannel channel : channels) {
+                channel.close();
+            }
+
+            crusher.close();
+        }
+    }
+
+    private void openEchoServer() throws IOException {
+        echoServer = ServerSocketChannel.open();
+        echoServer.bind(new InetSocketAddress(HOSTNAME, 0), CONNECTION_COUNT);
+
+        echoThread = new Thread(() -> TcpTestUtils.echo(echoServer, MESSAGE_SIZE));
+        echoThread.setDaemon(true);
+        echoThread.start();
+    }
+}
@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.netcrusher.core.filter.TransformFilter;
+import org.netcrusher.core.meter.RateMeter;
 import org.netcrusher.core.meter.RateMeters;
 import org.netcrusher.core.reactor.NioReactor;
 import org.netcrusher.core.throttle.Throttler;
@@ -103,6 +104,10 @@ class BulkTcpTest {
                 Assertions.assertEquals(COUNT, clientMeters.getReadMeter().getTotalCount());
                 Assertions.assertEquals(COUNT, clientMeters.getSentMeter().getTotalCount());
 
+                RateMeter clientCpuMeter = crusher.getClientCpuMeter(clientAddress);
+                Assertions.assertTrue(clientCpuMeter.getTotalCount() > 0);
+                Assertions.assertTrue(crusher.getCpuMeter().getTotalCount() >= clientCpuMeter.getTotalCount());
+
                 Assertions.assertArrayEquals(producer1Digest, consumer2Digest);
                 Assertions.assertArrayEquals(producer2Digest, consumer1Digest);
             }
@@ -0,0 +1,120 @@
+package org.netcrusher.tcp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.core.reactor.NioReactorBuilder;
+import org.netcrusher.tcp.bulk.TcpTestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+class BusyPollTcpTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BusyPollTcpTest.class);
+
+    private static final int PORT_CRUSHER = 10097;
+
+    private static final String HOSTNAME = "127.0.0.1";
+
+    private static final int MESSAGE_SIZE = 64;
+
+    private static final int WARMUP_COUNT = 5_000;
+
+    private static final int COUNT = 10_000;
+
+    // loose bound which only catches a loop that stops reacting, the loopback round trip takes microseconds
+    private static final long MAX_P99_NS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private ServerSocketChannel echoServer;
+
+    private Thread echoThread;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        echoServer = ServerSocketChannel.open();
+        echoServer.bind(new InetSocketAddress(HOSTNAME, 0));
+
+        echoThread = new Thread(() -> TcpTestUtils.echo(echoServer, MESSAGE_SIZE));
+        echoThread.setDaemon(true);
+        echoThread.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        echoServer.close();
+        echoThread.join(5_000);
+    }
+
+    @Test
+    void testLatency() throws Exception {
+        long directP99 = measure((InetSocketAddress) echoServer.getLocalAddress());
+
+        NioReactor blockingReactor = NioReactorBuilder.builder().withLoopCount(1).build();
+        Assertions.assertFalse(blockingReactor.getSelector().isBusyPoll());
+        long blockingP99 = measureCrusher(blockingReactor);
+
+        NioReactor busyReactor = NioReactorBuilder.builder().withLoopCount(1).withBusyPoll().build();
+        Assertions.assertTrue(busyReactor.getSelector().isBusyPoll());
+        long busyP99 = measureCrusher(busyReactor);
+
+        Assertions.assertTrue(blockingP99 < MAX_P99_NS, "Blocking p99 is " + blockingP99 + "ns");
+        Assertions.assertTrue(busyP99 < MAX_P99_NS, "Busy-poll p99 is " + busyP99 + "ns");
+
+        LOGGER.info("Loopback round trip p99: direct={}us, blocking={}us (+{}us), busy-poll={}us (+{}us)",
+            directP99 / 1000,
+            blockingP99 / 1000, (blockingP99 - directP99) / 1000,
+            busyP99 / 1000, (busyP99 - directP99) / 1000);
+    }
+
+    private long measureCrusher(NioReactor reactor) throws Exception {
+        try {
+            TcpCrusher crusher = TcpCrusherBuilder.builder()
+                .withReactor(reactor)
+                .withBindAddress(HOSTNAME, PORT_CRUSHER)
+                .withConnectAddress((InetSocketAddress) echoServer.getLocalAddress())
+                .buildAndOpen();
+            try {
+                return measure(new InetSocketAddress(HOSTNAME, PORT_CRUSHER));
+            } finally {
+                crusher.close();
+            }
+        } finally {
+            reactor.close();
+        }
+    }
+
+    private static long measure(InetSocketAddress address) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(MESSAGE_SIZE);
+
+            for (int i = 0; i < WARMUP_COUNT; i++) {
+                TcpTestUtils.roundTrip(channel, buffer, i);
+            }
+
+            long[] elapsed = new long[COUNT];
+            for (int i = 0; i < COUNT; i++) {
+                final long startNs = System.nanoTime();
+                TcpTestUtils.roundTrip(channel, buffer, i);
+                elapsed[i] = System.nanoTime() - startNs;
+            }
+
+            Arrays.sort(elapsed);
+            LOGGER.info("Round trip to {}: p50={}us, p99={}us", address,
+                elapsed[COUNT / 2] / 1000, elapsed[COUNT * 99 / 100] / 1000);
+            return elapsed[COUNT * 99 / 100];
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.netcrusher.tcp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.core.throttle.DelayThrottler;
+import org.netcrusher.tcp.bulk.TcpTestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class DelayLineTcpTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DelayLineTcpTest.class);
+
+    private static final int PORT_RING_CRUSHER = 10075;
+
+    private static final int PORT_LINE_CRUSHER = 10076;
+
+    private static final String HOSTNAME = "127.0.0.1";
+
+    private static final long DELAY_MS = 300;
+
+    private static final int BUFFER_COUNT = 16;
+
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    private static final long LINE_MEMORY_BYTES = 8 * 1024 * 1024;
+
+    private static final long LINE_CAPACITY_BYTES = 64 * 1024 * 1024;
+
+    private static final long RING_BYTES = 2 * 1024 * 1024;
+
+    private static final long LINE_BYTES = 48 * 1024 * 1024;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final long WAIT_MS = 60_000;
+
+    private NioReactor reactor;
+
+    private TcpCrusher ringCrusher;
+
+    private TcpCrusher lineCrusher;
+
+    private ServerSocketChannel server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(HOSTNAME, 0));
+
+        reactor = new NioReactor();
+
+        ringCrusher = createBuilder(PORT_RING_CRUSHER)
+            .buildAndOpen();
+
+        // the line keeps 8MB in memory and spills the rest of the delayed data to a file
+        lineCrusher = createBuilder(PORT_LINE_CRUSHER)
+            .withDelayLine(LINE_MEMORY_BYTES, LINE_CAPACITY_BYTES)
+            .buildAndOpen();
+    }
+
+    private TcpCrusherBuilder createBuilder(int port) throws IOException {
+        return TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, port)
+            .withConnectAddress((InetSocketAddress) server.getLocalAddress())
+            .withBufferCount(BUFFER_COUNT)
+            .withBufferSize(BUFFER_SIZE)
+            .withOutgoingThrottlerFactory(addr -> new DelayThrottler(DELAY_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (ringCrusher != null) {
+            ringCrusher.close();
+        }
+
+        if (lineCrusher != null) {
+            lineCrusher.close();
+        }
+
+        if (reactor != null) {
+            reactor.close();
+        }
+
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void test() throws Exception {
+        final double ringRate = measure(PORT_RING_CRUSHER, RING_BYTES);
+        final double lineRate = measure(PORT_LINE_CRUSHER, LINE_BYTES);
+
+        LOGGER.info("With {}ms delay: ring of {}x{} buffers passes {} MB/s (bound is {} MB/s), delay line {} MB/s",
+            DELAY_MS, BUFFER_COUNT, BUFFER_SIZE, String.format("%.1f", ringRate),
+            String.format("%.1f", 1e3 * BUFFER_COUNT * BUFFER_SIZE / DELAY_MS / 1024 / 1024),
+            String.format("%.1f", lineRate));
+
+        // the ring is capped at count * size / delay which is less than 2MB/s
+        Assertions.assertTrue(lineRate > ringRate * 10);
+    }
+
+    private double measure(int port, long bytes) throws Exception {
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress(HOSTNAME, port));
+             SocketChannel peer = server.accept())
+        {
+            final long startNs = System.nanoTime();
+
+            // nothing arrives earlier than the delay
+            final long notBeforeNs = startNs + TimeUnit.MILLISECONDS.toNanos(DELAY_MS);
+            CompletableFuture<Long> consumer =
+                CompletableFuture.supplyAsync(() -> TcpTestUtils.consumeSequence(peer, bytes, CHUNK_SIZE, notBeforeNs));
+
+            ByteBuffer bb = ByteBuffer.allocate(CHUNK_SIZE);
+            long sent = 0;
+            while (sent < bytes) {
+                bb.clear();
+                for (int i = 0; i < CHUNK_SIZE; i++) {
+                    bb.put(i, (byte) (sent + i));
+                }
+                while (bb.hasRemaining()) {
+                    sent += client.write(bb);
+                }
+            }
+
+            Assertions.assertEquals(bytes, consumer.get(WAIT_MS, TimeUnit.MILLISECONDS));
+
+            return 1e9 * bytes / (System.nanoTime() - startNs) / (1024 * 1024);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.netcrusher.tcp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.core.throttle.DelayThrottler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class GracefulCloseTcpTest {
+
+    private static final int PORT_CRUSHER = 10090;
+
+    private static final String HOSTNAME = "127.0.0.1";
+
+    private static final int BYTES = 1024 * 1024;
+
+    private static final long DELAY_MS = 200;
+
+    private static final long DRAIN_TIMEOUT_MS = 10_000;
+
+    private static final long STUCK_TIMEOUT_MS = 500;
+
+    private NioReactor reactor;
+
+    private TcpCrusher crusher;
+
+    private ServerSocketChannel server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(HOSTNAME, 0));
+
+        reactor = new NioReactor();
+
+        // data is held in the crusher's queue for a while so closing has something to flush
+        crusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_CRUSHER)
+            .withConnectAddress((InetSocketAddress) server.getLocalAddress())
+            .withOutgoingThrottlerFactory(addr -> new DelayThrottler(DELAY_MS, TimeUnit.MILLISECONDS))
+            .buildAndOpen();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (crusher != null && crusher.isOpen()) {
+            crusher.close();
+        }
+
+        if (reactor != null) {
+            reactor.close();
+        }
+
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void testQueuedDataIsFlushed() throws Exception {
+        SocketChannel client = SocketChannel.open(new InetSocketAddress(HOSTNAME, PORT_CRUSHER));
+        SocketChannel peer = server.accept();
+
+        ByteBuffer bb = ByteBuffer.allocate(BYTES);
+        while (bb.hasRemaining()) {
+            client.write(bb);
+        }
+
+        while (crusher.getClientAddresses().isEmpty()) {
+            Thread.sleep(10);
+        }
+
+        // both sides read up to EOF and then close their sockets
+        CompletableFuture<Long> peerRead = CompletableFuture.supplyAsync(() -> readAndClose(peer));
+        CompletableFuture<Long> clientRead = CompletableFuture.supplyAsync(() -> readAndClose(client));
+
+        final long startNs = System.nanoTime();
+        reactor.closeGracefully(DRAIN_TIMEOUT_MS);
+        final long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+
+        Assertions.assertFalse(crusher.isOpen());
+        Assertions.assertFalse(reactor.isOpen());
+        Assertions.assertTrue(elapsedMs < DRAIN_TIMEOUT_MS);
+
+        Assertions.assertEquals(BYTES, peerRead.get(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        Assertions.assertEquals(0, clientRead.get(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private static long readAndClose(SocketChannel channel) {
+        try (SocketChannel closeable = channel) {
+            long read = 0;
+            ByteBuffer bb = ByteBuffer.allocate(64 * 1024);
+            while (true) {
+                bb.clear();
+                int count = closeable.read(bb);
+                if (count < 0) {
+                    return read;
+                }
+                read += count;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    void testDeadline() throws Exception {
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress(HOSTNAME, PORT_CRUSHER));
+             SocketChannel peer = server.accept())
+        {
+            while (crusher.getClientAddresses().isEmpty()) {
+                Thread.sleep(10);
+            }
+
+            // neither the client nor the peer closes its side so the pair can't be drained
+            final long startNs = System.nanoTime();
+            crusher.closeGracefully(STUCK_TIMEOUT_MS);
+            final long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+
+            Assertions.assertFalse(crusher.isOpen());
+            Assertions.assertTrue(elapsedMs >= STUCK_TIMEOUT_MS);
+            Assertions.assertTrue(peer.isOpen());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.netcrusher.tcp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.core.meter.RateMeters;
+import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.tcp.bulk.TcpBulkClient;
+import org.netcrusher.tcp.bulk.TcpBulkServer;
+import org.netcrusher.tcp.bulk.TcpTestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+class IoBudgetTcpTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IoBudgetTcpTest.class);
+
+    private static final int PORT_BULK_CRUSHER = 10098;
+
+    private static final int PORT_BULK_SERVER = 10099;
+
+    private static final int PORT_ECHO_CRUSHER = 10096;
+
+    private static final String HOSTNAME = "127.0.0.1";
+
+    private static final long COUNT = 64 * 1024 * 1024;
+
+    private static final long IO_BUDGET_BYTES = 64 * 1024;
+
+    private static final int MESSAGE_SIZE = 64;
+
+    private static final long SEND_WAIT_MS = 60_000;
+
+    private static final long READ_WAIT_MS = 30_000;
+
+    private static final int ROUND_TRIPS = 1000;
+
+    // a starved pair would wait for the whole bulk transfer, the budget keeps its turn within a few callbacks
+    private static final long MAX_P99_NS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private NioReactor reactor;
+
+    private TcpCrusher bulkCrusher;
+
+    private TcpCrusher echoCrusher;
+
+    private TcpBulkServer bulkServer;
+
+    private ServerSocketChannel echoServer;
+
+    private Thread echoThread;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        bulkServer = new TcpBulkServer(new InetSocketAddress(HOSTNAME, PORT_BULK_SERVER), COUNT);
+        bulkServer.open();
+
+        echoServer = ServerSocketChannel.open();
+        echoServer.bind(new InetSocketAddress(HOSTNAME, 0));
+
+        echoThread = new Thread(() -> TcpTestUtils.echo(echoServer, MESSAGE_SIZE));
+        echoThread.setDaemon(true);
+        echoThread.start();
+
+        // both crushers share the only selector loop
+        reactor = new NioReactor();
+
+        bulkCrusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_BULK_CRUSHER)
+            .withConnectAddress(HOSTNAME, PORT_BULK_SERVER)
+            .withIoBudgetBytes(IO_BUDGET_BYTES)
+            .buildAndOpen();
+
+        echoCrusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_ECHO_CRUSHER)
+            .withConnectAddress((InetSocketAddress) echoServer.getLocalAddress())
+            .withIoBudgetBytes(IO_BUDGET_BYTES)
+            .buildAndOpen();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (bulkCrusher != null) {
+            bulkCrusher.close();
+        }
+
+        if (echoCrusher != null) {
+            echoCrusher.close();
+        }
+
+        if (reactor != null) {
+            reactor.close();
+        }
+
+        if (bulkServer != null) {
+            bulkServer.close();
+        }
+
+        if (echoServer != null) {
+            echoServer.close();
+            echoThread.join(5_000);
+        }
+    }
+
+    @Test
+    void testBulkWithInteractive() throws Exception {
+        final InetSocketAddress bulkAddress = new InetSocketAddress(HOSTNAME, PORT_BULK_CRUSHER);
+        try (TcpBulkClient client1 = TcpBulkClient.forAddress("EXT", bulkAddress, COUNT);
+             SocketChannel echoChannel = SocketChannel.open(new InetSocketAddress(HOSTNAME, PORT_ECHO_CRUSHER)))
+        {
+            echoChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            // round trips of the small pair while the bulk pair is transferring
+            ByteBuffer buffer = ByteBuffer.allocateDirect(MESSAGE_SIZE);
+            long[] elapsed = new long[ROUND_TRIPS];
+            for (int i = 0; i < elapsed.length; i++) {
+                final long startNs = System.nanoTime();
+                TcpTestUtils.roundTrip(echoChannel, buffer, i);
+                elapsed[i] = System.nanoTime() - startNs;
+            }
+
+            // the round trips should have been made while the bulk pair was still busy
+            final RateMeters bulkMeters = bulkCrusher.getClientByteMeters(
+                bulkCrusher.getClientAddresses().iterator().next());
+            final long bulkBytes = bulkMeters.getReadMeter().getTotalCount() + bulkMeters.getSentMeter().getTotalCount();
+            Assertions.assertTrue(bulkBytes < 2 * COUNT, "Bulk transfer has finished before round trips");
+
+            Arrays.sort(elapsed);
+            final long p99 = elapsed[elapsed.length * 99 / 100];
+            LOGGER.info("Interactive round trip next to bulk transfer: p50={}us, p99={}us",
+                elapsed[elapsed.length / 2] / 1000, p99 / 1000);
+
+            Assertions.assertTrue(p99 < MAX_P99_NS, "Interactive p99 is " + p99 + "ns");
+
+            final byte[] producer1Digest = client1.awaitProducerResult(SEND_WAIT_MS).getDigest();
+
+            Assertions.assertEquals(1, bulkServer.getClients().size());
+            try (TcpBulkClient client2 = bulkServer.getClients().iterator().next()) {
+                final byte[] producer2Digest = client2.awaitProducerResult(SEND_WAIT_MS).getDigest();
+
+                final byte[] consumer1Digest = client1.awaitConsumerResult(READ_WAIT_MS).getDigest();
+                final byte[] consumer2Digest = client2.awaitConsumerResult(READ_WAIT_MS).getDigest();
+
+                Assertions.assertArrayEquals(producer1Digest, consumer2Digest);
+                Assertions.assertArrayEquals(producer2Digest, consumer1Digest);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.netcrusher.tcp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.core.buffer.MemoryBudget;
+import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.core.reactor.NioReactorBuilder;
+import org.netcrusher.tcp.bulk.TcpTestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class MemoryBudgetTcpTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryBudgetTcpTest.class);
+
+    private static final int PORT_CRUSHER = 10085;
+
+    private static final String HOSTNAME = "127.0.0.1";
+
+    private static final long BUDGET_BYTES = 256 * 1024;
+
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    private static final int BUFFER_COUNT = 64;
+
+    private static final long STALLED_BYTES = 16 * 1024 * 1024;
+
+    private static final long ACTIVE_BYTES = 4 * 1024 * 1024;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final long WAIT_MS = 30_000;
+
+    private NioReactor reactor;
+
+    private TcpCrusher crusher;
+
+    private ServerSocketChannel server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(HOSTNAME, 0));
+
+        reactor = NioReactorBuilder.builder()
+            .withBufferPool(BUFFER_SIZE, BUFFER_COUNT)
+            .withMemoryBudget(BUDGET_BYTES)
+            .build();
+
+        // without the budget each direction of each connection could buffer 2MB
+        crusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_CRUSHER)
+            .withConnectAddress((InetSocketAddress) server.getLocalAddress())
+            .withBufferSize(BUFFER_SIZE)
+            .withBufferCount(BUFFER_COUNT)
+            .withBufferDirect(true)
+            .buildAndOpen();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (crusher != null) {
+            crusher.close();
+        }
+
+        if (reactor != null) {
+            reactor.close();
+        }
+
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void testBackpressure() throws Exception {
+        final MemoryBudget budget = reactor.getMemoryBudget();
+        Assertions.assertNotNull(budget);
+
+        try (SocketChannel stalledClient = SocketChannel.open(new InetSocketAddress(HOSTNAME, PORT_CRUSHER));
+             SocketChannel stalledPeer = server.accept();
+             SocketChannel activeClient = SocketChannel.open(new InetSocketAddress(HOSTNAME, PORT_CRUSHER));
+             SocketChannel activePeer = server.accept())
+        {
+            // the peer doesn't read so the connection takes the whole budget
+            CompletableFuture<Void> stalledProducer =
+                CompletableFuture.runAsync(() -> produce(stalledClient, STALLED_BYTES));
+
+            awaitExhausted(budget);
+
+            // the budget is held by the other connection so this one doesn't read anything
+            CompletableFuture<Void> activeProducer =
+                CompletableFuture.runAsync(() -> produce(activeClient, ACTIVE_BYTES));
+            CompletableFuture<Long> activeConsumer =
+                CompletableFuture.supplyAsync(() -> TcpTestUtils.consumeSequence(activePeer, ACTIVE_BYTES, CHUNK_SIZE));
+
+            Thread.sleep(500);
+            Assertions.assertFalse(activeConsumer.isDone());
+            Assertions.assertTrue(budget.isExhausted());
+            Assertions.assertTrue(budget.getWaitingCount() > 0);
+
+            // both connections go on as the stalled peer frees the memory
+            CompletableFuture<Long> stalledConsumer =
+                CompletableFuture.supplyAsync(() ->
+                    TcpTestUtils.consumeSequence(stalledPeer, STALLED_BYTES, CHUNK_SIZE));
+
+            Assertions.assertEquals(STALLED_BYTES, stalledConsumer.get(WAIT_MS, TimeUnit.MILLISECONDS));
+            Assertions.assertEquals(ACTIVE_BYTES, activeConsumer.get(WAIT_MS, TimeUnit.MILLISECONDS));
+
+            stalledProducer.get(WAIT_MS, TimeUnit.MILLISECONDS);
+            activeProducer.get(WAIT_MS, TimeUnit.MILLISECONDS);
+        }
+
+        LOGGER.info("Memory budget: high-water mark is {} bytes, throttled {} times",
+            budget.getHighWaterBytes(), budget.getThrottledCount());
+
+        // a read after the last check of the budget could fill a few buffers and partially filled ones
+        // are charged when they are sent
+        Assertions.assertTrue(budget.getHighWaterBytes() <= BUDGET_BYTES + 8 * BUFFER_SIZE);
+        Assertions.assertTrue(budget.getThrottledCount() >= 2);
+        Assertions.assertEquals(0, budget.getUsedBytes());
+    }
+
+    private static void awaitExhausted(MemoryBudget budget) throws InterruptedException {
+        final long deadlineNs = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MS);
+        while (!budget.isExhausted() || budget.getWaitingCount() == 0) {
+            Assertions.assertTrue(System.nanoTime() < deadlineNs, "Budget is not exhausted");
+            Thread.sleep(10);
+        }
+    }
+
+    private static void produce(SocketChannel channel, long bytes) {
+        ByteBuffer bb = ByteBuffer.allocate(CHUNK_SIZE);
+
+        long sent = 0;
+        try {
+            while (sent < bytes) {
+                bb.clear();
+                bb.limit((int) Math.min(CHUNK_SIZE, bytes - sent));
+                for (int i = 0; i < bb.limit(); i++) {
+                    bb.put(i, (byte) (sent + i));
+                }
+                while (bb.hasRemaining()) {
+                    sent += channel.write(bb);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Fail to write", e);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.netcrusher.tcp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.NetFreezer;
+import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.core.reactor.NioReactorBuilder;
+import org.netcrusher.core.reactor.NioSelector;
+import org.netcrusher.tcp.bulk.TcpBulkClient;
+import org.netcrusher.tcp.bulk.TcpBulkServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+class MigrationTcpTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MigrationTcpTest.class);
+
+    private static final int PORT_CRUSHER = 10086;
+
+    private static final int PORT_SERVER = 10087;
+
+    private static final String HOSTNAME = "127.0.0.1";
+
+    private static final int LOOP_COUNT = 2;
+
+    private static final int CLIENT_COUNT = 4;
+
+    private static final long COUNT = 64 * 1024 * 1024;
+
+    private static final int MIGRATION_COUNT = 200;
+
+    private static final long REBALANCE_PERIOD_MS = 50;
+
+    private static final long SEND_WAIT_MS = 60_000;
+
+    private static final long READ_WAIT_MS = 30_000;
+
+    private NioReactor reactor;
+
+    private TcpCrusher crusher;
+
+    private TcpBulkServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TcpBulkServer(new InetSocketAddress(HOSTNAME, PORT_SERVER), COUNT);
+        server.open();
+
+        reactor = NioReactorBuilder.builder()
+            .withLoopCount(LOOP_COUNT)
+            .build();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (crusher != null) {
+            crusher.close();
+            Assertions.assertFalse(crusher.isOpen());
+        }
+
+        if (reactor != null) {
+            reactor.close();
+        }
+
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void testMigrationUnderLoad() throws Exception {
+        crusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_CRUSHER)
+            .withConnectAddress(HOSTNAME, PORT_SERVER)
+            .buildAndOpen();
+
+        final InetSocketAddress crusherAddress = new InetSocketAddress(HOSTNAME, PORT_CRUSHER);
+        try (TcpBulkClient client1 = TcpBulkClient.forAddress("EXT", crusherAddress, COUNT)) {
+            final InetSocketAddress clientAddress = awaitClientAddress();
+            final List<NioSelector> selectors = reactor.getSelectors();
+
+            // the pair is bounced between loops while both directions are transferring
+            for (int i = 0; i < MIGRATION_COUNT; i++) {
+                NioSelector target = selectors.get(i % selectors.size());
+                if (crusher.migrateClientAsync(clientAddress, target).get()) {
+                    // throttling deadlines are computed from the clock of the loop which owns the pair now
+                    TcpNioPair pair = (TcpNioPair) crusher.getClientFreezer(clientAddress);
+                    Assertions.assertSame(target.getChronometer(), pair.getInnerToOuter().getChronometer());
+                    Assertions.assertSame(target.getChronometer(), pair.getOuterToInner().getChronometer());
+                }
+
+                NetFreezer freezer = crusher.getClientFreezer(clientAddress);
+                if (i % 16 == 0 && freezer != null) {
+                    freezer.freeze();
+                    freezer.unfreeze();
+                }
+
+                Thread.sleep(1);
+            }
+
+            LOGGER.info("Pair has been migrated {} times", crusher.getMigrationCount());
+            Assertions.assertTrue(crusher.getMigrationCount() > 0);
+
+            assertDigests(client1);
+        }
+    }
+
+    @Test
+    void testRebalance() throws Exception {
+        crusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_CRUSHER)
+            .withConnectAddress(HOSTNAME, PORT_SERVER)
+            .withRebalancePeriodMs(REBALANCE_PERIOD_MS)
+            .buildAndOpen();
+
+        final InetSocketAddress crusherAddress = new InetSocketAddress(HOSTNAME, PORT_CRUSHER);
+        final NioSelector crowded = reactor.getSelectors().get(0);
+
+        List<TcpBulkClient> clients = new ArrayList<>(CLIENT_COUNT);
+        try {
+            for (int i = 0; i < CLIENT_COUNT; i++) {
+                clients.add(TcpBulkClient.forAddress("EXT" + i, crusherAddress, COUNT));
+            }
+
+            // all heavy hitters are put together in the first loop
+            long manualMigrations = 0;
+            for (InetSocketAddress clientAddress : awaitClientAddresses(CLIENT_COUNT)) {
+                if (crusher.migrateClientAsync(clientAddress, crowded).get()) {
+                    manualMigrations++;
+                }
+            }
+
+            final long deadlineNs = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SEND_WAIT_MS);
+            while (crusher.getMigrationCount() == manualMigrations && System.nanoTime() < deadlineNs) {
+                Thread.sleep(REBALANCE_PERIOD_MS);
+            }
+
+            LOGGER.info("Loop utilization: {}", Arrays.toString(crusher.getLoopUtilization()));
+            Assertions.assertEquals(LOOP_COUNT, crusher.getLoopUtilization().length);
+            Assertions.assertTrue(crusher.getMigrationCount() > manualMigrations);
+
+            for (TcpBulkClient client : clients) {
+                client.awaitProducerResult(SEND_WAIT_MS);
+            }
+        } finally {
+            for (TcpBulkClient client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    private InetSocketAddress awaitClientAddress() throws Exception {
+        return awaitClientAddresses(1).iterator().next();
+    }
+
+    private List<InetSocketAddress> awaitClientAddresses(int count) throws Exception {
+        while (crusher.getClientAddresses().size() < count) {
+            Thread.sleep(10);
+        }
+        return new ArrayList<>(crusher.getClientAddresses());
+    }
+
+    private void assertDigests(TcpBulkClient client1) throws Exception {
+        final byte[] producer1Digest = client1.awaitProducerResult(SEND_WAIT_MS).getDigest();
+
+        Assertions.assertEquals(1, server.getClients().size());
+        try (TcpBulkClient client2 = server.getClients().iterator().next()) {
+            final byte[] producer2Digest = client2.awaitProducerResult(SEND_WAIT_MS).getDigest();
+
+            final byte[] consumer1Digest = client1.awaitConsumerResult(READ_WAIT_MS).getDigest();
+            final byte[] consumer2Digest = client2.awaitConsumerResult(READ_WAIT_MS).getDigest();
+
+            Assertions.assertArrayEquals(producer1Digest, consumer2Digest);
+            Assertions.assertArrayEquals(producer2Digest, consumer1Digest);
+        }
+    }
+}
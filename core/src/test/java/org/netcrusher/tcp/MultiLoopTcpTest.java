@@ -0,0 +1,190 @@
+package org.netcrusher.tcp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.core.nio.NioUtils;
+import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.core.reactor.NioReactorBuilder;
+import org.netcrusher.tcp.bulk.TcpBulkClient;
+import org.netcrusher.tcp.bulk.TcpBulkServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+class MultiLoopTcpTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultiLoopTcpTest.class);
+
+    private static final int PORT_CRUSHER = 10081;
+
+    private static final int PORT_CONTROL_CRUSHER_A = 10073;
+
+    private static final int PORT_CONTROL_CRUSHER_B = 10074;
+
+    private static final int PORT_SERVER = 10082;
+
+    private static final String HOSTNAME = "127.0.0.1";
+
+    private static final int LOOP_COUNT = 4;
+
+    private static final int CLIENT_COUNT = 8;
+
+    private static final long COUNT = 16 * 1024 * 1024;
+
+    private static final long SEND_WAIT_MS = 60_000;
+
+    private static final long READ_WAIT_MS = 30_000;
+
+    private static final int CONTROL_CLIENT_COUNT = 8;
+
+    private static final int CONTROL_ROUNDS = 200;
+
+    private static final Duration CONTROL_TIMEOUT = Duration.ofSeconds(30);
+
+    private NioReactor reactor;
+
+    private TcpCrusher crusher;
+
+    private TcpBulkServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TcpBulkServer(new InetSocketAddress(HOSTNAME, PORT_SERVER), COUNT);
+        server.open();
+
+        reactor = NioReactorBuilder.builder()
+            .withLoopCount(LOOP_COUNT)
+            .build();
+
+        crusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_CRUSHER)
+            .withConnectAddress(HOSTNAME, PORT_SERVER)
+            .withCreationListener(addr -> LOGGER.info("Client is created <{}>", addr))
+            .withDeletionListener((addr, byteMeters) -> LOGGER.info("Client is deleted <{}>", addr))
+            .buildAndOpen();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (crusher != null) {
+            crusher.close();
+            Assertions.assertFalse(crusher.isOpen());
+        }
+
+        if (reactor != null) {
+            reactor.close();
+            Assertions.assertFalse(reactor.isOpen());
+        }
+
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void testMultipleLoops() throws Exception {
+        Assertions.assertEquals(LOOP_COUNT, reactor.getLoopCount());
+
+        final InetSocketAddress serverAddress = new InetSocketAddress(HOSTNAME, PORT_CRUSHER);
+
+        List<TcpBulkClient> clients = new ArrayList<>(CLIENT_COUNT);
+        try {
+            for (int i = 0; i < CLIENT_COUNT; i++) {
+                clients.add(TcpBulkClient.forAddress("EXT" + i, serverAddress, COUNT));
+            }
+
+            Set<String> sentDigests = new HashSet<>();
+            for (TcpBulkClient client : clients) {
+                sentDigests.add(NioUtils.toHexString(client.awaitProducerResult(SEND_WAIT_MS).getDigest()));
+            }
+
+            Assertions.assertEquals(CLIENT_COUNT, server.getClients().size());
+
+            Set<String> receivedDigests = new HashSet<>();
+            for (TcpBulkClient client : server.getClients()) {
+                receivedDigests.add(NioUtils.toHexString(client.awaitConsumerResult(READ_WAIT_MS).getDigest()));
+            }
+
+            Assertions.assertEquals(sentDigests, receivedDigests);
+            Assertions.assertEquals(CLIENT_COUNT, crusher.getClientAddresses().size());
+        } finally {
+            for (TcpBulkClient client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    void testCrossLoopControl() throws Exception {
+        try (ServerSocketChannel target = ServerSocketChannel.open()) {
+            // connections are completed by the backlog so nothing is accepted
+            target.bind(new InetSocketAddress(HOSTNAME, 0), CONTROL_CLIENT_COUNT * 2);
+
+            // crushers live in different loops and each one has its pairs spread over the other loops
+            TcpCrusher crusherA = createControlCrusher(PORT_CONTROL_CRUSHER_A, target);
+            TcpCrusher crusherB = createControlCrusher(PORT_CONTROL_CRUSHER_B, target);
+
+            List<SocketChannel> clients = new ArrayList<>(CONTROL_CLIENT_COUNT * 2);
+            try {
+                for (int i = 0; i < CONTROL_CLIENT_COUNT; i++) {
+                    clients.add(SocketChannel.open(new InetSocketAddress(HOSTNAME, PORT_CONTROL_CRUSHER_A)));
+                    clients.add(SocketChannel.open(new InetSocketAddress(HOSTNAME, PORT_CONTROL_CRUSHER_B)));
+                }
+
+                while (crusherA.getClientAddresses().size() < CONTROL_CLIENT_COUNT
+                    || crusherB.getClientAddresses().size() < CONTROL_CLIENT_COUNT)
+                {
+                    Thread.sleep(10);
+                }
+
+                // a selector loop waiting for another one which is waiting for it would hang here
+                Assertions.assertTimeoutPreemptively(CONTROL_TIMEOUT, () -> {
+                    CompletableFuture<Void> controlA = CompletableFuture.runAsync(() -> control(crusherA));
+                    CompletableFuture<Void> controlB = CompletableFuture.runAsync(() -> control(crusherB));
+                    CompletableFuture.allOf(controlA, controlB).join();
+
+                    CompletableFuture.allOf(crusherA.closeAsync(), crusherB.closeAsync()).join();
+                });
+
+                Assertions.assertFalse(crusherA.isOpen());
+                Assertions.assertFalse(crusherB.isOpen());
+            } finally {
+                for (SocketChannel client : clients) {
+                    NioUtils.close(client);
+                }
+
+                crusherA.close();
+                crusherB.close();
+            }
+        }
+    }
+
+    private TcpCrusher createControlCrusher(int port, ServerSocketChannel target) throws Exception {
+        return TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, port)
+            .withConnectAddress((InetSocketAddress) target.getLocalAddress())
+            .buildAndOpen();
+    }
+
+    private static void control(TcpCrusher crusher) {
+        for (int i = 0; i < CONTROL_ROUNDS; i++) {
+            crusher.freeze();
+            crusher.unfreeze();
+        }
+
+        crusher.closeAllPairs();
+    }
+}
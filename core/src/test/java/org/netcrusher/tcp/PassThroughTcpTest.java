@@ -0,0 +1,142 @@
+package org.netcrusher.tcp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.core.meter.RateMeters;
+import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.tcp.bulk.TcpTestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class PassThroughTcpTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PassThroughTcpTest.class);
+
+    private static final int PORT_PLAIN_CRUSHER = 10083;
+
+    private static final int PORT_FILTERED_CRUSHER = 10084;
+
+    private static final String HOSTNAME = "127.0.0.1";
+
+    private static final long WARMUP_BYTES = 128L * 1024 * 1024;
+
+    private static final long TRANSFER_BYTES = 2L * 1024 * 1024 * 1024;
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    private static final long WAIT_MS = 60_000;
+
+    private NioReactor reactor;
+
+    private TcpCrusher plainCrusher;
+
+    private TcpCrusher filteredCrusher;
+
+    private ServerSocketChannel server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(HOSTNAME, 0));
+
+        reactor = new NioReactor();
+
+        plainCrusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_PLAIN_CRUSHER)
+            .withConnectAddress((InetSocketAddress) server.getLocalAddress())
+            .buildAndOpen();
+
+        // filters which do nothing but are not the no-op ones keep the queues on the full path
+        filteredCrusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_FILTERED_CRUSHER)
+            .withConnectAddress((InetSocketAddress) server.getLocalAddress())
+            .withOutgoingTransformFilterFactory(addr -> bb -> { })
+            .withOutgoingThrottlerFactory(addr -> bb -> 0)
+            .buildAndOpen();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (plainCrusher != null) {
+            plainCrusher.close();
+        }
+
+        if (filteredCrusher != null) {
+            filteredCrusher.close();
+        }
+
+        if (reactor != null) {
+            reactor.close();
+        }
+
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void test() throws Exception {
+        final double filteredGbps = measure(filteredCrusher, PORT_FILTERED_CRUSHER);
+        final double plainGbps = measure(plainCrusher, PORT_PLAIN_CRUSHER);
+
+        LOGGER.info("Pass-through relay: {} Gbit/s, with filter and throttler: {} Gbit/s ({}x)",
+            String.format("%.2f", plainGbps), String.format("%.2f", filteredGbps),
+            String.format("%.2f", plainGbps / filteredGbps));
+    }
+
+    private double measure(TcpCrusher crusher, int port) throws Exception {
+        final double gbps;
+
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress(HOSTNAME, port));
+             SocketChannel peer = server.accept())
+        {
+            CompletableFuture<Long> consumer =
+                CompletableFuture.supplyAsync(() ->
+                    TcpTestUtils.consume(peer, WARMUP_BYTES + TRANSFER_BYTES, CHUNK_SIZE));
+
+            send(client, WARMUP_BYTES);
+
+            final long startNs = System.nanoTime();
+            send(client, TRANSFER_BYTES);
+
+            Assertions.assertEquals(WARMUP_BYTES + TRANSFER_BYTES, consumer.get(WAIT_MS, TimeUnit.MILLISECONDS));
+            gbps = 8.0 * TRANSFER_BYTES / (System.nanoTime() - startNs);
+
+            // freezing and metering work the same way on both paths
+            crusher.freeze();
+            Assertions.assertTrue(crusher.isFrozen());
+            crusher.unfreeze();
+
+            InetSocketAddress clientAddress = crusher.getClientAddresses().iterator().next();
+            RateMeters meters = crusher.getClientByteMeters(clientAddress);
+            Assertions.assertEquals(WARMUP_BYTES + TRANSFER_BYTES, meters.getSentMeter().getTotalCount());
+        }
+
+        return gbps;
+    }
+
+    private static void send(SocketChannel channel, long bytes) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocateDirect(CHUNK_SIZE);
+
+        long sent = 0;
+        while (sent < bytes) {
+            bb.clear();
+            bb.limit((int) Math.min(CHUNK_SIZE, bytes - sent));
+            while (bb.hasRemaining()) {
+                sent += channel.write(bb);
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package org.netcrusher.tcp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.core.nio.NioUtils;
+import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.core.reactor.NioReactorBuilder;
+import org.netcrusher.tcp.bulk.TcpBulkClient;
+import org.netcrusher.tcp.bulk.TcpBulkServer;
+
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+class ReusePortTcpTest {
+
+    private static final int PORT_CRUSHER = 10091;
+
+    private static final int PORT_SERVER = 10092;
+
+    private static final int PORT_OTHER_CRUSHER = 10072;
+
+    private static final String HOSTNAME = "127.0.0.1";
+
+    private static final int LOOP_COUNT = 4;
+
+    private static final int CLIENT_COUNT = 8;
+
+    private static final int STORM_COUNT = 200;
+
+    private static final long COUNT = 4 * 1024 * 1024;
+
+    private static final long SEND_WAIT_MS = 60_000;
+
+    private static final long READ_WAIT_MS = 30_000;
+
+    private static final long ACCEPT_WAIT_MS = 10_000;
+
+    private static final int CONTROL_ROUNDS = 200;
+
+    private static final Duration CONTROL_TIMEOUT = Duration.ofSeconds(30);
+
+    private NioReactor reactor;
+
+    private TcpCrusher crusher;
+
+    private TcpBulkServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TcpBulkServer(new InetSocketAddress(HOSTNAME, PORT_SERVER), COUNT);
+        server.open();
+
+        reactor = NioReactorBuilder.builder()
+            .withLoopCount(LOOP_COUNT)
+            .build();
+
+        crusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_CRUSHER)
+            .withConnectAddress(HOSTNAME, PORT_SERVER)
+            .withReusePort(true)
+            .buildAndOpen();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (crusher != null) {
+            crusher.close();
+            Assertions.assertFalse(crusher.isOpen());
+        }
+
+        if (reactor != null) {
+            reactor.close();
+            Assertions.assertFalse(reactor.isOpen());
+        }
+
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void testListeners() throws Exception {
+        TcpAcceptor acceptor = (TcpAcceptor) crusher.getAcceptorFreezer();
+
+        int expected;
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            expected = channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT) ? LOOP_COUNT : 1;
+        }
+
+        Assertions.assertEquals(expected, acceptor.getListenerCount());
+        Assertions.assertEquals(PORT_CRUSHER, acceptor.getLocalAddress().getPort());
+
+        crusher.freeze();
+        Assertions.assertTrue(acceptor.isFrozen());
+
+        crusher.unfreeze();
+        Assertions.assertFalse(acceptor.isFrozen());
+    }
+
+    @Test
+    void testConcurrentControl() throws Exception {
+        // listeners of both crushers are spread over the same loops which are driven by both crushers' loops
+        TcpCrusher other = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_OTHER_CRUSHER)
+            .withConnectAddress(HOSTNAME, PORT_SERVER)
+            .withReusePort(true)
+            .buildAndOpen();
+
+        try {
+            Assertions.assertTimeoutPreemptively(CONTROL_TIMEOUT, () -> {
+                CompletableFuture<Void> control = CompletableFuture.runAsync(() -> control(crusher));
+                CompletableFuture<Void> controlOther = CompletableFuture.runAsync(() -> control(other));
+                CompletableFuture.allOf(control, controlOther).join();
+            });
+
+            Assertions.assertFalse(crusher.isFrozen());
+            Assertions.assertFalse(other.isFrozen());
+
+            for (int port : new int[] { PORT_CRUSHER, PORT_OTHER_CRUSHER }) {
+                try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(HOSTNAME, port))) {
+                    Assertions.assertTrue(channel.isConnected());
+                }
+            }
+        } finally {
+            other.close();
+        }
+    }
+
+    private static void control(TcpCrusher crusher) {
+        for (int i = 0; i < CONTROL_ROUNDS; i++) {
+            crusher.freeze();
+            crusher.unfreeze();
+        }
+    }
+
+    @Test
+    void testStorm() throws Exception {
+        final InetSocketAddress crusherAddress = new InetSocketAddress(HOSTNAME, PORT_CRUSHER);
+
+        for (int i = 0; i < STORM_COUNT; i++) {
+            try (SocketChannel channel = SocketChannel.open(crusherAddress)) {
+                Assertions.assertTrue(channel.isConnected());
+            }
+        }
+
+        final long deadlineMs = System.currentTimeMillis() + ACCEPT_WAIT_MS;
+        while (crusher.getClientTotalCount() < STORM_COUNT && System.currentTimeMillis() < deadlineMs) {
+            Thread.sleep(10);
+        }
+
+        Assertions.assertEquals(STORM_COUNT, crusher.getClientTotalCount());
+    }
+
+    @Test
+    void testTransfer() throws Exception {
+        final InetSocketAddress crusherAddress = new InetSocketAddress(HOSTNAME, PORT_CRUSHER);
+
+        List<TcpBulkClient> clients = new ArrayList<>(CLIENT_COUNT);
+        try {
+            for (int i = 0; i < CLIENT_COUNT; i++) {
+                clients.add(TcpBulkClient.forAddress("EXT" + i, crusherAddress, COUNT));
+            }
+
+            Set<String> sentDigests = new HashSet<>();
+            for (TcpBulkClient client : clients) {
+                sentDigests.add(NioUtils.toHexString(client.awaitProducerResult(SEND_WAIT_MS).getDigest()));
+            }
+
+            Set<String> receivedDigests = new HashSet<>();
+            for (TcpBulkClient client : server.getClients()) {
+                receivedDigests.add(NioUtils.toHexString(client.awaitConsumerResult(READ_WAIT_MS).getDigest()));
+            }
+
+            Assertions.assertEquals(sentDigests, receivedDigests);
+        } finally {
+            for (TcpBulkClient client : clients) {
+                client.close();
+            }
+        }
+    }
+}
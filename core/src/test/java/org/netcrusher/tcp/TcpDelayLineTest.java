@@ -0,0 +1,199 @@
+package org.netcrusher.tcp;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.core.buffer.BufferOptions;
+import org.netcrusher.core.chronometer.VirtualChronometer;
+import org.netcrusher.core.throttle.DelayThrottler;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+class TcpDelayLineTest {
+
+    private static final int CHUNK_SIZE = TcpDelayLine.CHUNK_SIZE;
+
+    private static final int BUFFER_COUNT = 4;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Test
+    void testOrder() {
+        TcpDelayLine line = new TcpDelayLine(4L * CHUNK_SIZE, 16L * CHUNK_SIZE);
+
+        // segments cross the chunk boundaries
+        final int segment = CHUNK_SIZE / 3;
+        byte next = 0;
+        for (int i = 0; i < 10; i++) {
+            next = append(line, next, segment, i);
+        }
+
+        Assertions.assertEquals(10L * segment, line.getSize());
+        Assertions.assertEquals(0, line.getMappedBytes());
+
+        TcpQueueBuffers buffers = line.request(-1);
+        Assertions.assertTrue(buffers.isEmpty());
+        Assertions.assertEquals(1, buffers.getDelayNs());
+        line.release();
+
+        // only due segments are readable
+        byte expected = read(line, (byte) 0, 4, 5L * segment);
+        expected = read(line, expected, 9, 5L * segment);
+
+        Assertions.assertTrue(line.isEmpty());
+        Assertions.assertEquals(next, expected);
+
+        // the last chunk and a spare one are kept for the next data
+        Assertions.assertEquals(2L * CHUNK_SIZE, line.getMemoryBytes());
+    }
+
+    @Test
+    void testWrap() {
+        TcpDelayLine line = new TcpDelayLine(4L * CHUNK_SIZE, 16L * CHUNK_SIZE);
+
+        // the clock is an arbitrary origin so deadlines could overflow
+        final long nowNs = Long.MAX_VALUE - 10;
+        final int segment = CHUNK_SIZE / 2;
+        byte next = append(line, (byte) 0, segment, nowNs);
+        next = append(line, next, segment, nowNs + 20);
+
+        TcpQueueBuffers buffers = line.request(nowNs - 1);
+        Assertions.assertTrue(buffers.isEmpty());
+        Assertions.assertEquals(1, buffers.getDelayNs());
+        line.release();
+
+        byte expected = read(line, (byte) 0, nowNs, segment);
+        expected = read(line, expected, nowNs + 20, segment);
+
+        Assertions.assertTrue(line.isEmpty());
+        Assertions.assertEquals(next, expected);
+    }
+
+    @Test
+    void testSpill() {
+        TcpDelayLine line = new TcpDelayLine(2L * CHUNK_SIZE, 8L * CHUNK_SIZE);
+
+        byte next = 0;
+        for (int i = 0; i < 8; i++) {
+            next = append(line, next, CHUNK_SIZE, 0);
+        }
+
+        Assertions.assertTrue(line.isFull());
+        Assertions.assertEquals(2L * CHUNK_SIZE, line.getMemoryBytes());
+        Assertions.assertEquals(6L * CHUNK_SIZE, line.getMappedBytes());
+
+        byte expected = read(line, (byte) 0, 0, 8L * CHUNK_SIZE);
+        Assertions.assertEquals(next, expected);
+
+        // file regions are reused
+        for (int i = 0; i < 8; i++) {
+            next = append(line, next, CHUNK_SIZE, 0);
+        }
+        Assertions.assertEquals(6L * CHUNK_SIZE, line.getMappedBytes());
+
+        read(line, expected, 0, 8L * CHUNK_SIZE);
+
+        line.clear();
+        Assertions.assertTrue(line.isEmpty());
+        Assertions.assertEquals(0, line.getMappedBytes());
+    }
+
+    @Test
+    void testQueue() {
+        BufferOptions options = new BufferOptions();
+        options.setCount(BUFFER_COUNT);
+        options.setSize(BUFFER_SIZE);
+        options.setDirect(true);
+        options.setDelayLineMemory(4L * CHUNK_SIZE);
+        options.setDelayLineCapacity(8L * CHUNK_SIZE);
+
+        VirtualChronometer chronometer = new VirtualChronometer();
+        TcpQueue queue = new TcpQueue(options, null, new DelayThrottler(300, TimeUnit.MILLISECONDS),
+            chronometer, null, null);
+        Assertions.assertNotNull(queue.getDelayLine());
+
+        // far more than the ring could hold is delayed
+        long written = 0;
+        byte next = 0;
+        while (queue.hasWritable()) {
+            TcpQueueBuffers buffers = queue.requestWritableBuffers();
+            for (int i = buffers.getOffset(), end = i + buffers.getCount(); i < end; i++) {
+                ByteBuffer bb = buffers.getArray()[i];
+                while (bb.hasRemaining()) {
+                    bb.put(next++);
+                    written++;
+                }
+            }
+            queue.releaseWritableBuffers();
+        }
+
+        Assertions.assertEquals(8L * CHUNK_SIZE, written);
+        Assertions.assertEquals(written, queue.calculateReadableBytes());
+        Assertions.assertTrue(queue.hasReadable());
+
+        TcpQueueBuffers delayed = queue.requestReadableBuffers();
+        Assertions.assertTrue(delayed.isEmpty());
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(300), delayed.getDelayNs());
+        queue.releaseReadableBuffers();
+
+        chronometer.add(300, TimeUnit.MILLISECONDS);
+
+        byte expected = 0;
+        long read = 0;
+        while (queue.hasReadable()) {
+            TcpQueueBuffers buffers = queue.requestReadableBuffers();
+            Assertions.assertFalse(buffers.isEmpty());
+            for (int i = buffers.getOffset(), end = i + buffers.getCount(); i < end; i++) {
+                ByteBuffer bb = buffers.getArray()[i];
+                while (bb.hasRemaining()) {
+                    Assertions.assertEquals(expected++, bb.get());
+                    read++;
+                }
+            }
+            queue.releaseReadableBuffers();
+        }
+
+        Assertions.assertEquals(written, read);
+        queue.reset();
+    }
+
+    private static byte append(TcpDelayLine line, byte next, int size, long scheduledNs) {
+        ByteBuffer bb = ByteBuffer.allocate(size);
+        while (bb.hasRemaining()) {
+            bb.put(next++);
+        }
+        bb.flip();
+
+        line.append(bb, scheduledNs);
+        Assertions.assertFalse(bb.hasRemaining());
+
+        return next;
+    }
+
+    private static byte read(TcpDelayLine line, byte expected, long nowNs, long size) {
+        long remaining = size;
+        while (remaining > 0) {
+            TcpQueueBuffers buffers = line.request(nowNs);
+            Assertions.assertFalse(buffers.isEmpty());
+
+            for (int i = buffers.getOffset(), end = i + buffers.getCount(); i < end; i++) {
+                ByteBuffer bb = buffers.getArray()[i];
+                while (bb.hasRemaining()) {
+                    Assertions.assertEquals(expected++, bb.get());
+                    remaining--;
+                }
+            }
+
+            line.release();
+        }
+
+        Assertions.assertEquals(0, remaining);
+
+        // nothing after the due segments
+        TcpQueueBuffers buffers = line.request(nowNs);
+        Assertions.assertTrue(buffers.isEmpty());
+        line.release();
+
+        return expected;
+    }
+}
@@ -0,0 +1,361 @@
+package org.netcrusher.tcp;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.core.buffer.BufferOptions;
+import org.netcrusher.core.buffer.BufferPool;
+import org.netcrusher.core.chronometer.SystemChronometer;
+import org.netcrusher.core.chronometer.VirtualChronometer;
+import org.netcrusher.core.filter.TransformFilter;
+import org.netcrusher.core.throttle.DelayThrottler;
+import org.netcrusher.core.throttle.Throttler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+class TcpQueueTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TcpQueueTest.class);
+
+    private static final int BUFFER_COUNT = 4;
+
+    private static final int BUFFER_SIZE = 8;
+
+    private static final long TRANSFER_BYTES = 10L * 1024 * 1024 * 1024;
+
+    private static final long WARMUP_BYTES = 256L * 1024 * 1024;
+
+    @Test
+    void testRing() {
+        checkRing(null);
+    }
+
+    @Test
+    void testPooledRing() {
+        BufferPool pool = new BufferPool(BUFFER_SIZE, BUFFER_COUNT);
+        checkRing(pool);
+
+        // a drained queue holds no buffers
+        Assertions.assertEquals(0, pool.getBorrowedCount());
+        Assertions.assertTrue(pool.getHighWaterCount() <= BUFFER_COUNT);
+        Assertions.assertTrue(pool.getHitMeter().getTotalCount() > 0);
+        Assertions.assertTrue(pool.getMissMeter().getTotalCount() <= BUFFER_COUNT);
+    }
+
+    private static void checkRing(BufferPool pool) {
+        TcpQueue queue = new TcpQueue(createOptions(BUFFER_COUNT, BUFFER_SIZE), null, null,
+            SystemChronometer.INSTANCE, pool, null);
+
+        Assertions.assertFalse(queue.hasReadable());
+        Assertions.assertTrue(queue.hasWritable());
+        Assertions.assertEquals(BUFFER_COUNT * BUFFER_SIZE, queue.calculateWritableBytes());
+
+        // several rounds make the readable range wrap around the ring
+        byte next = 0;
+        byte expected = 0;
+        for (int round = 0; round < BUFFER_COUNT * 3; round++) {
+            next = write(queue, next, BUFFER_SIZE + BUFFER_SIZE / 2);
+            Assertions.assertEquals(BUFFER_SIZE + BUFFER_SIZE / 2, queue.calculateReadableBytes());
+
+            expected = read(queue, expected, BUFFER_SIZE + BUFFER_SIZE / 2);
+            Assertions.assertFalse(queue.hasReadable());
+            Assertions.assertEquals(0, queue.calculateReadableBytes());
+        }
+
+        Assertions.assertEquals(BUFFER_COUNT * BUFFER_SIZE, queue.calculateWritableBytes());
+    }
+
+    @Test
+    void testFull() {
+        checkFull(null);
+    }
+
+    @Test
+    void testPooledFull() {
+        BufferPool pool = new BufferPool(BUFFER_SIZE, 0);
+        checkFull(pool);
+
+        Assertions.assertEquals(0, pool.getBorrowedCount());
+        Assertions.assertEquals(BUFFER_COUNT, pool.getHighWaterCount());
+    }
+
+    @Test
+    void testPoolMismatch() {
+        BufferPool pool = new BufferPool(BUFFER_SIZE * 2, BUFFER_COUNT);
+
+        TcpQueue queue = new TcpQueue(createOptions(BUFFER_COUNT, BUFFER_SIZE), null, null,
+            SystemChronometer.INSTANCE, pool, null);
+        write(queue, (byte) 0, BUFFER_SIZE);
+
+        Assertions.assertEquals(0, pool.getBorrowedCount());
+    }
+
+    private static void checkFull(BufferPool pool) {
+        TcpQueue queue = new TcpQueue(createOptions(BUFFER_COUNT, BUFFER_SIZE), null, null,
+            SystemChronometer.INSTANCE, pool, null);
+
+        write(queue, (byte) 0, BUFFER_SIZE / 2);
+        read(queue, (byte) 0, BUFFER_SIZE / 2);
+
+        // the ring is filled from the middle of a buffer
+        write(queue, (byte) 0, BUFFER_COUNT * BUFFER_SIZE);
+        Assertions.assertFalse(queue.hasWritable());
+        Assertions.assertTrue(queue.requestWritableBuffers().isEmpty());
+        Assertions.assertEquals(BUFFER_COUNT * BUFFER_SIZE, queue.calculateReadableBytes());
+
+        TcpQueueBuffers buffers = queue.requestReadableBuffers();
+        Assertions.assertEquals(BUFFER_COUNT, buffers.getCount());
+        queue.releaseReadableBuffers();
+
+        read(queue, (byte) 0, BUFFER_COUNT * BUFFER_SIZE);
+        Assertions.assertFalse(queue.hasReadable());
+
+        queue.reset();
+        Assertions.assertEquals(BUFFER_COUNT * BUFFER_SIZE, queue.calculateWritableBytes());
+    }
+
+    @Test
+    void testDelay() {
+        VirtualChronometer chronometer = new VirtualChronometer();
+        TcpQueue queue = new TcpQueue(createOptions(BUFFER_COUNT, BUFFER_SIZE), null,
+            new DelayThrottler(1, TimeUnit.SECONDS), chronometer, null, null);
+
+        write(queue, (byte) 0, BUFFER_SIZE);
+
+        TcpQueueBuffers buffers = queue.requestReadableBuffers();
+        Assertions.assertTrue(buffers.isEmpty());
+        Assertions.assertEquals(TimeUnit.SECONDS.toNanos(1), buffers.getDelayNs());
+        queue.releaseReadableBuffers();
+
+        chronometer.add(1, TimeUnit.SECONDS);
+
+        read(queue, (byte) 0, BUFFER_SIZE);
+    }
+
+    @Test
+    void testPassThrough() {
+        TcpQueue plain = TcpQueue.allocateQueue(null, createOptions(BUFFER_COUNT, BUFFER_SIZE),
+            null, null, SystemChronometer.INSTANCE, null, null);
+        Assertions.assertTrue(plain.isPassThrough());
+
+        TcpQueue noop = TcpQueue.allocateQueue(null, createOptions(BUFFER_COUNT, BUFFER_SIZE),
+            addr -> TransformFilter.NOOP, addr -> Throttler.NOOP, SystemChronometer.INSTANCE, null, null);
+        Assertions.assertTrue(noop.isPassThrough());
+
+        TcpQueue throttled = TcpQueue.allocateQueue(null, createOptions(BUFFER_COUNT, BUFFER_SIZE),
+            null, addr -> new DelayThrottler(1, TimeUnit.SECONDS), SystemChronometer.INSTANCE, null, null);
+        Assertions.assertFalse(throttled.isPassThrough());
+
+        // the relay keeps the order of data across the ring
+        byte next = 0;
+        byte expected = 0;
+        for (int round = 0; round < BUFFER_COUNT * 3; round++) {
+            next = write(noop, next, BUFFER_SIZE * 2 + 1);
+            Assertions.assertEquals(BUFFER_SIZE * 2 + 1, noop.calculateReadableBytes());
+            expected = read(noop, expected, BUFFER_SIZE * 2 + 1);
+        }
+
+        Assertions.assertFalse(noop.hasReadable());
+    }
+
+    @Test
+    void testFilterDrop() {
+        // the filter drops the buffer which starts with the second portion of data
+        TransformFilter filter = bb -> {
+            if (bb.get(bb.position()) == BUFFER_SIZE) {
+                bb.position(bb.limit());
+            }
+        };
+
+        TcpQueue queue = new TcpQueue(createOptions(BUFFER_COUNT, BUFFER_SIZE), filter, null,
+            SystemChronometer.INSTANCE, null, null);
+
+        // three buffers are filled by a single scattering read and the middle one is dropped
+        byte next = write(queue, (byte) 0, BUFFER_SIZE * 3);
+        Assertions.assertEquals(BUFFER_SIZE * 2, queue.calculateReadableBytes());
+
+        read(queue, (byte) 0, BUFFER_SIZE);
+        read(queue, (byte) (BUFFER_SIZE * 2), BUFFER_SIZE);
+        Assertions.assertFalse(queue.hasReadable());
+
+        // the emptied buffer is reused in order
+        for (int round = 0; round < BUFFER_COUNT * 3; round++) {
+            next = write(queue, next, BUFFER_SIZE * 2);
+            Assertions.assertEquals(BUFFER_SIZE * 2, queue.calculateReadableBytes());
+            next = read(queue, (byte) (next - BUFFER_SIZE * 2), BUFFER_SIZE * 2);
+        }
+
+        Assertions.assertEquals(BUFFER_COUNT * BUFFER_SIZE, queue.calculateWritableBytes());
+    }
+
+    @Test
+    void testAdaptive() {
+        final int count = 64;
+        final int fixedSize = 32 * 1024;
+        final int minSize = 512;
+        final int maxSize = 256 * 1024;
+
+        BufferOptions adaptiveOptions = createOptions(count, fixedSize);
+        adaptiveOptions.setMinSize(minSize);
+        adaptiveOptions.setMaxSize(maxSize);
+
+        TcpQueue fixed = new TcpQueue(createOptions(count, fixedSize), null, null,
+            SystemChronometer.INSTANCE, null, null);
+        TcpQueue chatty = new TcpQueue(adaptiveOptions, null, null, SystemChronometer.INSTANCE, null, null);
+        TcpQueue bulk = new TcpQueue(adaptiveOptions, null, null, SystemChronometer.INSTANCE, null, null);
+
+        // request-response traffic with short messages
+        for (int i = 0; i < 10_000; i++) {
+            write(chatty, (byte) 0, 100);
+            read(chatty, (byte) 0, 100);
+        }
+
+        Assertions.assertEquals((long) count * minSize, chatty.calculateWritableBytes());
+
+        final long fixedBulkNs = measureTransfer(fixed);
+        final long adaptiveBulkNs = measureTransfer(bulk);
+
+        Assertions.assertEquals((long) count * maxSize, bulk.calculateWritableBytes());
+
+        LOGGER.info("Memory per queue: fixed {} bytes, adaptive {} bytes with short messages and {} bytes in bulk",
+            fixed.calculateAllocatedBytes(), chatty.calculateAllocatedBytes(), bulk.calculateAllocatedBytes());
+        LOGGER.info("Bulk transfer: fixed {} GB/s, adaptive {} GB/s",
+            String.format("%.1f", 1.0 * TRANSFER_BYTES / fixedBulkNs),
+            String.format("%.1f", 1.0 * TRANSFER_BYTES / adaptiveBulkNs));
+
+        Assertions.assertTrue(chatty.calculateAllocatedBytes() <= 4L * minSize);
+        Assertions.assertTrue(bulk.calculateAllocatedBytes() <= (long) count * maxSize);
+    }
+
+    private static long measureTransfer(TcpQueue queue) {
+        transfer(queue, WARMUP_BYTES);
+
+        final long startNs = System.nanoTime();
+        transfer(queue, TRANSFER_BYTES);
+        return System.nanoTime() - startNs;
+    }
+
+    @Test
+    void testAllocation() {
+        checkAllocation(null);
+    }
+
+    @Test
+    void testPooledAllocation() {
+        BufferPool pool = new BufferPool(64 * 1024, 64);
+        checkAllocation(pool);
+
+        Assertions.assertEquals(0, pool.getBorrowedCount());
+    }
+
+    private static void checkAllocation(BufferPool pool) {
+        com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        TcpQueue queue = new TcpQueue(createOptions(64, 64 * 1024), null, null,
+            SystemChronometer.INSTANCE, pool, null);
+
+        // socket I/O is replaced by moving positions so only the queue itself is measured
+        final long threadId = Thread.currentThread().getId();
+        threadMXBean.getThreadAllocatedBytes(threadId);
+
+        transfer(queue, WARMUP_BYTES);
+
+        final long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        final long startNs = System.nanoTime();
+
+        final long requests = transfer(queue, TRANSFER_BYTES);
+
+        final long elapsedNs = System.nanoTime() - startNs;
+        final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        LOGGER.info("Queue has passed {} bytes in {} requests at {} GB/s and allocated {} bytes", TRANSFER_BYTES,
+            requests, String.format("%.1f", 1.0 * TRANSFER_BYTES / elapsedNs), allocated);
+
+        // the queue allocates nothing, a few hundred bytes could come from the JIT switching the code
+        Assertions.assertEquals(0, allocated / requests);
+    }
+
+    private static long transfer(TcpQueue queue, long bytes) {
+        long read = 0;
+        long sent = 0;
+        long requests = 0;
+
+        while (sent < bytes) {
+            requests += 2;
+
+            TcpQueueBuffers writable = queue.requestWritableBuffers();
+            read += scatter(writable, bytes - read);
+            queue.releaseWritableBuffers();
+
+            TcpQueueBuffers readable = queue.requestReadableBuffers();
+            sent += scatter(readable, Long.MAX_VALUE);
+            queue.releaseReadableBuffers();
+        }
+
+        return requests;
+    }
+
+    private static long scatter(TcpQueueBuffers buffers, long limit) {
+        long moved = 0;
+        for (int i = buffers.getOffset(), end = buffers.getOffset() + buffers.getCount(); i < end; i++) {
+            ByteBuffer bb = buffers.getArray()[i];
+            int step = (int) Math.min(bb.remaining(), limit - moved);
+            bb.position(bb.position() + step);
+            moved += step;
+        }
+        return moved;
+    }
+
+    private static byte write(TcpQueue queue, byte next, int size) {
+        int remaining = size;
+        while (remaining > 0) {
+            TcpQueueBuffers buffers = queue.requestWritableBuffers();
+            Assertions.assertFalse(buffers.isEmpty());
+
+            for (int i = buffers.getOffset(), end = i + buffers.getCount(); i < end && remaining > 0; i++) {
+                ByteBuffer bb = buffers.getArray()[i];
+                while (bb.hasRemaining() && remaining > 0) {
+                    bb.put(next++);
+                    remaining--;
+                }
+            }
+
+            queue.releaseWritableBuffers();
+        }
+        return next;
+    }
+
+    private static byte read(TcpQueue queue, byte expected, int size) {
+        int remaining = size;
+        while (remaining > 0) {
+            TcpQueueBuffers buffers = queue.requestReadableBuffers();
+            Assertions.assertFalse(buffers.isEmpty());
+
+            for (int i = buffers.getOffset(), end = i + buffers.getCount(); i < end && remaining > 0; i++) {
+                ByteBuffer bb = buffers.getArray()[i];
+                while (bb.hasRemaining() && remaining > 0) {
+                    Assertions.assertEquals(expected++, bb.get());
+                    remaining--;
+                }
+            }
+
+            queue.releaseReadableBuffers();
+        }
+        return expected;
+    }
+
+    private static BufferOptions createOptions(int count, int size) {
+        BufferOptions options = new BufferOptions();
+        options.setCount(count);
+        options.setSize(size);
+        options.setDirect(true);
+        return options;
+    }
+}
@@ -0,0 +1,184 @@
+package org.netcrusher.tcp.bulk;
+
+import org.junit.jupiter.api.Assertions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+public final class TcpTestUtils {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TcpTestUtils.class);
+
+    private static final long ECHO_SELECT_MS = 100;
+
+    private TcpTestUtils() {
+    }
+
+    /**
+     * Reads and drops the data until the limit or the end of the stream
+     * @param channel Channel to read from
+     * @param bytes How many bytes to read
+     * @param chunkSize Size of the read buffer
+     * @return How many bytes are read
+     */
+    public static long consume(SocketChannel channel, long bytes, int chunkSize) {
+        ByteBuffer bb = ByteBuffer.allocateDirect(chunkSize);
+
+        long received = 0;
+        try {
+            while (received < bytes) {
+                bb.clear();
+                int read = channel.read(bb);
+                if (read < 0) {
+                    break;
+                }
+                received += read;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Fail to read", e);
+        }
+
+        return received;
+    }
+
+    /**
+     * Reads the data and checks that each byte is its offset in the stream cut to a byte
+     * @param channel Channel to read from
+     * @param bytes How many bytes to read
+     * @param chunkSize Size of the read buffer
+     * @return How many bytes are read
+     */
+    public static long consumeSequence(SocketChannel channel, long bytes, int chunkSize) {
+        return consumeSequence(channel, bytes, chunkSize, System.nanoTime());
+    }
+
+    /**
+     * Reads the data and checks that each byte is its offset in the stream cut to a byte
+     * @param channel Channel to read from
+     * @param bytes How many bytes to read
+     * @param chunkSize Size of the read buffer
+     * @param notBeforeNs Nothing should arrive earlier than this time
+     * @return How many bytes are read
+     */
+    public static long consumeSequence(SocketChannel channel, long bytes, int chunkSize, long notBeforeNs) {
+        ByteBuffer bb = ByteBuffer.allocate(chunkSize);
+
+        long received = 0;
+        try {
+            while (received < bytes) {
+                bb.clear();
+                int read = channel.read(bb);
+                if (read < 0) {
+                    break;
+                }
+
+                if (received == 0) {
+                    Assertions.assertTrue(System.nanoTime() - notBeforeNs >= 0, "Data arrived too early");
+                }
+
+                for (int i = 0; i < read; i++) {
+                    Assertions.assertEquals((byte) (received + i), bb.get(i));
+                }
+                received += read;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Fail to read", e);
+        }
+
+        return received;
+    }
+
+    /**
+     * Sends the whole buffer to an echo server and checks that the same data comes back
+     * @param channel Channel connected to the echo server
+     * @param buffer Buffer with the message size as its capacity
+     * @param seed First byte of the message
+     * @throws IOException On I/O error
+     */
+    public static void roundTrip(SocketChannel channel, ByteBuffer buffer, int seed) throws IOException {
+        final int size = buffer.capacity();
+
+        buffer.clear();
+        for (int i = 0; i < size; i++) {
+            buffer.put(i, (byte) (seed + i));
+        }
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            Assertions.assertTrue(channel.read(buffer) >= 0);
+        }
+
+        // the echo should come back unchanged
+        for (int i = 0; i < size; i++) {
+            Assertions.assertEquals((byte) (seed + i), buffer.get(i));
+        }
+    }
+
+    /**
+     * Echoes everything back to all clients of the server until the server is closed. Blocks the calling thread
+     * @param server Bound server channel
+     * @param bufferSize Size of the echo buffer
+     */
+    public static void echo(ServerSocketChannel server, int bufferSize) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+
+        try (Selector selector = Selector.open()) {
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+
+            while (server.isOpen()) {
+                selector.select(ECHO_SELECT_MS);
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (key.isAcceptable()) {
+                        SocketChannel channel = server.accept();
+                        if (channel != null) {
+                            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                            channel.configureBlocking(false);
+                            channel.register(selector, SelectionKey.OP_READ);
+                        }
+                    } else if (key.isReadable()) {
+                        echo((SocketChannel) key.channel(), buffer);
+                    }
+                }
+
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Echo server is closed: {}", e.getMessage());
+        }
+    }
+
+    private static void echo(SocketChannel channel, ByteBuffer buffer) {
+        try {
+            buffer.clear();
+            if (channel.read(buffer) < 0) {
+                channel.close();
+            } else {
+                // messages are small so the socket buffer takes them at once
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Echo connection is closed: {}", e.getMessage());
+            try {
+                channel.close();
+            } catch (IOException ce) {
+                LOGGER.debug("Fail to close echo connection", ce);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+package org.netcrusher.tcp.throttling;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.netcrusher.core.chronometer.VirtualChronometer;
+import org.netcrusher.core.reactor.NioReactor;
+import org.netcrusher.core.reactor.NioReactorBuilder;
+import org.netcrusher.core.throttle.DelayThrottler;
+import org.netcrusher.core.throttle.rate.AbstractRateThrottler;
+import org.netcrusher.core.throttle.rate.ByteRateThrottler;
+import org.netcrusher.tcp.TcpCrusher;
+import org.netcrusher.tcp.TcpCrusherBuilder;
+import org.netcrusher.tcp.bulk.TcpBulkClient;
+import org.netcrusher.tcp.bulk.TcpBulkResult;
+import org.netcrusher.tcp.bulk.TcpBulkServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+class VirtualTimeThrottlingTcpTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualTimeThrottlingTcpTest.class);
+
+    private static final int PORT_CRUSHER = 10081;
+
+    private static final int PORT_SERVER = 10082;
+
+    private static final String HOSTNAME = "127.0.0.1";
+
+    private static final long COUNT = 32 * 1000 * 1000;
+
+    private static final long SEND_WAIT_MS = 60_000;
+
+    private static final long READ_WAIT_MS = 30_000;
+
+    private static final int INCOMING_BYTES_PER_SEC = 2_000_000;
+
+    private static final int OUTGOING_BYTES_PER_SEC = 4_000_000;
+
+    private static final long DELAY_MS = 200;
+
+    private static final double RATE_PRECISION = 0.05;
+
+    private NioReactor reactor;
+
+    private VirtualChronometer chronometer;
+
+    private TcpCrusher crusher;
+
+    private TcpBulkServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TcpBulkServer(new InetSocketAddress(HOSTNAME, PORT_SERVER), COUNT);
+        server.open();
+
+        reactor = NioReactorBuilder.builder()
+            .withVirtualTime()
+            .withLoopCount(1)
+            .build();
+
+        chronometer = (VirtualChronometer) reactor.getChronometer();
+
+        // the same rates as in RateThrottlingTcpTest take 16 seconds in the real time
+        crusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_CRUSHER)
+            .withConnectAddress(HOSTNAME, PORT_SERVER)
+            .withIncomingThrottlerFactory(addr -> new ByteRateThrottler(INCOMING_BYTES_PER_SEC, 1, TimeUnit.SECONDS,
+                AbstractRateThrottler.AUTO_FACTOR, reactor.getLoopChronometer()))
+            .withOutgoingThrottlerFactory(addr -> new ByteRateThrottler(OUTGOING_BYTES_PER_SEC, 1, TimeUnit.SECONDS,
+                AbstractRateThrottler.AUTO_FACTOR, reactor.getLoopChronometer()))
+            .buildAndOpen();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (crusher != null) {
+            crusher.close();
+            Assertions.assertFalse(crusher.isOpen());
+        }
+
+        if (reactor != null) {
+            reactor.close();
+            Assertions.assertFalse(reactor.isOpen());
+        }
+
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void testRate() throws Exception {
+        final InetSocketAddress serverAddress = new InetSocketAddress(HOSTNAME, PORT_CRUSHER);
+
+        final long startRealNs = System.nanoTime();
+        final long startVirtualNs = chronometer.getTickNs();
+
+        try (TcpBulkClient client1 = TcpBulkClient.forAddress("EXT", serverAddress, COUNT)) {
+            final TcpBulkResult producer1Result = client1.awaitProducerResult(SEND_WAIT_MS);
+
+            Assertions.assertEquals(1, server.getClients().size());
+            try (TcpBulkClient client2 = server.getClients().iterator().next()) {
+                final TcpBulkResult producer2Result = client2.awaitProducerResult(SEND_WAIT_MS);
+
+                final TcpBulkResult consumer1Result = client1.awaitConsumerResult(READ_WAIT_MS);
+                final TcpBulkResult consumer2Result = client2.awaitConsumerResult(READ_WAIT_MS);
+
+                Assertions.assertArrayEquals(producer1Result.getDigest(), consumer2Result.getDigest());
+                Assertions.assertArrayEquals(producer2Result.getDigest(), consumer1Result.getDigest());
+            }
+        }
+
+        final long realMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startRealNs);
+        final long virtualMs = TimeUnit.NANOSECONDS.toMillis(chronometer.getTickNs() - startVirtualNs);
+        LOGGER.info("Transfer has taken {}ms of the real time and {}ms of the virtual time", realMs, virtualMs);
+
+        // the slower direction defines the virtual duration
+        final double rate = 1000.0 * COUNT / virtualMs;
+        Assertions.assertEquals(INCOMING_BYTES_PER_SEC, rate, INCOMING_BYTES_PER_SEC * RATE_PRECISION);
+
+        Assertions.assertTrue(realMs < virtualMs / 2);
+    }
+
+    @Test
+    void testDelay() throws Exception {
+        crusher.close();
+
+        crusher = TcpCrusherBuilder.builder()
+            .withReactor(reactor)
+            .withBindAddress(HOSTNAME, PORT_CRUSHER)
+            .withConnectAddress(HOSTNAME, PORT_SERVER)
+            .withIncomingThrottlerFactory(addr -> new DelayThrottler(DELAY_MS, TimeUnit.MILLISECONDS))
+            .withOutgoingThrottlerFactory(addr -> new DelayThrottler(DELAY_MS, TimeUnit.MILLISECONDS))
+            .buildAndOpen();
+
+        final InetSocketAddress serverAddress = new InetSocketAddress(HOSTNAME, PORT_CRUSHER);
+
+        final long startVirtualNs = chronometer.getTickNs();
+
+        try (TcpBulkClient client1 = TcpBulkClient.forAddress("EXT", serverAddress, COUNT)) {
+            final byte[] producer1Digest = client1.awaitProducerResult(SEND_WAIT_MS).getDigest();
+
+            Assertions.assertEquals(1, server.getClients().size());
+            try (TcpBulkClient client2 = server.getClients().iterator().next()) {
+                final byte[] producer2Digest = client2.awaitProducerResult(SEND_WAIT_MS).getDigest();
+
+                final byte[] consumer1Digest = client1.awaitConsumerResult(READ_WAIT_MS).getDigest();
+                final byte[] consumer2Digest = client2.awaitConsumerResult(READ_WAIT_MS).getDigest();
+
+                Assertions.assertArrayEquals(producer1Digest, consumer2Digest);
+                Assertions.assertArrayEquals(producer2Digest, consumer1Digest);
+            }
+        }
+
+        final long virtualMs = TimeUnit.NANOSECONDS.toMillis(chronometer.getTickNs() - startVirtualNs);
+        Assertions.assertTrue(virtualMs >= DELAY_MS);
+    }
+
+    @Test
+    void testSingleLoop() throws Exception {
+        NioReactor defaultReactor = NioReactorBuilder.builder()
+            .withVirtualTime()
+            .build();
+        try {
+            Assertions.assertEquals(1, defaultReactor.getLoopCount());
+        } finally {
+            defaultReactor.close();
+        }
+
+        // an idle loop would move the shared time over the deadlines of the busy ones
+        Assertions.assertThrows(IllegalArgumentException.class, () -> NioReactorBuilder.builder()
+            .withVirtualTime()
+            .withLoopCount(4)
+            .build());
+    }
+}